@@ -1,6 +1,6 @@
 package org.garethjevans.ai.agent.fundamentals;
 
-import org.garethjevans.ai.fd.FinancialDatasetsService;
+import org.garethjevans.ai.fd.FinancialDatasets;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.ai.tool.method.MethodToolCallbackProvider;
 import org.springframework.context.annotation.Bean;
@@ -10,7 +10,7 @@ import org.springframework.context.annotation.Configuration;
 public class AgentFundamentalsConfiguration {
 
   @Bean
-  public AgentFundamentalsTool agentFundamentals(FinancialDatasetsService service) {
+  public AgentFundamentalsTool agentFundamentals(FinancialDatasets service) {
     return new AgentFundamentalsTool(service);
   }
 
@@ -20,9 +20,9 @@ public class AgentFundamentalsTool {
 
   private static final String AGENT_NAME = "Fundamentals Agent";
 
-  private final FinancialDatasetsService financialDatasets;
+  private final FinancialDatasets financialDatasets;
 
-  public AgentFundamentalsTool(FinancialDatasetsService financialDatasets) {
+  public AgentFundamentalsTool(FinancialDatasets financialDatasets) {
     this.financialDatasets = financialDatasets;
   }
 
@@ -1,7 +1,7 @@
 package org.garethjevans.ai.agent.michaelburry;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.garethjevans.ai.fd.FinancialDatasetsService;
+import org.garethjevans.ai.fd.FinancialDatasets;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.ai.tool.method.MethodToolCallbackProvider;
 import org.springframework.context.annotation.Bean;
@@ -12,7 +12,7 @@ public class AgentMichaelBurryConfiguration {
 
   @Bean
   public AgentMichaelBurryTool agentMichaelBurry(
-      FinancialDatasetsService service, ObjectMapper objectMapper) {
+      FinancialDatasets service, ObjectMapper objectMapper) {
     return new AgentMichaelBurryTool(service, objectMapper);
   }
 
@@ -8,8 +8,11 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Stream;
 import org.garethjevans.ai.common.AgentSignal;
 import org.garethjevans.ai.common.Result;
 import org.garethjevans.ai.common.Signal;
@@ -29,11 +32,13 @@ public class AgentMichaelBurryTool {
 
   private static final String AGENT_NAME = "Michael Burry Agent";
 
-  private final FinancialDatasetsService financialDatasets;
+  private static final int NEWS_PAGE_SIZE = 100;
+  private static final int NEGATIVE_HEADLINE_THRESHOLD = 5;
+
+  private final FinancialDatasets financialDatasets;
   private final ObjectMapper objectMapper;
 
-  public AgentMichaelBurryTool(
-      FinancialDatasetsService financialDatasets, ObjectMapper objectMapper) {
+  public AgentMichaelBurryTool(FinancialDatasets financialDatasets, ObjectMapper objectMapper) {
     this.financialDatasets = financialDatasets;
     this.objectMapper = objectMapper;
   }
@@ -50,36 +55,39 @@ public class AgentMichaelBurryTool {
     LocalDate endDate = LocalDate.now();
     LocalDate startDate = endDate.minusYears(1);
 
-    updateProgress(ticker, "Fetching financial metrics");
-    List<Metrics> metrics = financialDatasets.getFinancialMetrics(ticker, endDate, Period.ttm, 5);
-
-    updateProgress(ticker, "Gathering financial line items");
-    List<LineItem> lineItems =
-        financialDatasets.searchLineItems(
-            ticker,
-            endDate,
-            List.of(
-                "free_cash_flow",
-                "net_income",
-                "total_debt",
-                "cash_and_equivalents",
-                "total_assets",
-                "total_liabilities",
-                "outstanding_shares",
-                "issuance_or_purchase_of_equity_shares"),
-            Period.ttm,
-            10);
-
-    updateProgress(ticker, "Getting insider trades");
-    var insiderTrades = financialDatasets.getInsiderTrades(ticker, startDate, endDate, 1000);
+    updateProgress(ticker, "Fetching financial data");
+    // news is paged in on its own thread, only as far as the analysis reads, alongside the rest
+    FutureTask<Result> contrarian =
+        new FutureTask<>(() -> analyzeContrarianSentiment(ticker, startDate, endDate));
+    Thread.ofVirtual().name("news-" + ticker).start(contrarian);
+
+    TickerDataBundle data =
+        financialDatasets.getTickerData(
+            TickerDataRequest.builder(ticker, endDate)
+                .metrics(Period.ttm, 5)
+                .lineItems(
+                    List.of(
+                        "free_cash_flow",
+                        "net_income",
+                        "total_debt",
+                        "cash_and_equivalents",
+                        "total_assets",
+                        "total_liabilities",
+                        "outstanding_shares",
+                        "issuance_or_purchase_of_equity_shares"),
+                    Period.ttm,
+                    10)
+                .insiderTrades(startDate, 1000)
+                .marketCap()
+                .build());
+
+    List<Metrics> metrics = data.metrics();
+    List<LineItem> lineItems = data.lineItems();
+
+    var insiderTrades = data.insiderTrades();
     LOGGER.info("Got insider trades: {}", insiderTrades);
 
-    updateProgress(ticker, "Getting news");
-    var news = financialDatasets.getCompanyNews(ticker, startDate, endDate, 1000);
-    LOGGER.info("Got news: {}", news);
-
-    updateProgress(ticker, "Getting market cap");
-    var marketCap = financialDatasets.getMarketCap(ticker, endDate);
+    var marketCap = data.marketCap();
     LOGGER.info("Got market cap: {}", marketCap);
 
     //  ------------------------------------------------------------------
@@ -98,7 +106,7 @@ public class AgentMichaelBurryTool {
     LOGGER.info("Got Insider Activity {}", insiderAnalysis);
 
     updateProgress(ticker, "Analyzing Contrarian Sentiment");
-    var contrarianAnalysis = analyzeContrarianSentiment(news);
+    Result contrarianAnalysis = Futures.await(contrarian);
     LOGGER.info("Got Contrarian Sentiment {}", contrarianAnalysis);
 
     // ------------------------------------------------------------------
@@ -293,28 +301,51 @@ public class AgentMichaelBurryTool {
     return new Result(score, maxScore, String.join("; ", details));
   }
 
+  /**
+   * Like {@link #analyzeContrarianSentiment(List)}, but stops reading news, and so fetching further
+   * pages, once enough negative headlines have been seen to award the point.
+   */
+  private Result analyzeContrarianSentiment(String ticker, LocalDate startDate, LocalDate endDate) {
+    boolean anyNews = false;
+    long negativeCount = 0;
+    try (Stream<CompanyNews> news =
+        financialDatasets
+            .streamCompanyNews(ticker, startDate, endDate, NEWS_PAGE_SIZE)
+            .limit(1000)) {
+      Iterator<CompanyNews> iterator = news.iterator();
+      while (negativeCount < NEGATIVE_HEADLINE_THRESHOLD && iterator.hasNext()) {
+        anyNews = true;
+        if (isNegative(iterator.next())) {
+          negativeCount++;
+        }
+      }
+    }
+    return contrarianSentiment(anyNews, negativeCount);
+  }
+
   /** Very rough gauge: a wall of recent negative headlines can be a *positive* for a contrarian. */
   public Result analyzeContrarianSentiment(List<CompanyNews> news) {
+    // Count negative sentiment articles
+    long negativeCount = news.stream().filter(AgentMichaelBurryTool::isNegative).count();
+    return contrarianSentiment(!news.isEmpty(), negativeCount);
+  }
+
+  private static boolean isNegative(CompanyNews n) {
+    return "negative".equalsIgnoreCase(n.sentiment()) || "bearish".equalsIgnoreCase(n.sentiment());
+  }
+
+  private static Result contrarianSentiment(boolean anyNews, long negativeCount) {
 
     int maxScore = 1;
     int score = 0;
     List<String> details = new ArrayList<>();
 
-    if (news.isEmpty()) {
+    if (!anyNews) {
       details.add("No recent news");
       return new Result(score, maxScore, String.join("; ", details));
     }
 
-    // Count negative sentiment articles
-    long negativeCount =
-        news.stream()
-            .filter(
-                n ->
-                    "negative".equalsIgnoreCase(n.sentiment())
-                        || "bearish".equalsIgnoreCase(n.sentiment()))
-            .count();
-
-    if (negativeCount >= 5) {
+    if (negativeCount >= NEGATIVE_HEADLINE_THRESHOLD) {
       score += 1;
       details.add(negativeCount + " negative headline(s) (contrarian opportunity)");
     } else {
@@ -1,7 +1,7 @@
 package org.garethjevans.ai.agent.peterlynch;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.garethjevans.ai.fd.FinancialDatasetsService;
+import org.garethjevans.ai.fd.FinancialDatasets;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.ai.tool.method.MethodToolCallbackProvider;
 import org.springframework.context.annotation.Bean;
@@ -11,8 +11,7 @@ import org.springframework.context.annotation.Configuration;
 public class AgentPeterLynchConfiguration {
 
   @Bean
-  public AgentPeterLynchTool agentPeterLynch(
-      FinancialDatasetsService service, ObjectMapper objectMapper) {
+  public AgentPeterLynchTool agentPeterLynch(FinancialDatasets service, ObjectMapper objectMapper) {
     return new AgentPeterLynchTool(service, objectMapper);
   }
 
@@ -27,11 +27,10 @@ public class AgentPeterLynchTool {
 
   private static final String AGENT_NAME = "Peter Lynch Agent";
 
-  private final FinancialDatasetsService financialDatasets;
+  private final FinancialDatasets financialDatasets;
   private final ObjectMapper objectMapper;
 
-  public AgentPeterLynchTool(
-      FinancialDatasetsService financialDatasets, ObjectMapper objectMapper) {
+  public AgentPeterLynchTool(FinancialDatasets financialDatasets, ObjectMapper objectMapper) {
     this.financialDatasets = financialDatasets;
     this.objectMapper = objectMapper;
   }
@@ -66,41 +65,44 @@ public class AgentPeterLynchTool {
     //    List<Metrics> metrics =
     //        financialDatasets.getFinancialMetrics(ticker, endDate, Period.annual, 5);
 
-    updateProgress(ticker, "Gathering financial line items");
-    List<LineItem> financialLineItems =
-        financialDatasets.searchLineItems(
-            ticker,
-            endDate,
-            List.of(
-                "revenue",
-                "earnings_per_share",
-                "net_income",
-                "operating_income",
-                "gross_margin",
-                "operating_margin",
-                "free_cash_flow",
-                "capital_expenditure",
-                "cash_and_equivalents",
-                "total_debt",
-                "shareholders_equity",
-                "outstanding_shares"),
-            Period.annual,
-            5);
-
-    updateProgress(ticker, "Getting market cap");
-    var marketCap = financialDatasets.getMarketCap(ticker, endDate);
+    updateProgress(ticker, "Fetching financial data");
+    TickerDataBundle data =
+        financialDatasets.getTickerData(
+            TickerDataRequest.builder(ticker, endDate)
+                .lineItems(
+                    List.of(
+                        "revenue",
+                        "earnings_per_share",
+                        "net_income",
+                        "operating_income",
+                        "gross_margin",
+                        "operating_margin",
+                        "free_cash_flow",
+                        "capital_expenditure",
+                        "cash_and_equivalents",
+                        "total_debt",
+                        "shareholders_equity",
+                        "outstanding_shares"),
+                    Period.annual,
+                    5)
+                .marketCap()
+                .insiderTrades(startDate, 50)
+                .companyNews(startDate, 50)
+                .prices(startDate)
+                .build());
+
+    List<LineItem> financialLineItems = data.lineItems();
+
+    var marketCap = data.marketCap();
     LOGGER.info("Got market cap: {}", marketCap);
 
-    updateProgress(ticker, "Fetching insider trades");
-    var insiderTrades = financialDatasets.getInsiderTrades(ticker, startDate, endDate, 50);
+    var insiderTrades = data.insiderTrades();
     LOGGER.info("Got insider trades: {}", insiderTrades);
 
-    updateProgress(ticker, "Fetching company news");
-    var companyNews = financialDatasets.getCompanyNews(ticker, startDate, endDate, 50);
+    var companyNews = data.companyNews();
     LOGGER.info("Got company news: {}", companyNews);
 
-    updateProgress(ticker, "Fetching recent price data for reference");
-    var prices = financialDatasets.getPrices(ticker, startDate, endDate);
+    var prices = data.prices();
     LOGGER.info("Got prices: {}", prices);
 
     // Perform sub-analyses:
@@ -1,6 +1,6 @@
 package org.garethjevans.ai.agent.sentiment;
 
-import org.garethjevans.ai.fd.FinancialDatasetsService;
+import org.garethjevans.ai.fd.FinancialDatasets;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.ai.tool.method.MethodToolCallbackProvider;
 import org.springframework.context.annotation.Bean;
@@ -10,7 +10,7 @@ import org.springframework.context.annotation.Configuration;
 public class AgentSentimentConfiguration {
 
   @Bean
-  public AgentSentimentTool agentSentiment(FinancialDatasetsService service) {
+  public AgentSentimentTool agentSentiment(FinancialDatasets service) {
     return new AgentSentimentTool(service);
   }
 
@@ -21,9 +21,9 @@ public class AgentSentimentTool {
 
   private static final String AGENT_NAME = "Sentiment Agent";
 
-  private final FinancialDatasetsService financialDatasets;
+  private final FinancialDatasets financialDatasets;
 
-  public AgentSentimentTool(FinancialDatasetsService financialDatasets) {
+  public AgentSentimentTool(FinancialDatasets financialDatasets) {
     this.financialDatasets = financialDatasets;
   }
 
@@ -42,8 +42,15 @@ public class AgentSentimentTool {
     // Initialize sentiment analysis for each ticker
     //    sentiment_analysis = {}
 
-    updateProgress(ticker, "Getting insider trades");
-    var insiderTrades = financialDatasets.getInsiderTrades(ticker, startDate, endDate, 1000);
+    updateProgress(ticker, "Getting insider trades and company news");
+    TickerDataBundle data =
+        financialDatasets.getTickerData(
+            TickerDataRequest.builder(ticker, endDate)
+                .insiderTrades(startDate, 1000)
+                .companyNews(startDate, 100)
+                .build());
+
+    var insiderTrades = data.insiderTrades();
     LOGGER.info("Got insider trades: {}", insiderTrades);
 
     updateProgress(ticker, "Analyzing trading patterns");
@@ -61,8 +68,7 @@ public class AgentSentimentTool {
             .toList();
 
     // Get the company news
-    updateProgress(ticker, "Fetching company news");
-    var companyNews = financialDatasets.getCompanyNews(ticker, startDate, endDate, 100);
+    var companyNews = data.companyNews();
 
     // Get the sentiment from the company news
 
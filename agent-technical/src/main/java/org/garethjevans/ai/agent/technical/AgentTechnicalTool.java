@@ -16,9 +16,9 @@ public class AgentTechnicalTool {
 
   private static final String AGENT_NAME = "Technical Agent";
 
-  private final FinancialDatasetsService financialDatasets;
+  private final FinancialDatasets financialDatasets;
 
-  public AgentTechnicalTool(FinancialDatasetsService financialDatasets) {
+  public AgentTechnicalTool(FinancialDatasets financialDatasets) {
     this.financialDatasets = financialDatasets;
   }
 
@@ -19,9 +19,9 @@ public class AgentValuationsTool {
 
   private static final String AGENT_NAME = "Valuations Agent";
 
-  private final FinancialDatasetsService financialDatasets;
+  private final FinancialDatasets financialDatasets;
 
-  public AgentValuationsTool(FinancialDatasetsService financialDatasets) {
+  public AgentValuationsTool(FinancialDatasets financialDatasets) {
     this.financialDatasets = financialDatasets;
   }
 
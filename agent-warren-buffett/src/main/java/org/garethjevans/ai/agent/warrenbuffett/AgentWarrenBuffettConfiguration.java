@@ -1,7 +1,7 @@
 package org.garethjevans.ai.agent.warrenbuffett;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.garethjevans.ai.fd.FinancialDatasetsService;
+import org.garethjevans.ai.fd.FinancialDatasets;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.ai.tool.method.MethodToolCallbackProvider;
 import org.springframework.context.annotation.Bean;
@@ -12,7 +12,7 @@ public class AgentWarrenBuffettConfiguration {
 
   @Bean
   public AgentWarrenBuffettTool agentWarrenBuffet(
-      FinancialDatasetsService service, ObjectMapper objectMapper) {
+      FinancialDatasets service, ObjectMapper objectMapper) {
     return new AgentWarrenBuffettTool(service, objectMapper);
   }
 
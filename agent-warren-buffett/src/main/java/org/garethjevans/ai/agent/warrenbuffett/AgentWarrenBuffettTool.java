@@ -14,10 +14,13 @@ import java.util.stream.IntStream;
 import org.garethjevans.ai.common.AgentSignal;
 import org.garethjevans.ai.common.Result;
 import org.garethjevans.ai.common.Signal;
-import org.garethjevans.ai.fd.FinancialDatasetsService;
+import org.garethjevans.ai.fd.FinancialDatasets;
 import org.garethjevans.ai.fd.LineItem;
 import org.garethjevans.ai.fd.Metrics;
 import org.garethjevans.ai.fd.Period;
+import org.garethjevans.ai.fd.Staleness;
+import org.garethjevans.ai.fd.TickerDataBundle;
+import org.garethjevans.ai.fd.TickerDataRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.model.ToolContext;
@@ -33,11 +36,10 @@ public class AgentWarrenBuffettTool {
 
   private static final String AGENT_NAME = "Warren Buffet Agent";
 
-  private final FinancialDatasetsService financialDatasets;
+  private final FinancialDatasets financialDatasets;
   private final ObjectMapper objectMapper;
 
-  public AgentWarrenBuffettTool(
-      FinancialDatasetsService financialDatasets, ObjectMapper objectMapper) {
+  public AgentWarrenBuffettTool(FinancialDatasets financialDatasets, ObjectMapper objectMapper) {
     this.financialDatasets = financialDatasets;
     this.objectMapper = objectMapper;
   }
@@ -53,28 +55,30 @@ public class AgentWarrenBuffettTool {
     //    data = state["data"]
     LocalDate endDate = LocalDate.now();
 
-    updateProgress(ticker, "Fetching financial metrics");
-    List<Metrics> metrics = financialDatasets.getFinancialMetrics(ticker, endDate, Period.ttm, 5);
-
-    updateProgress(ticker, "Gathering financial line items");
-    List<LineItem> financialLineItems =
-        financialDatasets.searchLineItems(
-            ticker,
-            endDate,
-            List.of(
-                "capital_expenditure",
-                "depreciation_and_amortization",
-                "net_income",
-                "outstanding_shares",
-                "total_assets",
-                "total_liabilities",
-                "dividends_and_other_cash_distributions",
-                "issuance_or_purchase_of_equity_shares"),
-            Period.ttm,
-            10);
-
-    updateProgress(ticker, "Getting market cap");
-    var marketCap = financialDatasets.getMarketCap(ticker, endDate);
+    updateProgress(ticker, "Fetching financial data");
+    TickerDataBundle data =
+        financialDatasets.getTickerData(
+            TickerDataRequest.builder(ticker, endDate)
+                .metrics(Period.ttm, 5)
+                .lineItems(
+                    List.of(
+                        "capital_expenditure",
+                        "depreciation_and_amortization",
+                        "net_income",
+                        "outstanding_shares",
+                        "total_assets",
+                        "total_liabilities",
+                        "dividends_and_other_cash_distributions",
+                        "issuance_or_purchase_of_equity_shares"),
+                    Period.ttm,
+                    10)
+                .marketCap()
+                .build());
+
+    List<Metrics> metrics = data.metrics();
+    List<LineItem> financialLineItems = data.lineItems();
+
+    var marketCap = data.marketCap();
     LOGGER.info("Got market cap: {}", marketCap);
 
     updateProgress(ticker, "Analyzing fundamentals");
@@ -151,7 +155,8 @@ public class AgentWarrenBuffettTool {
             mgmtAnalysis,
             intrinsicValueAnalysis,
             marketCap,
-            marginOfSafety);
+            marginOfSafety,
+            data.staleness());
 
     updateProgress(ticker, "Generating Warren Buffett analysis");
 
@@ -619,7 +624,8 @@ public class AgentWarrenBuffettTool {
       @JsonProperty("management_analysis") Result managementAnalysis,
       @JsonProperty("intrinsic_value_analysis") IntrinsicValueAnalysisResult intrinsicValueAnalysis,
       @JsonProperty("market_cap") BigDecimal marketCap,
-      @JsonProperty("margin_of_safety") BigDecimal marginOfSafety) {}
+      @JsonProperty("margin_of_safety") BigDecimal marginOfSafety,
+      @JsonProperty("stale_data") Map<String, Staleness> staleData) {}
 
   public record IntrinsicValueAnalysisResult(
       @JsonProperty("intrinsic_value") BigDecimal intrinsicValue,
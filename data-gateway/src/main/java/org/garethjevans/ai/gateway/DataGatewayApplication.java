@@ -0,0 +1,12 @@
+package org.garethjevans.ai.gateway;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class DataGatewayApplication {
+
+  public static void main(String[] args) {
+    SpringApplication.run(DataGatewayApplication.class, args);
+  }
+}
@@ -0,0 +1,20 @@
+package org.garethjevans.ai.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+@Configuration
+public class DataGatewayConfiguration {
+
+  /**
+   * Smile from the same {@link ObjectMapper} that reads the upstream JSON, so records are written
+   * exactly as the agents' copy of the mapper expects them.
+   */
+  @Bean
+  public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(ObjectMapper mapper) {
+    return new MappingJackson2SmileHttpMessageConverter(mapper.copyWith(new SmileFactory()));
+  }
+}
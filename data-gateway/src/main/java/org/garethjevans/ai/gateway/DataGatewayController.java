@@ -0,0 +1,133 @@
+package org.garethjevans.ai.gateway;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import org.garethjevans.ai.fd.CompanyNews;
+import org.garethjevans.ai.fd.Facts;
+import org.garethjevans.ai.fd.FinancialDatasets;
+import org.garethjevans.ai.fd.InsiderTrade;
+import org.garethjevans.ai.fd.LineItem;
+import org.garethjevans.ai.fd.Metrics;
+import org.garethjevans.ai.fd.Period;
+import org.garethjevans.ai.fd.Price;
+import org.garethjevans.ai.fd.Staleness;
+import org.garethjevans.ai.fd.TickerDataBundle;
+import org.garethjevans.ai.fd.TickerDataRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves the {@link FinancialDatasets} of this process to the agents, which reach it through {@code
+ * GatewayFinancialDatasetsService}. Every agent's requests share its caches, request coalescing and
+ * upstream rate limits.
+ */
+@RestController
+@RequestMapping("/v1")
+public class DataGatewayController {
+
+  private final FinancialDatasets financialDatasetsService;
+
+  public DataGatewayController(FinancialDatasets financialDatasetsService) {
+    this.financialDatasetsService = financialDatasetsService;
+  }
+
+  @GetMapping("/staleness")
+  public Map<String, Staleness> staleness(@RequestParam String ticker) {
+    return financialDatasetsService.staleness(ticker);
+  }
+
+  @GetMapping("/company/facts")
+  public Facts companyFacts(@RequestParam String ticker) {
+    return financialDatasetsService.companyFacts(ticker);
+  }
+
+  @GetMapping("/prices")
+  public List<Price> prices(
+      @RequestParam String ticker,
+      @RequestParam("start_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate startDate,
+      @RequestParam("end_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+    return financialDatasetsService.getPrices(ticker, startDate, endDate);
+  }
+
+  /**
+   * The same bars as {@link #prices}, in the shape of a {@code /prices/} response so that {@code
+   * GatewayFinancialDatasetsService} can decode them straight into columns.
+   */
+  @GetMapping("/price-series")
+  public Map<String, List<Price>> priceSeries(
+      @RequestParam String ticker,
+      @RequestParam("start_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate startDate,
+      @RequestParam("end_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+    return Map.of("prices", financialDatasetsService.getPrices(ticker, startDate, endDate));
+  }
+
+  @GetMapping("/financial-metrics")
+  public List<Metrics> financialMetrics(
+      @RequestParam String ticker,
+      @RequestParam("end_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+      @RequestParam Period period,
+      @RequestParam int limit) {
+    return financialDatasetsService.getFinancialMetrics(ticker, endDate, period, limit);
+  }
+
+  @GetMapping(path = "/line-items", params = "ticker")
+  public List<LineItem> lineItems(
+      @RequestParam String ticker,
+      @RequestParam("end_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+      @RequestParam List<String> items,
+      @RequestParam Period period,
+      @RequestParam int limit) {
+    return financialDatasetsService.searchLineItems(ticker, endDate, items, period, limit);
+  }
+
+  @GetMapping(path = "/line-items", params = "tickers")
+  public Map<String, List<LineItem>> lineItems(
+      @RequestParam List<String> tickers,
+      @RequestParam("end_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+      @RequestParam List<String> items,
+      @RequestParam Period period,
+      @RequestParam int limit) {
+    return financialDatasetsService.searchLineItems(tickers, endDate, items, period, limit);
+  }
+
+  @GetMapping("/insider-trades")
+  public List<InsiderTrade> insiderTrades(
+      @RequestParam String ticker,
+      @RequestParam("start_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate startDate,
+      @RequestParam("end_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+      @RequestParam int limit) {
+    return financialDatasetsService.getInsiderTrades(ticker, startDate, endDate, limit);
+  }
+
+  @GetMapping("/news")
+  public List<CompanyNews> companyNews(
+      @RequestParam String ticker,
+      @RequestParam("start_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+          LocalDate startDate,
+      @RequestParam("end_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+      @RequestParam int limit) {
+    return financialDatasetsService.getCompanyNews(ticker, startDate, endDate, limit);
+  }
+
+  @GetMapping("/market-cap")
+  public BigDecimal marketCap(
+      @RequestParam String ticker,
+      @RequestParam("end_date") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+    return financialDatasetsService.getMarketCap(ticker, endDate);
+  }
+
+  @PostMapping("/ticker-data")
+  public TickerDataBundle tickerData(@RequestBody TickerDataRequest request) {
+    return financialDatasetsService.getTickerData(request);
+  }
+}
@@ -0,0 +1,165 @@
+package org.garethjevans.ai.gateway;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import org.garethjevans.ai.fd.FinancialDatasets;
+import org.garethjevans.ai.fd.GatewayFinancialDatasetsService;
+import org.garethjevans.ai.fd.LineItem;
+import org.garethjevans.ai.fd.Period;
+import org.garethjevans.ai.fd.PriceSeries;
+import org.garethjevans.ai.fd.TickerDataBundle;
+import org.garethjevans.ai.fd.TickerDataRequest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.client.RestClient;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class DataGatewayTests {
+
+  private static final WireMockServer UPSTREAM = new WireMockServer(wireMockConfig().dynamicPort());
+
+  @DynamicPropertySource
+  static void upstream(DynamicPropertyRegistry registry) throws Exception {
+    UPSTREAM.start();
+    registry.add("financial.datasets.url", UPSTREAM::baseUrl);
+    registry.add("financial.datasets.api-key", () -> "test-key");
+    registry.add(
+        "financial.datasets.cache.dir",
+        Files.createTempDirectory("data-gateway-cache").toString()::toString);
+  }
+
+  @AfterAll
+  static void stopUpstream() {
+    UPSTREAM.stop();
+  }
+
+  @LocalServerPort private int port;
+
+  @Autowired private ObjectMapper mapper;
+
+  private FinancialDatasets agent;
+
+  @BeforeEach
+  void setUp() {
+    UPSTREAM.resetAll();
+    agent =
+        new GatewayFinancialDatasetsService(
+            RestClient.builder(), "http://localhost:" + port, mapper);
+  }
+
+  @Test
+  void agentsShareTheGatewaysCache() {
+    UPSTREAM.stubFor(
+        get(urlPathEqualTo("/company/facts/"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"company_facts\":{\"ticker\":\"NVDA\",\"name\":\"NVIDIA\"}}")));
+    FinancialDatasets otherAgent =
+        new GatewayFinancialDatasetsService(
+            RestClient.builder(), "http://localhost:" + port, mapper);
+
+    assertThat(agent.companyFacts("NVDA").name()).isEqualTo("NVIDIA");
+    assertThat(otherAgent.companyFacts("NVDA").name()).isEqualTo("NVIDIA");
+
+    UPSTREAM.verify(1, getRequestedFor(urlPathEqualTo("/company/facts/")));
+  }
+
+  @Test
+  void theCacheIndexIsExposed() {
+    UPSTREAM.stubFor(
+        get(urlPathEqualTo("/company/facts/"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"company_facts\":{\"ticker\":\"TSM\",\"name\":\"TSMC\"}}")));
+    agent.companyFacts("TSM");
+
+    String largest =
+        RestClient.create("http://localhost:" + port)
+            .get()
+            .uri("/actuator/cacheindex/size?endpoint=company-facts")
+            .retrieve()
+            .body(String.class);
+
+    assertThat(largest).contains("\"ticker\":\"TSM\"");
+  }
+
+  @Test
+  void priceSeriesAreDecodedFromThePricesShapedBody() {
+    UPSTREAM.stubFor(
+        get(urlPathEqualTo("/prices/"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        """
+                        {"prices":[
+                          {"time":"2025-06-02T04:00:00Z","open":10.5,"high":11,"low":10,"close":10.75,"volume":1000},
+                          {"time":"2025-06-03T04:00:00Z","open":10.75,"high":12,"low":10.5,"close":11.5,"volume":2000}
+                        ]}
+                        """)));
+
+    PriceSeries series =
+        agent.getPriceSeries("ARM", LocalDate.of(2025, 6, 2), LocalDate.of(2025, 6, 3));
+
+    assertThat(series.size()).isEqualTo(2);
+    assertThat(series.date(0)).isEqualTo(LocalDate.of(2025, 6, 2));
+    assertThat(series.close(0)).isEqualTo(10.75);
+    assertThat(series.lastClose()).isEqualTo(11.5);
+    assertThat(series.volume(1)).isEqualTo(2000);
+  }
+
+  @Test
+  void lineItemsAndBundlesRoundTrip() {
+    UPSTREAM.stubFor(
+        post(urlPathEqualTo("/financials/search/line-items"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        """
+                        {"search_results":[
+                          {"ticker":"AMD","report_period":"2025-03-29","period":"ttm","net_income":100.25},
+                          {"ticker":"INTC","report_period":"2025-03-29","period":"ttm","net_income":-5}
+                        ]}
+                        """)));
+    LocalDate endDate = LocalDate.of(2025, 6, 30);
+
+    Map<String, List<LineItem>> byTicker =
+        agent.searchLineItems(
+            List.of("AMD", "INTC"), endDate, List.of("net_income"), Period.ttm, 1);
+    TickerDataBundle bundle =
+        agent.getTickerData(
+            TickerDataRequest.builder("AMD", endDate)
+                .lineItems(List.of("net_income"), Period.ttm, 1)
+                .build());
+
+    assertThat(byTicker.get("AMD").get(0).get("net_income")).isEqualByComparingTo("100.25");
+    assertThat(byTicker.get("INTC").get(0).reportPeriod()).isEqualTo(LocalDate.of(2025, 3, 29));
+    assertThat(bundle.ticker()).isEqualTo("AMD");
+    assertThat(bundle.lineItems())
+        .singleElement()
+        .satisfies(item -> assertThat(item.period()).isEqualTo(Period.ttm));
+    assertThat(bundle.metrics()).isEmpty();
+    assertThat(bundle.marketCap()).isNull();
+  }
+}
@@ -0,0 +1,383 @@
+package org.garethjevans.ai.fd;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounds another {@link CacheService} in size and age. Every entry expires after the time to live
+ * of its endpoint, and once the entries take up more than {@code maxBytes} the least recently read
+ * are evicted until they fit again.
+ *
+ * <p>Sizes, last reads and expiry times are kept in a side index rather than taken from the file
+ * system, which may not record access times, and saved in the cache itself. Entries written before
+ * the index existed are adopted the first time they are read, and count towards the size bound, but
+ * never expire as when they were saved is unknown. Expired entries are no longer found, and are
+ * deleted, along with any over the size bound, by a compaction pass off the request path.
+ *
+ * <p>Processes sharing the cache each hold their own index. Before saving it, the index is merged
+ * with the one saved by the others, under the cache's lock, so neither forgets the other's entries.
+ *
+ * <p>The index also records when each entry was saved and how often it has been read, which {@link
+ * CacheIndexEndpoint} reports on.
+ */
+public class BoundedCacheService implements CacheService, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BoundedCacheService.class);
+
+  static final String INDEX_KEY = "lifecycle index";
+
+  /** Evicting down to a little under the bound leaves room for the next pass. */
+  private static final double LOW_WATER_MARK = 0.9;
+
+  private static final TypeReference<Map<String, Access>> INDEX = new TypeReference<>() {};
+
+  private final CacheService delegate;
+  private final ObjectMapper mapper;
+  private final long maxBytes;
+  private final Duration defaultTtl;
+  private final Map<String, Duration> ttls;
+  private final FreshnessPolicy freshness;
+  private final List<String> pinnedPrefixes;
+  private final Clock clock;
+  private final ConcurrentMap<String, Access> index = new ConcurrentHashMap<>();
+  private final AtomicLong totalBytes = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+  private final AtomicLong evicted = new AtomicLong();
+  private final AtomicLong reclaimedBytes = new AtomicLong();
+  private final ReentrantLock compactionLock = new ReentrantLock();
+  private final ScheduledExecutorService compactor;
+
+  /**
+   * @param ttls how long entries live per endpoint, e.g. {@code prices}, matched against the start
+   *     of the endpoint name of their key
+   * @param freshness when not null, live responses to endpoints without their own time to live
+   *     expire with their freshness window, past which they are fetched again anyway
+   * @param pinnedPrefixes keys that are never expired or evicted
+   * @param compactionInterval how often expired and surplus entries are deleted, zero or negative
+   *     to only delete them when {@link #compact()} is called
+   */
+  public BoundedCacheService(
+      CacheService delegate,
+      ObjectMapper mapper,
+      long maxBytes,
+      Duration defaultTtl,
+      Map<String, Duration> ttls,
+      FreshnessPolicy freshness,
+      List<String> pinnedPrefixes,
+      Duration compactionInterval,
+      Clock clock) {
+    this.delegate = delegate;
+    this.mapper = mapper;
+    this.maxBytes = maxBytes;
+    this.defaultTtl = defaultTtl;
+    this.ttls = ttls;
+    this.freshness = freshness;
+    this.pinnedPrefixes = pinnedPrefixes;
+    this.clock = clock;
+    load();
+
+    if (compactionInterval.isPositive()) {
+      compactor =
+          Executors.newSingleThreadScheduledExecutor(
+              Thread.ofPlatform().name("cache-lifecycle").daemon().factory());
+      compactor.scheduleWithFixedDelay(
+          this::compactQuietly,
+          compactionInterval.toMillis(),
+          compactionInterval.toMillis(),
+          TimeUnit.MILLISECONDS);
+    } else {
+      compactor = null;
+    }
+  }
+
+  /**
+   * When an entry of {@code size} bytes was last read, when it expires and when it was saved, in
+   * epoch millis, and how many times it has been read since. Entries adopted rather than saved
+   * through the index were saved at an unknown time, zero, and never expire.
+   */
+  record Access(
+      @JsonProperty("size") long size,
+      @JsonProperty("last_access") long lastAccess,
+      @JsonProperty("expires_at") long expiresAt,
+      @JsonProperty("created_at") long createdAt,
+      @JsonProperty("hits") long hits) {
+
+    boolean isExpired(long now) {
+      return createdAt > 0 && expiresAt <= now;
+    }
+  }
+
+  @Override
+  public boolean keyExists(String cacheKey) {
+    Access access = index.get(cacheKey);
+    if (access != null && access.isExpired(clock.millis())) {
+      return false;
+    }
+    return delegate.keyExists(cacheKey);
+  }
+
+  @Override
+  public byte[] getBytes(String cacheKey) {
+    byte[] entry = delegate.getBytes(cacheKey);
+    if (!isPinned(cacheKey)) {
+      long now = clock.millis();
+      index.compute(
+          cacheKey,
+          (key, access) -> {
+            if (access == null) {
+              totalBytes.addAndGet(entry.length);
+              return new Access(entry.length, now, Long.MAX_VALUE, 0, 1);
+            }
+            return new Access(
+                access.size(), now, access.expiresAt(), access.createdAt(), access.hits() + 1);
+          });
+    }
+    return entry;
+  }
+
+  @Override
+  public void saveBytes(String cacheKey, byte[] entry) {
+    delegate.saveBytes(cacheKey, entry);
+    if (!isPinned(cacheKey)) {
+      long now = clock.millis();
+      Access previous =
+          index.put(
+              cacheKey, new Access(entry.length, now, now + ttlOf(cacheKey).toMillis(), now, 0));
+      totalBytes.addAndGet(entry.length - (previous != null ? previous.size() : 0));
+    }
+  }
+
+  @Override
+  public void delete(String cacheKey) {
+    delegate.delete(cacheKey);
+    Access previous = index.remove(cacheKey);
+    if (previous != null) {
+      totalBytes.addAndGet(-previous.size());
+    }
+  }
+
+  @Override
+  public void sync(Collection<String> cacheKeys) {
+    delegate.sync(cacheKeys);
+  }
+
+  @Override
+  public <T> T locked(String cacheKey, Supplier<T> action) {
+    return delegate.locked(cacheKey, action);
+  }
+
+  /**
+   * Deletes expired entries, then the least recently read until the rest fit, and saves the index.
+   */
+  void compact() {
+    if (!compactionLock.tryLock()) {
+      return;
+    }
+    try {
+      long now = clock.millis();
+      index.forEach(
+          (key, access) -> {
+            if (access.isExpired(now)) {
+              evict(key, access, expired);
+            }
+          });
+
+      if (totalBytes.get() > maxBytes) {
+        List<Map.Entry<String, Access>> leastRecentFirst = new ArrayList<>(index.entrySet());
+        leastRecentFirst.sort(Comparator.comparingLong(e -> e.getValue().lastAccess()));
+        long target = (long) (maxBytes * LOW_WATER_MARK);
+        for (Map.Entry<String, Access> e : leastRecentFirst) {
+          if (totalBytes.get() <= target) {
+            break;
+          }
+          evict(e.getKey(), e.getValue(), evicted);
+        }
+      }
+      save();
+    } finally {
+      compactionLock.unlock();
+    }
+  }
+
+  private void evict(String cacheKey, Access access, AtomicLong counter) {
+    // skip entries read or saved again since the pass started
+    if (index.remove(cacheKey, access)) {
+      delegate.delete(cacheKey);
+      totalBytes.addAndGet(-access.size());
+      reclaimedBytes.addAndGet(access.size());
+      counter.incrementAndGet();
+    }
+  }
+
+  private void compactQuietly() {
+    try {
+      compact();
+    } catch (RuntimeException e) {
+      LOGGER.warn("Unable to compact the cache", e);
+    }
+  }
+
+  long totalBytes() {
+    return totalBytes.get();
+  }
+
+  /** A copy of the index, by cache key. */
+  Map<String, Access> index() {
+    return Map.copyOf(index);
+  }
+
+  /**
+   * Publishes the size of the cache, and the entries and bytes compaction has reclaimed, tagged
+   * with why they were evicted.
+   */
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("financial.datasets.cache.size", totalBytes, AtomicLong::get)
+        .description("Bytes taken up by the entries in the lifecycle index")
+        .baseUnit("bytes")
+        .register(registry);
+    Gauge.builder("financial.datasets.cache.entries", index, Map::size).register(registry);
+    FunctionCounter.builder("financial.datasets.cache.evictions", expired, AtomicLong::get)
+        .tag("reason", "expired")
+        .register(registry);
+    FunctionCounter.builder("financial.datasets.cache.evictions", evicted, AtomicLong::get)
+        .tag("reason", "size")
+        .register(registry);
+    FunctionCounter.builder("financial.datasets.cache.reclaimed", reclaimedBytes, AtomicLong::get)
+        .baseUnit("bytes")
+        .register(registry);
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (compactor != null) {
+      compactor.shutdownNow();
+    }
+    save();
+    if (delegate instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  private boolean isPinned(String cacheKey) {
+    if (cacheKey.equals(INDEX_KEY)) {
+      return true;
+    }
+    for (String prefix : pinnedPrefixes) {
+      if (cacheKey.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The time to live of the longest endpoint name the endpoint of {@code cacheKey} starts with,
+   * otherwise the freshness window of a live response.
+   */
+  private Duration ttlOf(String cacheKey) {
+    String endpoint = FinancialDatasetsService.endpointOf(cacheKey);
+    Duration ttl = null;
+    int matched = -1;
+    for (Map.Entry<String, Duration> e : ttls.entrySet()) {
+      if (endpoint.startsWith(e.getKey()) && e.getKey().length() > matched) {
+        ttl = e.getValue();
+        matched = e.getKey().length();
+      }
+    }
+    if (ttl != null) {
+      return ttl;
+    }
+    // responses are keyed by their request, derived state like "price-store AAPL" isn't
+    if (freshness != null && cacheKey.startsWith("/") && freshness.isLive(cacheKey)) {
+      return freshness.windowOf(endpoint);
+    }
+    return defaultTtl;
+  }
+
+  private void load() {
+    Map<String, Access> stored = read();
+    index.putAll(stored);
+    stored.values().forEach(access -> totalBytes.addAndGet(access.size()));
+  }
+
+  private Map<String, Access> read() {
+    if (!delegate.keyExists(INDEX_KEY)) {
+      return Map.of();
+    }
+    try {
+      return mapper.readValue(delegate.getBytes(INDEX_KEY), INDEX);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read the cache lifecycle index, starting a new one", e);
+      return Map.of();
+    }
+  }
+
+  /** Merges the index saved by other processes sharing the cache into this one, and saves it. */
+  private void save() {
+    delegate.locked(
+        INDEX_KEY,
+        () -> {
+          merge(read());
+          try {
+            delegate.saveBytes(INDEX_KEY, mapper.writeValueAsBytes(index));
+          } catch (IOException e) {
+            LOGGER.warn("Unable to save the cache lifecycle index", e);
+          }
+          return null;
+        });
+  }
+
+  private void merge(Map<String, Access> stored) {
+    stored.forEach(
+        (key, theirs) ->
+            index.compute(
+                key,
+                (k, ours) -> {
+                  if (ours == null) {
+                    // saved elsewhere, unless it's since been deleted here
+                    if (!delegate.keyExists(k)) {
+                      return null;
+                    }
+                    totalBytes.addAndGet(theirs.size());
+                    return theirs;
+                  }
+                  Access saved = theirs.createdAt() > ours.createdAt() ? theirs : ours;
+                  totalBytes.addAndGet(saved.size() - ours.size());
+                  return new Access(
+                      saved.size(),
+                      Math.max(ours.lastAccess(), theirs.lastAccess()),
+                      saved.expiresAt(),
+                      saved.createdAt(),
+                      Math.max(ours.hits(), theirs.hits()));
+                }));
+    // evicted elsewhere
+    index.forEach(
+        (key, access) -> {
+          if (!stored.containsKey(key) && !delegate.keyExists(key) && index.remove(key, access)) {
+            totalBytes.addAndGet(-access.size());
+          }
+        });
+  }
+}
@@ -0,0 +1,94 @@
+package org.garethjevans.ai.fd;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads entries from a {@link CacheBundle} in place, with an optional writable overlay on top.
+ * Entries saved to the overlay take precedence over the bundle, so a warm bundle can be topped up
+ * without being rewritten.
+ *
+ * <p>The bundle itself is never written. Without an overlay, entries saved are not kept and entries
+ * deleted are only hidden until the bundle is opened again, which suits CI runs that should not
+ * change the cache they start from.
+ */
+public class BundledCacheService implements CacheService, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BundledCacheService.class);
+
+  private final CacheBundle bundle;
+  private final CacheService overlay;
+  private final Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param overlay where entries are saved, and read from before the bundle, or {@code null}
+   */
+  public BundledCacheService(CacheBundle bundle, CacheService overlay) {
+    this.bundle = bundle;
+    this.overlay = overlay;
+  }
+
+  @Override
+  public boolean keyExists(String cacheKey) {
+    if (overlay != null && overlay.keyExists(cacheKey)) {
+      return true;
+    }
+    String hash = FileCacheService.hash(cacheKey);
+    return !deleted.contains(hash) && bundle.contains(hash);
+  }
+
+  @Override
+  public byte[] getBytes(String cacheKey) {
+    if (overlay != null && overlay.keyExists(cacheKey)) {
+      return overlay.getBytes(cacheKey);
+    }
+    String hash = FileCacheService.hash(cacheKey);
+    byte[] entry = deleted.contains(hash) ? null : bundle.get(hash);
+    if (entry == null) {
+      throw new RuntimeException("No cache entry for " + cacheKey);
+    }
+    return entry;
+  }
+
+  @Override
+  public void saveBytes(String cacheKey, byte[] entry) {
+    if (overlay == null) {
+      LOGGER.debug("Not saving {}, the cache bundle has no overlay", cacheKey);
+      return;
+    }
+    overlay.saveBytes(cacheKey, entry);
+    deleted.remove(FileCacheService.hash(cacheKey));
+  }
+
+  @Override
+  public void delete(String cacheKey) {
+    if (overlay != null) {
+      overlay.delete(cacheKey);
+    }
+    deleted.add(FileCacheService.hash(cacheKey));
+  }
+
+  @Override
+  public void sync(Collection<String> cacheKeys) {
+    if (overlay != null) {
+      overlay.sync(cacheKeys);
+    }
+  }
+
+  @Override
+  public <T> T locked(String cacheKey, Supplier<T> action) {
+    return overlay != null ? overlay.locked(cacheKey, action) : action.get();
+  }
+
+  @Override
+  public void close() throws Exception {
+    bundle.close();
+    if (overlay instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package org.garethjevans.ai.fd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A whole cache directory packed into one file, so a warm cache can be shipped in an image layer or
+ * in test resources and read in place rather than unpacked.
+ *
+ * <p>The file holds a header, every entry deflated on its own, and an index of fixed width records,
+ * sorted by the MD5 hash {@link FileCacheService} names the entry by. A lookup is a binary search
+ * of the memory-mapped index and one inflate, no file system calls. Entries that deflate no smaller
+ * are stored as they are. A bundle is limited to 2GB, the most a single mapping can hold.
+ *
+ * <p>{@link #main} packs a cache directory into a bundle and unpacks a bundle into a directory.
+ */
+public final class CacheBundle implements AutoCloseable {
+
+  private static final int MAGIC = 0x46444342;
+  private static final int VERSION = 1;
+
+  /** Magic, version, entry count, unused and index offset. */
+  private static final int HEADER_BYTES = 24;
+
+  /** Hash, offset, stored length and length. */
+  private static final int INDEX_RECORD_BYTES = 32;
+
+  private static final int HASH_BYTES = 16;
+
+  private static final Pattern ENTRY_NAME = Pattern.compile("[0-9A-F]{32}");
+
+  private final FileChannel channel;
+  private final MappedByteBuffer mapped;
+  private final int count;
+  private final int indexOffset;
+
+  private CacheBundle(FileChannel channel, MappedByteBuffer mapped, Path path) throws IOException {
+    this.channel = channel;
+    this.mapped = mapped;
+    if (mapped.capacity() < HEADER_BYTES || mapped.getInt(0) != MAGIC) {
+      throw new IOException(path + " is not a cache bundle");
+    }
+    if (mapped.getInt(4) != VERSION) {
+      throw new IOException(path + " is a cache bundle of unknown version " + mapped.getInt(4));
+    }
+    this.count = mapped.getInt(8);
+    this.indexOffset = Math.toIntExact(mapped.getLong(16));
+  }
+
+  public static CacheBundle open(Path path) {
+    try {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+      try {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        return new CacheBundle(channel, mapped, path);
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public boolean contains(String hash) {
+    return find(HexFormat.of().parseHex(hash)) >= 0;
+  }
+
+  /** The entry saved under {@code hash}, or {@code null} when the bundle doesn't hold it. */
+  public byte[] get(String hash) {
+    int record = find(HexFormat.of().parseHex(hash));
+    if (record < 0) {
+      return null;
+    }
+    int at = indexOffset + record * INDEX_RECORD_BYTES + HASH_BYTES;
+    int offset = Math.toIntExact(mapped.getLong(at));
+    int storedLength = mapped.getInt(at + 8);
+    byte[] entry = new byte[mapped.getInt(at + 12)];
+    if (storedLength == entry.length) {
+      mapped.get(offset, entry);
+      return entry;
+    }
+
+    byte[] stored = new byte[storedLength];
+    mapped.get(offset, stored);
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(stored);
+      int read = 0;
+      while (read < entry.length) {
+        int n = inflater.inflate(entry, read, entry.length - read);
+        if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+          throw new IllegalStateException("Corrupt entry " + hash + " in the cache bundle");
+        }
+        read += n;
+      }
+    } catch (DataFormatException e) {
+      throw new RuntimeException(e);
+    } finally {
+      inflater.end();
+    }
+    return entry;
+  }
+
+  /** The index record of {@code hash}, by binary search, or -1 when there is none. */
+  private int find(byte[] hash) {
+    byte[] probe = new byte[HASH_BYTES];
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      mapped.get(indexOffset + mid * INDEX_RECORD_BYTES, probe);
+      int cmp = Arrays.compareUnsigned(probe, hash);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Packs every entry of a {@link FileCacheService} directory, flat or sharded, into {@code
+   * bundle}. Lock files and segments are left out.
+   *
+   * @return the number of entries packed
+   */
+  public static int pack(Path cacheDir, Path bundle, int level) throws IOException {
+    // an entry saved in its shard supersedes one left over from the flat layout
+    Map<String, Path> entries = new TreeMap<>();
+    try (Stream<Path> files = Files.walk(cacheDir, 2)) {
+      files
+          .filter(Files::isRegularFile)
+          .filter(file -> ENTRY_NAME.matcher(file.getFileName().toString()).matches())
+          .filter(file -> isEntryOf(cacheDir, file))
+          .sorted((a, b) -> Integer.compare(a.getNameCount(), b.getNameCount()))
+          .forEach(file -> entries.put(file.getFileName().toString(), file));
+    }
+
+    // not a temporary file, which only its owner could read once it's copied into an image
+    Path temp = bundle.resolveSibling(bundle.getFileName() + ".tmp");
+    try {
+      ByteBuffer index = ByteBuffer.allocate(entries.size() * INDEX_RECORD_BYTES);
+      try (FileChannel out =
+          FileChannel.open(
+              temp,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING,
+              StandardOpenOption.WRITE)) {
+        long offset = HEADER_BYTES;
+        out.position(offset);
+        Deflater deflater = new Deflater(level);
+        try {
+          for (Map.Entry<String, Path> e : entries.entrySet()) {
+            byte[] entry = Files.readAllBytes(e.getValue());
+            byte[] stored = deflate(deflater, entry);
+            if (stored.length >= entry.length) {
+              stored = entry;
+            }
+            writeFully(out, ByteBuffer.wrap(stored));
+            index
+                .put(HexFormat.of().parseHex(e.getKey()))
+                .putLong(offset)
+                .putInt(stored.length)
+                .putInt(entry.length);
+            offset += stored.length;
+          }
+        } finally {
+          deflater.end();
+        }
+        if (offset + index.capacity() > Integer.MAX_VALUE) {
+          throw new IOException("The cache is too large for a bundle, " + offset + " bytes");
+        }
+        writeFully(out, index.flip());
+        out.position(0);
+        writeFully(
+            out,
+            ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(entries.size())
+                .putInt(0)
+                .putLong(offset)
+                .flip());
+        out.force(true);
+      }
+      Files.move(temp, bundle, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return entries.size();
+  }
+
+  /**
+   * Unpacks every entry of {@code bundle} into {@code cacheDir}, in the sharded layout of {@link
+   * FileCacheService}, replacing any entries already there.
+   *
+   * @return the number of entries unpacked
+   */
+  public static int unpack(Path bundle, Path cacheDir) throws IOException {
+    try (CacheBundle cacheBundle = open(bundle)) {
+      HexFormat hex = HexFormat.of().withUpperCase();
+      byte[] hash = new byte[HASH_BYTES];
+      for (int i = 0; i < cacheBundle.count; i++) {
+        cacheBundle.mapped.get(cacheBundle.indexOffset + i * INDEX_RECORD_BYTES, hash);
+        String name = hex.formatHex(hash);
+        Path shard = Files.createDirectories(cacheDir.resolve(name.substring(0, 2)));
+        Files.write(shard.resolve(name), cacheBundle.get(name));
+      }
+      return cacheBundle.count;
+    }
+  }
+
+  private static boolean isEntryOf(Path cacheDir, Path file) {
+    Path dir = file.getParent();
+    return dir.equals(cacheDir)
+        || (dir.getParent().equals(cacheDir)
+            && file.getFileName().toString().startsWith(dir.getFileName().toString()));
+  }
+
+  private static byte[] deflate(Deflater deflater, byte[] entry) {
+    deflater.reset();
+    deflater.setInput(entry);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(entry.length / 4 + 16);
+    byte[] buffer = new byte[8192];
+    while (!deflater.finished()) {
+      out.write(buffer, 0, deflater.deflate(buffer));
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  /**
+   * {@code pack <cache dir> <bundle>} or {@code unpack <bundle> <cache dir>}, e.g. {@code java -cp
+   * financial-datasets/target/classes org.garethjevans.ai.fd.CacheBundle pack
+   * financial-datasets/src/main/resources/cache cache.bundle}.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 3 || !(args[0].equals("pack") || args[0].equals("unpack"))) {
+      System.err.println("Usage: CacheBundle pack <cache dir> <bundle>");
+      System.err.println("       CacheBundle unpack <bundle> <cache dir>");
+      System.exit(2);
+    }
+    Path from = Path.of(args[1]);
+    Path to = Path.of(args[2]);
+    if (args[0].equals("pack")) {
+      System.out.println("Packed " + pack(from, to, Deflater.BEST_COMPRESSION) + " entries");
+    } else {
+      System.out.println("Unpacked " + unpack(from, to) + " entries");
+    }
+  }
+}
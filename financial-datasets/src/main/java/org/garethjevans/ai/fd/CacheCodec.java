@@ -0,0 +1,116 @@
+package org.garethjevans.ai.fd;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encodes responses for the cache in a binary format, chosen per endpoint, so that cache hits skip
+ * parsing JSON text. Every entry starts with a header naming its format and format version; entries
+ * without one are JSON text written before the codec was configured, and are read as such.
+ */
+public class CacheCodec {
+
+  /** Never the first byte of UTF-8 text, so can't be mistaken for a JSON entry. */
+  private static final byte MAGIC = (byte) 0xFE;
+
+  private static final byte VERSION = 1;
+
+  /** Magic, format and version. */
+  private static final int HEADER_BYTES = 3;
+
+  public enum Format {
+    JSON,
+    SMILE,
+    CBOR
+  }
+
+  private final Map<Format, ObjectMapper> mappers;
+  private final Format defaultFormat;
+  private final Map<String, Format> formats;
+
+  /**
+   * @param mapper configures the mappers of every format
+   * @param defaultFormat the format of endpoints without their own
+   * @param formats the format per endpoint name, e.g. {@code prices}
+   */
+  public CacheCodec(ObjectMapper mapper, Format defaultFormat, Map<String, Format> formats) {
+    this.mappers =
+        Map.of(
+            Format.JSON, mapper,
+            Format.SMILE, mapper.copyWith(new SmileFactory()),
+            Format.CBOR, mapper.copyWith(new CBORFactory()));
+    this.defaultFormat = defaultFormat;
+    this.formats = formats;
+  }
+
+  Format formatOf(String endpoint) {
+    return formats.getOrDefault(endpoint, defaultFormat);
+  }
+
+  byte[] encode(String endpoint, Object value) throws IOException {
+    Format format = formatOf(endpoint);
+    byte[] body = mappers.get(format).writeValueAsBytes(value);
+    byte[] entry = new byte[HEADER_BYTES + body.length];
+    entry[0] = MAGIC;
+    entry[1] = (byte) format.ordinal();
+    entry[2] = VERSION;
+    System.arraycopy(body, 0, entry, HEADER_BYTES, body.length);
+    return entry;
+  }
+
+  /**
+   * Re-encodes an upstream JSON body token by token, keeping every field and the exact value of
+   * every number. Bodies of endpoints cached as JSON are returned unchanged, without a header.
+   */
+  byte[] transcode(String endpoint, byte[] json) throws IOException {
+    Format format = formatOf(endpoint);
+    if (format == Format.JSON) {
+      return json;
+    }
+    ByteArrayOutputStream entry = new ByteArrayOutputStream(json.length);
+    entry.write(MAGIC);
+    entry.write(format.ordinal());
+    entry.write(VERSION);
+    try (JsonParser parser = mappers.get(Format.JSON).createParser(json);
+        JsonGenerator generator = mappers.get(format).createGenerator(entry)) {
+      while (parser.nextToken() != null) {
+        generator.copyCurrentEventExact(parser);
+      }
+    }
+    return entry.toByteArray();
+  }
+
+  <T> T decode(byte[] entry, Class<T> type) throws IOException {
+    Format format = formatOfEntry(entry);
+    if (format == null) {
+      return mappers.get(Format.JSON).readValue(entry, type);
+    }
+    return mappers.get(format).readValue(entry, HEADER_BYTES, entry.length - HEADER_BYTES, type);
+  }
+
+  /** A parser over the entry in whichever format its header names, for callers decoding tokens. */
+  JsonParser createParser(byte[] entry) throws IOException {
+    Format format = formatOfEntry(entry);
+    if (format == null) {
+      return mappers.get(Format.JSON).createParser(entry);
+    }
+    return mappers.get(format).createParser(entry, HEADER_BYTES, entry.length - HEADER_BYTES);
+  }
+
+  /** The format named by the entry's header, or null for JSON text written without one. */
+  private static Format formatOfEntry(byte[] entry) throws IOException {
+    if (entry.length < HEADER_BYTES || entry[0] != MAGIC) {
+      return null;
+    }
+    if (entry[1] < 0 || entry[1] >= Format.values().length || entry[2] != VERSION) {
+      throw new IOException("Unsupported cache entry format " + entry[1] + " version " + entry[2]);
+    }
+    return Format.values()[entry[1]];
+  }
+}
@@ -0,0 +1,160 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+
+/**
+ * Reports what the cache holds from the lifecycle index of {@link BoundedCacheService}, without
+ * opening any entries: totals and ages per endpoint at {@code /actuator/cacheindex}, and the top
+ * entries by size, age, hits or idle time at {@code /actuator/cacheindex/{order}}.
+ */
+@Endpoint(id = "cacheindex")
+public class CacheIndexEndpoint {
+
+  private static final int DEFAULT_LIMIT = 20;
+
+  /** The ticker of a GET request, or the first of a line item search. */
+  private static final Pattern TICKER =
+      Pattern.compile("[?&]ticker=([^&#\\s]+)|\"tickers\":\\[\"([^\"]+)\"");
+
+  /** Where the path of a request, or the name of derived state, ends. */
+  private static final Pattern REQUEST = Pattern.compile("[? ]|-\\{");
+
+  private final BoundedCacheService cache;
+  private final Clock clock;
+
+  public CacheIndexEndpoint(BoundedCacheService cache, Clock clock) {
+    this.cache = cache;
+    this.clock = clock;
+  }
+
+  /**
+   * @param oldest the age of the oldest entry, or {@code null} when none was saved through the
+   *     index
+   * @param meanAge the mean age of the entries saved through the index
+   */
+  public record EndpointSummary(
+      int entries, long bytes, long hits, Duration oldest, Duration meanAge) {}
+
+  /**
+   * One entry of the index, {@code createdAt} and {@code expiresAt} are {@code null} for entries
+   * adopted by it, which never expire.
+   */
+  public record Entry(
+      String key,
+      String endpoint,
+      String ticker,
+      long size,
+      long hits,
+      Instant createdAt,
+      Instant lastHit,
+      Instant expiresAt) {}
+
+  @ReadOperation
+  public Map<String, EndpointSummary> endpoints() {
+    Map<String, List<BoundedCacheService.Access>> byEndpoint = new TreeMap<>();
+    cache
+        .index()
+        .forEach(
+            (key, access) ->
+                byEndpoint.computeIfAbsent(endpointOf(key), e -> new ArrayList<>()).add(access));
+
+    long now = clock.millis();
+    Map<String, EndpointSummary> summaries = new TreeMap<>();
+    byEndpoint.forEach((endpoint, entries) -> summaries.put(endpoint, summary(entries, now)));
+    return summaries;
+  }
+
+  private static EndpointSummary summary(List<BoundedCacheService.Access> entries, long now) {
+    long bytes = 0;
+    long hits = 0;
+    LongSummaryStatistics ages = new LongSummaryStatistics();
+    for (BoundedCacheService.Access access : entries) {
+      bytes += access.size();
+      hits += access.hits();
+      if (access.createdAt() > 0) {
+        ages.accept(now - access.createdAt());
+      }
+    }
+    if (ages.getCount() == 0) {
+      return new EndpointSummary(entries.size(), bytes, hits, null, null);
+    }
+    return new EndpointSummary(
+        entries.size(),
+        bytes,
+        hits,
+        Duration.ofMillis(ages.getMax()),
+        Duration.ofMillis((long) ages.getAverage()));
+  }
+
+  /**
+   * @param order {@code size}, {@code age}, {@code hits} or {@code idle}, entries are listed
+   *     largest first
+   * @param endpoint only list entries of this endpoint, e.g. {@code prices}
+   */
+  @ReadOperation
+  public List<Entry> entries(
+      @Selector String order, @Nullable Integer limit, @Nullable String endpoint) {
+    Comparator<Entry> largestFirst =
+        switch (order) {
+          case "size" -> Comparator.comparingLong(Entry::size);
+          case "hits" -> Comparator.comparingLong(Entry::hits);
+          // entries of unknown age sort as the youngest
+          case "age" ->
+              Comparator.comparing(
+                  Entry::createdAt, Comparator.nullsFirst(Comparator.<Instant>reverseOrder()));
+          case "idle" -> Comparator.comparing(Entry::lastHit, Comparator.reverseOrder());
+          default ->
+              throw new InvalidEndpointRequestException(
+                  "Unknown order " + order, "Order by size, age, hits or idle");
+        };
+    return cache.index().entrySet().stream()
+        .map(e -> entry(e.getKey(), e.getValue()))
+        .filter(e -> endpoint == null || e.endpoint().equals(endpoint))
+        .sorted(largestFirst.reversed())
+        .limit(limit != null ? limit : DEFAULT_LIMIT)
+        .toList();
+  }
+
+  private static Entry entry(String key, BoundedCacheService.Access access) {
+    return new Entry(
+        key,
+        endpointOf(key),
+        tickerOf(key),
+        access.size(),
+        access.hits(),
+        access.createdAt() > 0 ? Instant.ofEpochMilli(access.createdAt()) : null,
+        Instant.ofEpochMilli(access.lastAccess()),
+        access.createdAt() > 0 ? Instant.ofEpochMilli(access.expiresAt()) : null);
+  }
+
+  /**
+   * The endpoint of a request, without the query or body, or the name of the derived state, e.g.
+   * {@code price-store} for {@code price-store AAPL}.
+   */
+  static String endpointOf(String cacheKey) {
+    return FinancialDatasetsService.endpointOf(REQUEST.split(cacheKey, 2)[0]);
+  }
+
+  static String tickerOf(String cacheKey) {
+    Matcher matcher = TICKER.matcher(cacheKey);
+    if (!matcher.find()) {
+      return null;
+    }
+    return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+  }
+}
@@ -1,66 +1,42 @@
 package org.garethjevans.ai.fd;
 
-import java.io.File;
-import java.io.IOException;
-import java.math.BigInteger;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.function.Supplier;
 
-public class CacheService {
+/** Persists upstream responses, and the state derived from them, by cache key. */
+public interface CacheService {
 
-  private static final Logger LOGGER = LoggerFactory.getLogger(CacheService.class);
+  boolean keyExists(String cacheKey);
 
-  private final File cacheDir;
+  /** The entry exactly as it was passed to {@link #saveBytes}. */
+  byte[] getBytes(String cacheKey);
 
-  public CacheService(File cacheDir) {
-    this.cacheDir = cacheDir;
-  }
+  void saveBytes(String cacheKey, byte[] entry);
 
-  public boolean keyExists(String cacheKey) {
-    String hash = hash(cacheKey);
-    return new File(cacheDir, hash).exists();
-  }
+  /** Removes the entry, if there is one. */
+  void delete(String cacheKey);
 
-  public String get(String cacheKey) {
-    String hash = hash(cacheKey);
+  /**
+   * Forces the entries saved under {@code cacheKeys} to disk, so a batch of entries costs one sync
+   * rather than one each. Stores with nothing to force do nothing.
+   */
+  default void sync(Collection<String> cacheKeys) {}
 
-    Path path = Paths.get(cacheDir.getPath(), hash);
-    try {
-      return Files.readAllLines(path).get(0);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+  /**
+   * Runs {@code action} while holding a lock on {@code cacheKey} that other processes sharing the
+   * cache also respect, so only one of them fetches a missing entry while the others wait for it.
+   * Stores only used by this process don't need one.
+   */
+  default <T> T locked(String cacheKey, Supplier<T> action) {
+    return action.get();
   }
 
-  public void save(String cacheKey, String response) {
-    String hash = hash(cacheKey);
-    LOGGER.info("Saving {} ({})\n{}", cacheKey, hash, response);
-
-    Path path = Paths.get(cacheDir.getPath(), hash);
-    byte[] strToBytes = response.getBytes();
-
-    try {
-      Files.write(path, strToBytes);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+  default String get(String cacheKey) {
+    return new String(getBytes(cacheKey), StandardCharsets.UTF_8);
   }
 
-  private String hash(String cacheKey) {
-    MessageDigest md = null;
-    try {
-      md = MessageDigest.getInstance("MD5");
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException(e);
-    }
-    md.update(cacheKey.getBytes());
-    byte[] digest = md.digest();
-    BigInteger no = new BigInteger(1, digest);
-    return String.format("%032x", no).toUpperCase();
+  default void save(String cacheKey, String response) {
+    saveBytes(cacheKey, response.getBytes(StandardCharsets.UTF_8));
   }
 }
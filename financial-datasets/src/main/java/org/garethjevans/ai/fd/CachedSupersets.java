@@ -0,0 +1,168 @@
+package org.garethjevans.ai.fd;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers, per logical request, which limits and column sets are already cached, so a request for
+ * fewer rows or a subset of the columns is answered from a cached response instead of being sent
+ * upstream. Ten periods of metrics answer a request for five, and one agent's line items answer
+ * another's whenever its columns are among them.
+ *
+ * <p>The index of each logical request is kept in the {@link CacheService} next to the payloads it
+ * points to, so it is shared by every process using the cache directory, and the {@value
+ * #MAX_INDEXES} most recently used indexes are also held in memory so a covered request is answered
+ * without reading one. The index is read again when nothing held covers a request, in case another
+ * process has recorded a response since, and is merged with the one on disk under the cache lock
+ * when a response is recorded.
+ */
+class CachedSupersets {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CachedSupersets.class);
+
+  private static final TypeReference<List<Superset>> SUPERSETS = new TypeReference<>() {};
+
+  /** How many logical requests' indexes are held in memory. */
+  static final int MAX_INDEXES = 4096;
+
+  private final CacheService cacheService;
+  private final ObjectMapper mapper;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Indexes by logical key, least recently used first. Guarded by itself. */
+  private final Map<String, List<Superset>> indexes =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Superset>> eldest) {
+          return size() > MAX_INDEXES;
+        }
+      };
+
+  CachedSupersets(CacheService cacheService, ObjectMapper mapper) {
+    this.cacheService = cacheService;
+    this.mapper = mapper;
+  }
+
+  /** A cached response, its limit and the columns it was requested with. */
+  record Superset(
+      @JsonProperty("cache_key") String cacheKey,
+      @JsonProperty("limit") int limit,
+      @JsonProperty("columns") List<String> columns) {
+
+    boolean covers(int limit, List<String> columns) {
+      return this.limit >= limit && this.columns.containsAll(columns);
+    }
+  }
+
+  /** Sorted and without duplicates, so the same columns in any order build the same cache key. */
+  static List<String> normalize(List<String> columns) {
+    return columns.stream().distinct().sorted().toList();
+  }
+
+  /**
+   * The smallest cached response for {@code logicalKey} with at least {@code limit} rows and every
+   * one of {@code columns}, or {@code null}. The response may since have been evicted, a caller
+   * that finds it gone calls {@link #forget}.
+   */
+  Superset find(String logicalKey, int limit, List<String> columns) {
+    List<Superset> held;
+    synchronized (indexes) {
+      held = indexes.get(logicalKey);
+    }
+    Superset best = held != null ? smallest(held, limit, columns) : null;
+    if (best == null) {
+      List<Superset> stored = supersets(logicalKey);
+      synchronized (indexes) {
+        indexes.put(logicalKey, List.copyOf(stored));
+      }
+      best = smallest(stored, limit, columns);
+    }
+    return best;
+  }
+
+  private static Superset smallest(List<Superset> supersets, int limit, List<String> columns) {
+    Superset best = null;
+    for (Superset superset : supersets) {
+      if (superset.covers(limit, columns) && (best == null || superset.limit() < best.limit())) {
+        best = superset;
+      }
+    }
+    return best;
+  }
+
+  /** Records that the response for {@code limit} rows of {@code columns} is cached. */
+  void record(String logicalKey, int limit, List<String> columns, String cacheKey) {
+    Superset recorded = new Superset(cacheKey, limit, normalize(columns));
+    update(
+        logicalKey,
+        supersets -> {
+          if (supersets.stream().anyMatch(s -> s.covers(limit, columns))) {
+            return false;
+          }
+          // drop what the new response makes redundant
+          supersets.removeIf(s -> recorded.covers(s.limit(), s.columns()));
+          supersets.add(recorded);
+          return true;
+        });
+  }
+
+  /** Drops a response that is no longer cached, so smaller ones are recorded again. */
+  void forget(String logicalKey, Superset superset) {
+    update(logicalKey, supersets -> supersets.remove(superset));
+  }
+
+  /**
+   * Changes the index as it is on disk, under the cache lock so processes sharing the directory
+   * don't overwrite each other's changes, and holds the result.
+   */
+  private void update(String logicalKey, Predicate<List<Superset>> change) {
+    String indexKey = indexKey(logicalKey);
+    lock.lock();
+    try {
+      cacheService.locked(
+          indexKey,
+          () -> {
+            List<Superset> supersets = supersets(logicalKey);
+            if (change.test(supersets)) {
+              try {
+                cacheService.save(indexKey, mapper.writeValueAsString(supersets));
+              } catch (JsonProcessingException e) {
+                LOGGER.warn("Unable to persist cached supersets for {}", logicalKey, e);
+              }
+            }
+            synchronized (indexes) {
+              indexes.put(logicalKey, List.copyOf(supersets));
+            }
+            return null;
+          });
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private List<Superset> supersets(String logicalKey) {
+    String indexKey = indexKey(logicalKey);
+    if (cacheService.keyExists(indexKey)) {
+      try {
+        return new ArrayList<>(mapper.readValue(cacheService.get(indexKey), SUPERSETS));
+      } catch (JsonProcessingException e) {
+        LOGGER.warn("Unable to read cached supersets for {}, ignoring them", logicalKey, e);
+      }
+    }
+    return new ArrayList<>();
+  }
+
+  private static String indexKey(String logicalKey) {
+    return "supersets " + logicalKey;
+  }
+}
@@ -0,0 +1,313 @@
+package org.garethjevans.ai.fd;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deflates entries before handing them to another {@link CacheService}, using a preset dictionary
+ * trained on the entries seen so far. Responses repeat the same field names, tickers and dates
+ * across records and entries, so a dictionary of the most common fragments lets even small entries
+ * compress well.
+ *
+ * <p>Entries stored as JSON contribute the field names and values that recur across them to the
+ * dictionary. Entries in a binary format, such as Smile from the {@link CacheCodec}, which that
+ * can't pick apart, contribute their leading bytes as they are, which hold the same names and
+ * values in the form deflate will see them.
+ *
+ * <p>Until enough entries have been sampled, entries are deflated without a dictionary. The
+ * dictionary is then trained once, saved in the cache itself, and its id written into the header of
+ * every entry compressed with it, so entries stay readable whichever dictionary was current when
+ * they were written. Entries without the header, written before compression was enabled, are
+ * returned as they are.
+ */
+public class CompressedCacheService implements CacheService, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CompressedCacheService.class);
+
+  /** Never the first byte of UTF-8 text, so can't be mistaken for an uncompressed entry. */
+  private static final byte MAGIC = (byte) 0xFD;
+
+  private static final byte VERSION = 1;
+
+  /** Magic, version, dictionary id and uncompressed length. */
+  private static final int HEADER_BYTES = 10;
+
+  /** Entries compressed without a dictionary. */
+  private static final int NO_DICTIONARY = 0;
+
+  /** Deflate only looks back 32KB, so a larger dictionary is never used. */
+  private static final int MAX_DICTIONARY_BYTES = 32 * 1024;
+
+  /** Only the start of each sample is used, entries are repetitive enough. */
+  private static final int MAX_SAMPLE_BYTES = 64 * 1024;
+
+  /** Prefixes the keys dictionaries are saved under, which must never be evicted. */
+  static final String DICTIONARY_KEY = "compression-dictionary ";
+
+  private static final String CURRENT_DICTIONARY_KEY = DICTIONARY_KEY + "current";
+
+  /**
+   * A JSON field name and its value when that is a string or scalar, e.g. {@code "ticker":"AAPL"}.
+   */
+  private static final Pattern FRAGMENT =
+      Pattern.compile("(\"[^\"\\\\]{1,64}\":)(\"[^\"\\\\]{0,64}\"|[-\\w.]{1,32})");
+
+  private final CacheService delegate;
+  private final int level;
+  private final int sampleSize;
+  private final int dictionaryBytes;
+  private final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<>();
+  private final List<byte[]> samples = new ArrayList<>();
+  private final ReentrantLock trainingLock = new ReentrantLock();
+  private volatile int currentDictionary = NO_DICTIONARY;
+
+  /**
+   * @param level the deflate level, 1 to 9
+   * @param sampleSize how many entries to train the dictionary on
+   * @param dictionaryBytes the size of the dictionary, at most 32KB
+   */
+  public CompressedCacheService(
+      CacheService delegate, int level, int sampleSize, int dictionaryBytes) {
+    this.delegate = delegate;
+    this.level = level;
+    this.sampleSize = sampleSize;
+    this.dictionaryBytes = Math.min(dictionaryBytes, MAX_DICTIONARY_BYTES);
+    if (delegate.keyExists(CURRENT_DICTIONARY_KEY)) {
+      currentDictionary = Integer.parseInt(delegate.get(CURRENT_DICTIONARY_KEY));
+    }
+  }
+
+  @Override
+  public boolean keyExists(String cacheKey) {
+    return delegate.keyExists(cacheKey);
+  }
+
+  @Override
+  public byte[] getBytes(String cacheKey) {
+    byte[] stored = delegate.getBytes(cacheKey);
+    if (!isCompressed(stored)) {
+      sample(stored);
+      return stored;
+    }
+    ByteBuffer header = ByteBuffer.wrap(stored, 2, HEADER_BYTES - 2);
+    int dictionaryId = header.getInt();
+    byte[] entry = new byte[header.getInt()];
+
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(stored, HEADER_BYTES, stored.length - HEADER_BYTES);
+      // once the entry is full, inflating into a spare byte lets the checksum be read
+      byte[] spare = new byte[1];
+      int read = 0;
+      while (!inflater.finished()) {
+        int n =
+            read < entry.length
+                ? inflater.inflate(entry, read, entry.length - read)
+                : inflater.inflate(spare);
+        if (n == 0 && inflater.needsDictionary()) {
+          inflater.setDictionary(dictionary(dictionaryId));
+        } else if ((n == 0 && inflater.needsInput()) || (n > 0 && read == entry.length)) {
+          throw new IllegalStateException("Corrupt cache entry " + cacheKey);
+        }
+        read += n;
+      }
+    } catch (DataFormatException e) {
+      throw new RuntimeException(e);
+    } finally {
+      inflater.end();
+    }
+    return entry;
+  }
+
+  @Override
+  public void saveBytes(String cacheKey, byte[] entry) {
+    sample(entry);
+    int dictionaryId = currentDictionary;
+
+    Deflater deflater = new Deflater(level);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(entry.length / 4 + HEADER_BYTES);
+    try {
+      if (dictionaryId != NO_DICTIONARY) {
+        deflater.setDictionary(dictionary(dictionaryId));
+      }
+      deflater.setInput(entry);
+      deflater.finish();
+      out.writeBytes(
+          ByteBuffer.allocate(HEADER_BYTES)
+              .put(MAGIC)
+              .put(VERSION)
+              .putInt(dictionaryId)
+              .putInt(entry.length)
+              .array());
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        out.write(buffer, 0, deflater.deflate(buffer));
+      }
+    } finally {
+      deflater.end();
+    }
+    delegate.saveBytes(cacheKey, out.toByteArray());
+  }
+
+  @Override
+  public void delete(String cacheKey) {
+    delegate.delete(cacheKey);
+  }
+
+  @Override
+  public void sync(Collection<String> cacheKeys) {
+    delegate.sync(cacheKeys);
+  }
+
+  @Override
+  public <T> T locked(String cacheKey, Supplier<T> action) {
+    return delegate.locked(cacheKey, action);
+  }
+
+  @Override
+  public void close() throws Exception {
+    if (delegate instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  static boolean isCompressed(byte[] stored) {
+    return stored.length >= HEADER_BYTES && stored[0] == MAGIC && stored[1] == VERSION;
+  }
+
+  /** The dictionary an entry was compressed with, {@code 0} for none. */
+  static int dictionaryIdOf(byte[] stored) {
+    return ByteBuffer.wrap(stored, 2, 4).getInt();
+  }
+
+  private byte[] dictionary(int id) {
+    return dictionaries.computeIfAbsent(id, i -> delegate.getBytes(DICTIONARY_KEY + i));
+  }
+
+  /** Keeps the start of an entry for training, and trains once there are enough. */
+  private void sample(byte[] entry) {
+    if (currentDictionary != NO_DICTIONARY) {
+      return;
+    }
+    trainingLock.lock();
+    try {
+      if (currentDictionary != NO_DICTIONARY) {
+        return;
+      }
+      samples.add(Arrays.copyOf(entry, Math.min(entry.length, MAX_SAMPLE_BYTES)));
+      if (samples.size() < sampleSize) {
+        return;
+      }
+
+      byte[] dictionary = train(samples, dictionaryBytes);
+      samples.clear();
+      if (dictionary.length == 0) {
+        return;
+      }
+      Adler32 checksum = new Adler32();
+      checksum.update(dictionary);
+      // content addressed, so processes sharing the cache don't overwrite each other's
+      int id = (int) checksum.getValue();
+      delegate.saveBytes(DICTIONARY_KEY + id, dictionary);
+      delegate.save(CURRENT_DICTIONARY_KEY, Integer.toString(id));
+      dictionaries.put(id, dictionary);
+      currentDictionary = id;
+      LOGGER.info("Trained a {} byte compression dictionary {}", dictionary.length, id);
+    } finally {
+      trainingLock.unlock();
+    }
+  }
+
+  /**
+   * Builds a dictionary from the samples: the leading bytes of binary samples, then the field names
+   * and field values that recur across JSON samples, ordered so the fragments saving the most bytes
+   * come last, closest to the data and so cheapest to refer back to.
+   */
+  static byte[] train(List<byte[]> samples, int maxBytes) {
+    List<byte[]> json = new ArrayList<>();
+    List<byte[]> binary = new ArrayList<>();
+    for (byte[] sample : samples) {
+      (isJson(sample) ? json : binary).add(sample);
+    }
+
+    byte[] fragments = fragments(json, binary.isEmpty() ? maxBytes : maxBytes / 2);
+    ByteArrayOutputStream dictionary = new ByteArrayOutputStream(maxBytes);
+    int rawBytes = maxBytes - fragments.length;
+    if (!binary.isEmpty() && rawBytes > 0) {
+      // an equal share of each, so no one sample crowds out the others
+      int share = Math.max(1, rawBytes / binary.size());
+      for (byte[] sample : binary) {
+        int length = Math.min(Math.min(share, sample.length), rawBytes - dictionary.size());
+        dictionary.write(sample, 0, length);
+      }
+    }
+    dictionary.writeBytes(fragments);
+    return dictionary.toByteArray();
+  }
+
+  private static boolean isJson(byte[] sample) {
+    for (byte b : sample) {
+      if (!Character.isWhitespace(b)) {
+        return b == '{' || b == '[';
+      }
+    }
+    return false;
+  }
+
+  /** The recurring field names and values of JSON samples, most valuable last. */
+  private static byte[] fragments(List<byte[]> samples, int maxBytes) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (byte[] sample : samples) {
+      Matcher fragment = FRAGMENT.matcher(new String(sample, StandardCharsets.UTF_8));
+      while (fragment.find()) {
+        counts.merge(fragment.group(), 1, Integer::sum);
+        counts.merge(fragment.group(1), 1, Integer::sum);
+      }
+    }
+
+    List<Map.Entry<String, Integer>> recurring =
+        counts.entrySet().stream()
+            .filter(e -> e.getValue() > 1)
+            .sorted(
+                Comparator.comparingLong(
+                        (Map.Entry<String, Integer> e) -> (long) e.getValue() * e.getKey().length())
+                    .reversed())
+            .toList();
+
+    List<byte[]> chosen = new ArrayList<>();
+    int size = 0;
+    for (Map.Entry<String, Integer> e : recurring) {
+      byte[] bytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+      if (size + bytes.length > maxBytes) {
+        continue;
+      }
+      chosen.add(bytes);
+      size += bytes.length;
+    }
+
+    ByteArrayOutputStream fragments = new ByteArrayOutputStream(size);
+    for (int i = chosen.size() - 1; i >= 0; i--) {
+      fragments.writeBytes(chosen.get(i));
+    }
+    return fragments.toByteArray();
+  }
+}
@@ -0,0 +1,71 @@
+package org.garethjevans.ai.fd;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.garethjevans.ai.fd.PriceStore.DateRange;
+
+/** The date ranges for which everything is held, kept disjoint. Not thread safe. */
+final class CoveredRanges {
+
+  /** Covered ranges by start date, never overlapping or adjacent. */
+  private final TreeMap<LocalDate, LocalDate> covered = new TreeMap<>();
+
+  boolean covers(LocalDate date) {
+    Map.Entry<LocalDate, LocalDate> range = covered.floorEntry(date);
+    return range != null && !range.getValue().isBefore(date);
+  }
+
+  /** The parts of the window not yet covered, oldest first. */
+  List<DateRange> missing(LocalDate startDate, LocalDate endDate) {
+    List<DateRange> gaps = new ArrayList<>();
+    LocalDate cursor = startDate;
+    Map.Entry<LocalDate, LocalDate> before = covered.floorEntry(startDate);
+    if (before != null && !before.getValue().isBefore(cursor)) {
+      cursor = before.getValue().plusDays(1);
+    }
+    for (Map.Entry<LocalDate, LocalDate> range :
+        covered.subMap(startDate, false, endDate, true).entrySet()) {
+      if (range.getKey().isAfter(cursor)) {
+        gaps.add(new DateRange(cursor, range.getKey().minusDays(1)));
+      }
+      if (!range.getValue().isBefore(cursor)) {
+        cursor = range.getValue().plusDays(1);
+      }
+    }
+    if (!cursor.isAfter(endDate)) {
+      gaps.add(new DateRange(cursor, endDate));
+    }
+    return gaps;
+  }
+
+  /** Adds a range to the coverage, merging it with any range it overlaps or touches. */
+  void cover(DateRange range) {
+    LocalDate start = range.startDate();
+    LocalDate end = range.endDate();
+    if (end.isBefore(start)) {
+      return;
+    }
+    Map.Entry<LocalDate, LocalDate> before = covered.floorEntry(start);
+    if (before != null && !before.getValue().plusDays(1).isBefore(start)) {
+      start = before.getKey();
+      end = before.getValue().isAfter(end) ? before.getValue() : end;
+    }
+    for (Map.Entry<LocalDate, LocalDate> next = covered.ceilingEntry(start);
+        next != null && !next.getKey().isAfter(end.plusDays(1));
+        next = covered.ceilingEntry(start)) {
+      covered.remove(next.getKey());
+      end = next.getValue().isAfter(end) ? next.getValue() : end;
+    }
+    covered.put(start, end);
+  }
+
+  /** The covered ranges, oldest first. */
+  List<DateRange> ranges() {
+    List<DateRange> ranges = new ArrayList<>();
+    covered.forEach((start, end) -> ranges.add(new DateRange(start, end)));
+    return ranges;
+  }
+}
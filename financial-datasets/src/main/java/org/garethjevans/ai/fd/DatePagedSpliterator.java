@@ -0,0 +1,86 @@
+package org.garethjevans.ai.fd;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Lazily pages backwards through a date-bounded endpoint. A page is only requested once the
+ * consumer has pulled every record of the previous one, so a short-circuited stream stops making
+ * upstream calls.
+ */
+class DatePagedSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+  private final Function<LocalDate, List<T>> get;
+  private final Function<T, LocalDate> extractDate;
+  private final LocalDate startDate;
+  private final int pageSize;
+
+  private LocalDate batchEndDate;
+  private Iterator<T> page = Collections.emptyIterator();
+  // records on the oldest date of the previous page, which the next page will return again
+  private Set<T> boundary = Set.of();
+  private boolean lastPage;
+
+  /**
+   * @param get requests the page ending at the given date
+   */
+  DatePagedSpliterator(
+      Function<LocalDate, List<T>> get,
+      Function<T, LocalDate> extractDate,
+      LocalDate startDate,
+      LocalDate endDate,
+      int pageSize) {
+    super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+    this.get = get;
+    this.extractDate = extractDate;
+    this.startDate = startDate;
+    this.batchEndDate = endDate;
+    this.pageSize = pageSize;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    while (!page.hasNext()) {
+      if (lastPage) {
+        return false;
+      }
+      fetchNextPage();
+    }
+    action.accept(page.next());
+    return true;
+  }
+
+  private void fetchNextPage() {
+    List<T> batch = get.apply(batchEndDate);
+    Set<T> previousBoundary = boundary;
+    page = batch.stream().filter(t -> !previousBoundary.contains(t)).iterator();
+
+    LocalDate oldest =
+        batch.stream()
+            .map(extractDate)
+            .filter(Objects::nonNull)
+            .min(LocalDate::compareTo)
+            .orElse(null);
+
+    if (batch.size() < pageSize
+        || oldest == null
+        || !oldest.isBefore(batchEndDate)
+        || oldest.isBefore(startDate)) {
+      lastPage = true;
+      return;
+    }
+
+    boundary =
+        batch.stream().filter(t -> oldest.equals(extractDate.apply(t))).collect(Collectors.toSet());
+    batchEndDate = oldest;
+  }
+}
@@ -0,0 +1,194 @@
+package org.garethjevans.ai.fd;
+
+import static org.garethjevans.ai.fd.Futures.await;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pages through date-bounded endpoints (insider trades, news) by splitting {@code [startDate,
+ * endDate]} into sub-windows that are fetched concurrently.
+ *
+ * <p>The number of windows adapts to what earlier responses have shown: the density of records per
+ * day for each ticker, and the largest page the endpoint has returned. With nothing learned yet a
+ * single window covering the whole range is requested, which is the same request (and cache key) as
+ * the sequential pagination.
+ */
+class DateWindowPaginator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DateWindowPaginator.class);
+
+  /** Widens the range estimated from the density so that a slightly busier period still fits. */
+  private static final double COVERAGE_MARGIN = 1.25;
+
+  private final int maxParallelWindows;
+  private final ConcurrentMap<String, Double> recordsPerDay = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Integer> largestPage = new ConcurrentHashMap<>();
+
+  DateWindowPaginator(int maxParallelWindows) {
+    this.maxParallelWindows = maxParallelWindows;
+  }
+
+  /**
+   * @param get performs a single request for the window {@code (windowStart, windowEnd)}
+   * @return at most {@code limit} records, newest first, with duplicates removed
+   */
+  <T> List<T> fetch(
+      String endpoint,
+      String ticker,
+      BiFunction<LocalDate, LocalDate, List<T>> get,
+      Function<T, LocalDate> extractDate,
+      LocalDate startDate,
+      LocalDate endDate,
+      int limit) {
+    String densityKey = endpoint + ":" + ticker;
+    long days = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+
+    LocalDate coverStart = startDate;
+    int windows = 1;
+    Double density = recordsPerDay.get(densityKey);
+    if (density != null && density > 0) {
+      long coverDays = Math.min(days, (long) Math.ceil(limit * COVERAGE_MARGIN / density));
+      int pageSize = Math.min(limit, largestPage.getOrDefault(endpoint, limit));
+      coverStart = endDate.minusDays(coverDays - 1);
+      windows = (int) Math.ceil(density * coverDays / pageSize);
+      windows = (int) Math.max(1, Math.min(Math.min(windows, maxParallelWindows), coverDays));
+    }
+
+    LOGGER.debug(
+        "fetching {} for {} from {} to {} in {} window(s)",
+        endpoint,
+        ticker,
+        coverStart,
+        endDate,
+        windows);
+
+    List<T> all = new ArrayList<>();
+    if (windows == 1) {
+      all.addAll(fetchWindow(endpoint, get, extractDate, coverStart, endDate, limit));
+    } else {
+      try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        List<Future<List<T>>> futures = new ArrayList<>();
+        for (DateWindow window : split(coverStart, endDate, windows)) {
+          futures.add(
+              executor.submit(
+                  () ->
+                      fetchWindow(
+                          endpoint,
+                          get,
+                          extractDate,
+                          window.startDate(),
+                          window.endDate(),
+                          limit)));
+        }
+        for (Future<List<T>> future : futures) {
+          all.addAll(await(future));
+        }
+      }
+    }
+
+    // the density estimate was too optimistic, fill in the older part of the range
+    if (all.size() < limit && coverStart.isAfter(startDate)) {
+      all.addAll(
+          fetchWindow(endpoint, get, extractDate, startDate, coverStart.minusDays(1), limit));
+    }
+
+    List<T> merged =
+        all.stream()
+            .sorted(
+                Comparator.comparing(extractDate, Comparator.nullsLast(Comparator.reverseOrder())))
+            .distinct()
+            .limit(limit)
+            .toList();
+
+    recordDensity(densityKey, merged, extractDate, endDate);
+    return merged;
+  }
+
+  /** Sequentially pages backwards through a single window, as the API only pages by end date. */
+  private <T> List<T> fetchWindow(
+      String endpoint,
+      BiFunction<LocalDate, LocalDate, List<T>> get,
+      Function<T, LocalDate> extractDate,
+      LocalDate windowStart,
+      LocalDate windowEnd,
+      int limit) {
+    List<T> window = new ArrayList<>();
+    LocalDate batchEndDate = windowEnd;
+
+    while (true) {
+      List<T> batch = get.apply(windowStart, batchEndDate);
+      window.addAll(batch);
+
+      // a page the size of the largest one seen so far may have been truncated by the API
+      int pageSize = Math.min(limit, largestPage.getOrDefault(endpoint, limit));
+      largestPage.merge(endpoint, batch.size(), Math::max);
+      if (batch.size() < pageSize || window.size() >= limit) {
+        return window;
+      }
+
+      LocalDate oldest =
+          batch.stream()
+              .map(extractDate)
+              .filter(d -> d != null)
+              .min(LocalDate::compareTo)
+              .orElse(null);
+      if (oldest == null || !oldest.isBefore(batchEndDate) || oldest.isBefore(windowStart)) {
+        return window;
+      }
+      batchEndDate = oldest;
+    }
+  }
+
+  /**
+   * Records per day between the oldest record returned and the end date. Measuring from the oldest
+   * record rather than the requested start keeps the estimate honest when a page was truncated.
+   */
+  private <T> void recordDensity(
+      String densityKey, List<T> merged, Function<T, LocalDate> extractDate, LocalDate endDate) {
+    LocalDate oldest =
+        merged.stream()
+            .map(extractDate)
+            .filter(d -> d != null)
+            .min(LocalDate::compareTo)
+            .orElse(null);
+    if (oldest == null) {
+      recordsPerDay.put(densityKey, 0d);
+      return;
+    }
+    long coveredDays = Math.max(1, ChronoUnit.DAYS.between(oldest, endDate) + 1);
+    recordsPerDay.put(densityKey, merged.size() / (double) coveredDays);
+  }
+
+  /** Splits the range into {@code count} contiguous, non-overlapping windows, newest first. */
+  static List<DateWindow> split(LocalDate startDate, LocalDate endDate, int count) {
+    long days = ChronoUnit.DAYS.between(startDate, endDate) + 1;
+    long windowDays = (long) Math.ceil(days / (double) count);
+
+    List<DateWindow> windows = new ArrayList<>();
+    LocalDate windowEnd = endDate;
+    while (!windowEnd.isBefore(startDate)) {
+      LocalDate windowStart = windowEnd.minusDays(windowDays - 1);
+      if (windowStart.isBefore(startDate)) {
+        windowStart = startDate;
+      }
+      windows.add(new DateWindow(windowStart, windowEnd));
+      windowEnd = windowStart.minusDays(1);
+    }
+    return windows;
+  }
+
+  record DateWindow(LocalDate startDate, LocalDate endDate) {}
+}
@@ -0,0 +1,80 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * When each live entry was last fetched, kept in the {@link CacheService} next to the entry so it
+ * is shared by every process using the cache directory. The {@value #MAX_HELD} most recently used
+ * times are also held in memory, and only read again once the time held is no longer fresh, in case
+ * another process has fetched the entry since.
+ */
+class FetchTimes {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FetchTimes.class);
+
+  static final int MAX_HELD = 4096;
+
+  private final CacheService cacheService;
+
+  /** Fetch times by cache key, least recently used first. Guarded by itself. */
+  private final Map<String, Instant> held =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Instant> eldest) {
+          return size() > MAX_HELD;
+        }
+      };
+
+  FetchTimes(CacheService cacheService) {
+    this.cacheService = cacheService;
+  }
+
+  /** Whether the entry under {@code cacheKey} was fetched at a time {@code fresh} accepts. */
+  boolean isFresh(String cacheKey, Predicate<Instant> fresh) {
+    Instant fetchedAt;
+    synchronized (held) {
+      fetchedAt = held.get(cacheKey);
+    }
+    if (fetchedAt != null && fresh.test(fetchedAt)) {
+      return true;
+    }
+    fetchedAt = read(cacheKey);
+    if (fetchedAt == null) {
+      return false;
+    }
+    synchronized (held) {
+      held.put(cacheKey, fetchedAt);
+    }
+    return fresh.test(fetchedAt);
+  }
+
+  void record(String cacheKey, Instant fetchedAt) {
+    cacheService.save(timeKey(cacheKey), fetchedAt.toString());
+    synchronized (held) {
+      held.put(cacheKey, fetchedAt);
+    }
+  }
+
+  private Instant read(String cacheKey) {
+    String timeKey = timeKey(cacheKey);
+    if (!cacheService.keyExists(timeKey)) {
+      return null;
+    }
+    try {
+      return Instant.parse(cacheService.get(timeKey).trim());
+    } catch (DateTimeParseException e) {
+      LOGGER.warn("Unable to read when {} was fetched, fetching it again", cacheKey, e);
+      return null;
+    }
+  }
+
+  private static String timeKey(String cacheKey) {
+    return "fetched " + cacheKey;
+  }
+}
@@ -0,0 +1,264 @@
+package org.garethjevans.ai.fd;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores each entry in its own file, named by the MD5 hash of its key. Sharded, files are kept in
+ * one of 256 subdirectories named by the first two characters of the hash, so no directory grows
+ * large enough to slow down lookups. Entries saved in the flat layout are still read from the top
+ * of the directory, and move into their shard when they are next saved.
+ *
+ * <p>The directory may be shared by several processes. Entries are written to a temporary file and
+ * renamed into place, so readers never see one half written, and {@link #locked} takes a lock file
+ * per key in {@code locks/}, so only one process fetches a missing entry.
+ */
+public class FileCacheService implements CacheService {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(FileCacheService.class);
+
+  /** How often to check whether another process has released a key. */
+  private static final Duration LOCK_POLL_INTERVAL = Duration.ofMillis(50);
+
+  static final int DEFAULT_LOG_PREVIEW_SIZE = 256;
+
+  private final File cacheDir;
+  private final Duration lockTimeout;
+  private final boolean sharded;
+  private final int logPreviewSize;
+
+  public FileCacheService(File cacheDir) {
+    this(cacheDir, Duration.ofMinutes(1));
+  }
+
+  /**
+   * @param lockTimeout how long to wait for another process holding the lock on a key, before going
+   *     ahead without it
+   */
+  public FileCacheService(File cacheDir, Duration lockTimeout) {
+    this(cacheDir, lockTimeout, true);
+  }
+
+  /**
+   * @param lockTimeout how long to wait for another process holding the lock on a key, before going
+   *     ahead without it
+   * @param sharded save entries in subdirectories by hash prefix rather than in a flat directory
+   */
+  public FileCacheService(File cacheDir, Duration lockTimeout, boolean sharded) {
+    this(cacheDir, lockTimeout, sharded, DEFAULT_LOG_PREVIEW_SIZE);
+  }
+
+  /**
+   * @param lockTimeout how long to wait for another process holding the lock on a key, before going
+   *     ahead without it
+   * @param sharded save entries in subdirectories by hash prefix rather than in a flat directory
+   * @param logPreviewSize how many characters of an entry saved as text are logged
+   */
+  public FileCacheService(
+      File cacheDir, Duration lockTimeout, boolean sharded, int logPreviewSize) {
+    this.cacheDir = cacheDir;
+    this.lockTimeout = lockTimeout;
+    this.sharded = sharded;
+    this.logPreviewSize = logPreviewSize;
+  }
+
+  @Override
+  public boolean keyExists(String cacheKey) {
+    String hash = hash(cacheKey);
+    return Files.exists(pathOf(hash)) || (sharded && Files.exists(flatPathOf(hash)));
+  }
+
+  @Override
+  public byte[] getBytes(String cacheKey) {
+    String hash = hash(cacheKey);
+    try {
+      try {
+        return Files.readAllBytes(pathOf(hash));
+      } catch (NoSuchFileException e) {
+        if (!sharded) {
+          throw e;
+        }
+        return Files.readAllBytes(flatPathOf(hash));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void save(String cacheKey, String response) {
+    if (LOGGER.isInfoEnabled()) {
+      LOGGER.info(
+          "Saving {} ({})\n{}", cacheKey, hash(cacheKey), preview(response, logPreviewSize));
+    }
+    saveBytes(cacheKey, response.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public void saveBytes(String cacheKey, byte[] entry) {
+    String hash = hash(cacheKey);
+    LOGGER.debug("Saving {} ({}, {} bytes)", cacheKey, hash, entry.length);
+
+    Path path = pathOf(hash);
+    try {
+      Files.createDirectories(path.getParent());
+      Path temp = Files.createTempFile(path.getParent(), hash + ".", ".tmp");
+      try {
+        Files.write(temp, entry);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+      if (sharded) {
+        Files.deleteIfExists(flatPathOf(hash));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void delete(String cacheKey) {
+    try {
+      String hash = hash(cacheKey);
+      Files.deleteIfExists(pathOf(hash));
+      if (sharded) {
+        Files.deleteIfExists(flatPathOf(hash));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Forces each file, then the directories they were renamed into. */
+  @Override
+  public void sync(Collection<String> cacheKeys) {
+    Set<Path> dirs = new HashSet<>();
+    try {
+      for (String cacheKey : cacheKeys) {
+        Path path = pathOf(hash(cacheKey));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          channel.force(true);
+          dirs.add(path.getParent());
+        } catch (NoSuchFileException e) {
+          // deleted since it was saved
+        }
+      }
+      for (Path dir : dirs) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+          channel.force(true);
+        } catch (IOException e) {
+          // not every platform can open a directory, the rename is as durable as it gets there
+          LOGGER.debug("Unable to sync {}", dir, e);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Lock files are left in place once released, deleting one could let a process that has just
+   * opened it lock a file nobody else will see.
+   */
+  @Override
+  public <T> T locked(String cacheKey, Supplier<T> action) {
+    try {
+      Path locks = Files.createDirectories(Paths.get(cacheDir.getPath(), "locks"));
+      try (FileChannel channel =
+          FileChannel.open(
+              locks.resolve(hash(cacheKey) + ".lock"),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE)) {
+        FileLock lock = acquire(channel, cacheKey);
+        try {
+          return action.get();
+        } finally {
+          if (lock != null) {
+            lock.release();
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Waits for the lock on a key, or {@code null} when it's held for longer than the timeout. */
+  private FileLock acquire(FileChannel channel, String cacheKey) throws IOException {
+    long deadline = System.nanoTime() + lockTimeout.toNanos();
+    while (true) {
+      try {
+        FileLock lock = channel.tryLock();
+        if (lock != null) {
+          return lock;
+        }
+      } catch (OverlappingFileLockException e) {
+        // held by another thread of this process, through another FileCacheService
+      }
+      if (System.nanoTime() > deadline) {
+        LOGGER.warn("Gave up waiting {} for the lock on {}", lockTimeout, cacheKey);
+        return null;
+      }
+      try {
+        Thread.sleep(LOCK_POLL_INTERVAL);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private Path pathOf(String hash) {
+    if (!sharded) {
+      return flatPathOf(hash);
+    }
+    return Paths.get(cacheDir.getPath(), hash.substring(0, 2), hash);
+  }
+
+  private Path flatPathOf(String hash) {
+    return Paths.get(cacheDir.getPath(), hash);
+  }
+
+  /** The first {@code size} characters of {@code payload}, saying how many more were left out. */
+  static String preview(String payload, int size) {
+    if (payload.length() <= size) {
+      return payload;
+    }
+    return payload.substring(0, size) + "... (" + (payload.length() - size) + " more characters)";
+  }
+
+  /** The name of the file an entry is saved in, the upper case MD5 hash of its key. */
+  static String hash(String cacheKey) {
+    MessageDigest md = null;
+    try {
+      md = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    md.update(cacheKey.getBytes());
+    byte[] digest = md.digest();
+    BigInteger no = new BigInteger(1, digest);
+    return String.format("%032x", no).toUpperCase();
+  }
+}
@@ -0,0 +1,60 @@
+package org.garethjevans.ai.fd;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The market data the agents analyse, answered by {@link FinancialDatasetsService} from the
+ * upstream API and its cache, or by {@link GatewayFinancialDatasetsService} from a data gateway.
+ */
+public interface FinancialDatasets {
+
+  /** Everything that is currently being served stale for {@code ticker}, keyed by endpoint name. */
+  Map<String, Staleness> staleness(String ticker);
+
+  Facts companyFacts(String ticker);
+
+  List<Price> getPrices(String ticker, LocalDate startDate, LocalDate endDate);
+
+  /** The same bars as {@link #getPrices}, held as primitive columns. */
+  PriceSeries getPriceSeries(String ticker, LocalDate startDate, LocalDate endDate);
+
+  /** Metrics newest first. */
+  List<Metrics> getFinancialMetrics(String ticker, LocalDate endDate, Period period, int limit);
+
+  /** Line items newest first. */
+  List<LineItem> searchLineItems(
+      String ticker, LocalDate endDate, List<String> items, Period period, int limit);
+
+  /** Line items newest first, by ticker. */
+  Map<String, List<LineItem>> searchLineItems(
+      List<String> tickers, LocalDate endDate, List<String> items, Period period, int limit);
+
+  List<InsiderTrade> getInsiderTrades(
+      String ticker, LocalDate startDate, LocalDate endDate, int limit);
+
+  /**
+   * Streams insider trades newest first, requesting pages of {@code pageSize} only as the stream is
+   * consumed.
+   */
+  Stream<InsiderTrade> streamInsiderTrades(
+      String ticker, LocalDate startDate, LocalDate endDate, int pageSize);
+
+  List<CompanyNews> getCompanyNews(
+      String ticker, LocalDate startDate, LocalDate endDate, int limit);
+
+  /**
+   * Streams company news newest first, requesting pages of {@code pageSize} only as the stream is
+   * consumed.
+   */
+  Stream<CompanyNews> streamCompanyNews(
+      String ticker, LocalDate startDate, LocalDate endDate, int pageSize);
+
+  BigDecimal getMarketCap(String ticker, LocalDate endDate);
+
+  /** Every section of the request, in a single call. */
+  TickerDataBundle getTickerData(TickerDataRequest request);
+}
@@ -1,13 +1,45 @@
 package org.garethjevans.ai.fd;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
 import java.io.File;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.client.RestClient;
 
 @AutoConfiguration
+@EnableConfigurationProperties({
+  FinancialDatasetsHttpClientProperties.class,
+  FinancialDatasetsLimiterProperties.class,
+  FinancialDatasetsResilienceProperties.class,
+  FinancialDatasetsFreshnessProperties.class,
+  FinancialDatasetsMemoryCacheProperties.class,
+  FinancialDatasetsCompressionProperties.class,
+  FinancialDatasetsCodecProperties.class,
+  FinancialDatasetsLifecycleProperties.class,
+  FinancialDatasetsBundleProperties.class,
+  FinancialDatasetsWriteBehindProperties.class
+})
+@ConditionalOnMissingBean(FinancialDatasets.class)
 public class FinancialDatasetsAutoConfiguration {
 
   @Bean
@@ -15,9 +47,215 @@ public class FinancialDatasetsAutoConfiguration {
     return RestClient.builder();
   }
 
+  /**
+   * The lifecycle of the cache and the index of its entries, opted into by the process that owns
+   * the cache. Closed with the {@code cacheService} wrapping it.
+   */
+  @Bean(destroyMethod = "")
+  @ConditionalOnProperty(
+      prefix = "financial.datasets.cache.lifecycle",
+      name = "enabled",
+      havingValue = "true")
+  public BoundedCacheService financialDatasetsCacheLifecycle(
+      @Value("${financial.datasets.cache.dir}") String cacheDir,
+      @Value("${financial.datasets.cache.backend:files}") String backend,
+      @Value("${financial.datasets.cache.sharded:true}") boolean sharded,
+      @Value("${financial.datasets.cache.log-preview-size:256}") int logPreviewSize,
+      @Value("${financial.datasets.cache.segments.max-size:64MB}") DataSize maxSegmentSize,
+      @Value("${financial.datasets.cache.segments.compaction-interval:10m}")
+          Duration compactionInterval,
+      FinancialDatasetsBundleProperties bundle,
+      FinancialDatasetsLifecycleProperties lifecycle,
+      ObjectProvider<FreshnessPolicy> freshness,
+      ObjectMapper mapper,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    BoundedCacheService bounded =
+        new BoundedCacheService(
+            store(
+                cacheDir,
+                backend,
+                sharded,
+                logPreviewSize,
+                maxSegmentSize,
+                compactionInterval,
+                bundle),
+            mapper,
+            lifecycle.getMaxSize().toBytes(),
+            lifecycle.getDefaultTtl(),
+            lifecycle.getTtls(),
+            freshness.getIfAvailable(),
+            List.of(CompressedCacheService.DICTIONARY_KEY),
+            lifecycle.getCompactionInterval(),
+            Clock.systemDefaultZone());
+    meterRegistry.ifAvailable(bounded::bindTo);
+    return bounded;
+  }
+
+  @Bean
+  public CacheService cacheService(
+      @Value("${financial.datasets.cache.dir}") String cacheDir,
+      @Value("${financial.datasets.cache.backend:files}") String backend,
+      @Value("${financial.datasets.cache.sharded:true}") boolean sharded,
+      @Value("${financial.datasets.cache.log-preview-size:256}") int logPreviewSize,
+      @Value("${financial.datasets.cache.segments.max-size:64MB}") DataSize maxSegmentSize,
+      @Value("${financial.datasets.cache.segments.compaction-interval:10m}")
+          Duration compactionInterval,
+      FinancialDatasetsBundleProperties bundle,
+      FinancialDatasetsCompressionProperties compression,
+      FinancialDatasetsWriteBehindProperties writeBehind,
+      ObjectProvider<BoundedCacheService> lifecycle,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    CacheService store = lifecycle.getIfAvailable();
+    if (store == null) {
+      store =
+          store(
+              cacheDir,
+              backend,
+              sharded,
+              logPreviewSize,
+              maxSegmentSize,
+              compactionInterval,
+              bundle);
+    }
+    if (compression.isEnabled()) {
+      store =
+          new CompressedCacheService(
+              store,
+              compression.getLevel(),
+              compression.getSampleSize(),
+              (int) compression.getDictionarySize().toBytes());
+    }
+    if (!writeBehind.isEnabled()) {
+      return store;
+    }
+    // outermost, so entries are compressed on the writer too
+    WriteBehindCacheService writer =
+        new WriteBehindCacheService(
+            store, writeBehind.getQueueCapacity(), writeBehind.getMaxBatch());
+    meterRegistry.ifAvailable(writer::bindTo);
+    return writer;
+  }
+
+  private static CacheService store(
+      String cacheDir,
+      String backend,
+      boolean sharded,
+      int logPreviewSize,
+      DataSize maxSegmentSize,
+      Duration compactionInterval,
+      FinancialDatasetsBundleProperties bundle) {
+    FileCacheService files =
+        new FileCacheService(new File(cacheDir), Duration.ofMinutes(1), sharded, logPreviewSize);
+    return switch (backend) {
+      case "files" -> files;
+      // entries saved one file per entry before switching are still read from the directory
+      case "segments" ->
+          new SegmentedCacheService(
+              new File(cacheDir, "segments").toPath(),
+              maxSegmentSize.toBytes(),
+              compactionInterval,
+              files,
+              logPreviewSize);
+      // a warm cache packed into one file, topped up in the cache directory
+      case "bundle" ->
+          new BundledCacheService(
+              CacheBundle.open(bundle.getPath().toPath()), bundle.isOverlay() ? files : null);
+      default -> throw new IllegalArgumentException("Unknown cache backend " + backend);
+    };
+  }
+
+  @Bean
+  public PoolingHttpClientConnectionManager financialDatasetsConnectionManager(
+      FinancialDatasetsHttpClientProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+    PoolingHttpClientConnectionManager connectionManager =
+        PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnPerRoute(props.getMaxConnectionsPerRoute())
+            .setMaxConnTotal(props.getMaxConnectionsTotal())
+            .setDefaultConnectionConfig(
+                ConnectionConfig.custom()
+                    .setConnectTimeout(Timeout.of(props.getConnectTimeout()))
+                    .setSocketTimeout(Timeout.of(props.getReadTimeout()))
+                    .build())
+            .build();
+
+    meterRegistry.ifAvailable(
+        registry ->
+            new PoolingHttpClientConnectionManagerMetricsBinder(
+                    connectionManager, "financial-datasets")
+                .bindTo(registry));
+    return connectionManager;
+  }
+
+  @Bean
+  @ConditionalOnProperty(
+      name = "financial.datasets.limiter.enabled",
+      havingValue = "true",
+      matchIfMissing = true)
+  public UpstreamLimiter financialDatasetsLimiter(
+      FinancialDatasetsLimiterProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+    UpstreamLimiter limiter =
+        new UpstreamLimiter(
+            props.getInitialLimit(),
+            props.getMinLimit(),
+            props.getMaxLimit(),
+            props.getLatencyThreshold(),
+            props.getBackoffRatio(),
+            props.getPermitsPerSecond(),
+            props.getBurst());
+    meterRegistry.ifAvailable(limiter::bindTo);
+    return limiter;
+  }
+
   @Bean
-  public CacheService cacheService(@Value("${financial.datasets.cache.dir}") String cacheDir) {
-    return new CacheService(new File(cacheDir));
+  @ConditionalOnProperty(
+      name = "financial.datasets.resilience.enabled",
+      havingValue = "true",
+      matchIfMissing = true)
+  public UpstreamResilience financialDatasetsResilience(
+      FinancialDatasetsResilienceProperties props) {
+    return new UpstreamResilience(
+        props.getTimeout(),
+        props.getTimeouts(),
+        props.getMaxAttempts(),
+        props.getInitialBackoff(),
+        props.getMaxBackoff(),
+        props.getHedging().isEnabled(),
+        props.getHedging().getMinSamples(),
+        props.getCircuitBreaker().getFailureThreshold(),
+        props.getCircuitBreaker().getOpenDuration());
+  }
+
+  @Bean
+  @ConditionalOnProperty(
+      name = "financial.datasets.cache.freshness.enabled",
+      havingValue = "true",
+      matchIfMissing = true)
+  public FreshnessPolicy financialDatasetsFreshnessPolicy(
+      FinancialDatasetsFreshnessProperties props) {
+    return new FreshnessPolicy(
+        props.getWindows(), props.getDefaultWindow(), Clock.systemDefaultZone());
+  }
+
+  @Bean
+  @ConditionalOnProperty(
+      name = "financial.datasets.cache.memory.enabled",
+      havingValue = "true",
+      matchIfMissing = true)
+  public MemoryCache financialDatasetsMemoryCache(
+      FinancialDatasetsMemoryCacheProperties props, ObjectProvider<MeterRegistry> meterRegistry) {
+    MemoryCache memoryCache = new MemoryCache(props.getMaxSize().toBytes());
+    meterRegistry.ifAvailable(memoryCache::bindTo);
+    return memoryCache;
+  }
+
+  @Bean
+  @ConditionalOnProperty(
+      name = "financial.datasets.cache.codec.enabled",
+      havingValue = "true",
+      matchIfMissing = true)
+  public CacheCodec financialDatasetsCacheCodec(
+      FinancialDatasetsCodecProperties props, ObjectMapper mapper) {
+    return new CacheCodec(mapper, props.getDefaultFormat(), props.getFormats());
   }
 
   @Bean
@@ -26,8 +264,61 @@ public class FinancialDatasetsAutoConfiguration {
       @Value("${financial.datasets.url}") String url,
       @Value("${financial.datasets.api-key}") String apiKey,
       @Value("${financial.datasets.cache.enabled:true}") boolean cacheEnabled,
+      @Value("${financial.datasets.cache.stale-while-revalidate:false}")
+          boolean staleWhileRevalidate,
+      // opt in, bars answered from the store lose their exact time and decimal values
+      @Value("${financial.datasets.prices.range-store:false}") boolean priceRangeStore,
+      @Value("${financial.datasets.history.incremental:true}") boolean incrementalHistory,
+      // sequential unless a deployment opts in, every window is another call on a rate limited API
+      @Value("${financial.datasets.pagination.max-parallel-windows:1}") int maxParallelWindows,
       ObjectMapper mapper,
-      CacheService cacheService) {
-    return new FinancialDatasetsService(builder, url, apiKey, cacheEnabled, mapper, cacheService);
+      CacheService cacheService,
+      PoolingHttpClientConnectionManager financialDatasetsConnectionManager,
+      FinancialDatasetsHttpClientProperties props,
+      ObjectProvider<UpstreamLimiter> limiter,
+      ObjectProvider<UpstreamResilience> resilience,
+      ObjectProvider<FreshnessPolicy> freshness,
+      ObjectProvider<MemoryCache> memoryCache,
+      ObjectProvider<CacheCodec> codec) {
+    // clone so the pooled transport, base url and api key don't leak into other RestClients
+    RestClient.Builder pooled =
+        builder
+            .clone()
+            .requestFactory(
+                new HttpComponentsClientHttpRequestFactory(
+                    httpClient(financialDatasetsConnectionManager, props)));
+    return new FinancialDatasetsService(
+        pooled,
+        url,
+        apiKey,
+        cacheEnabled,
+        mapper,
+        cacheService,
+        new FinancialDatasetsService.Options()
+            .maxParallelWindows(maxParallelWindows)
+            .limiter(limiter.getIfAvailable())
+            .resilience(resilience.getIfAvailable())
+            .staleWhileRevalidate(staleWhileRevalidate)
+            .priceRangeStore(priceRangeStore)
+            .incrementalHistory(incrementalHistory)
+            .freshness(freshness.getIfAvailable())
+            .memoryCache(memoryCache.getIfAvailable())
+            .codec(codec.getIfAvailable()));
+  }
+
+  private static CloseableHttpClient httpClient(
+      PoolingHttpClientConnectionManager connectionManager,
+      FinancialDatasetsHttpClientProperties props) {
+    TimeValue keepAlive = TimeValue.of(props.getKeepAlive());
+    HttpClientBuilder httpClient =
+        HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setConnectionManagerShared(true)
+            .setKeepAliveStrategy((response, context) -> keepAlive)
+            .evictIdleConnections(keepAlive);
+    if (!props.isCompression()) {
+      httpClient.disableContentCompression();
+    }
+    return httpClient.build();
   }
 }
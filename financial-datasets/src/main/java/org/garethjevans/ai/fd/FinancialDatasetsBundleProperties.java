@@ -0,0 +1,30 @@
+package org.garethjevans.ai.fd;
+
+import java.io.File;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("financial.datasets.cache.bundle")
+public class FinancialDatasetsBundleProperties {
+
+  /** The cache bundle read by the {@code bundle} backend, packed with {@link CacheBundle}. */
+  private File path;
+
+  /** Save entries to the cache directory, on top of the bundle, rather than not at all. */
+  private boolean overlay = true;
+
+  public File getPath() {
+    return path;
+  }
+
+  public void setPath(File path) {
+    this.path = path;
+  }
+
+  public boolean isOverlay() {
+    return overlay;
+  }
+
+  public void setOverlay(boolean overlay) {
+    this.overlay = overlay;
+  }
+}
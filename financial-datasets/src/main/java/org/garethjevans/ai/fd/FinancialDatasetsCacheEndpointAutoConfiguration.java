@@ -0,0 +1,23 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Clock;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+
+/** Exposes the cache index in applications that include the actuator. */
+@AutoConfiguration(after = FinancialDatasetsAutoConfiguration.class)
+@ConditionalOnClass(Endpoint.class)
+public class FinancialDatasetsCacheEndpointAutoConfiguration {
+
+  @Bean
+  @ConditionalOnBean(BoundedCacheService.class)
+  @ConditionalOnAvailableEndpoint
+  public CacheIndexEndpoint cacheIndexEndpoint(
+      BoundedCacheService financialDatasetsCacheLifecycle) {
+    return new CacheIndexEndpoint(financialDatasetsCacheLifecycle, Clock.systemDefaultZone());
+  }
+}
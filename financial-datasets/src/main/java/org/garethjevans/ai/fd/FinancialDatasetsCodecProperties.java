@@ -0,0 +1,41 @@
+package org.garethjevans.ai.fd;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("financial.datasets.cache.codec")
+public class FinancialDatasetsCodecProperties {
+
+  private boolean enabled = true;
+
+  /** The format responses are cached in, for endpoints without their own. */
+  private CacheCodec.Format defaultFormat = CacheCodec.Format.SMILE;
+
+  /** The format per endpoint, e.g. {@code prices: cbor}. */
+  private Map<String, CacheCodec.Format> formats = new HashMap<>();
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public CacheCodec.Format getDefaultFormat() {
+    return defaultFormat;
+  }
+
+  public void setDefaultFormat(CacheCodec.Format defaultFormat) {
+    this.defaultFormat = defaultFormat;
+  }
+
+  public Map<String, CacheCodec.Format> getFormats() {
+    return formats;
+  }
+
+  public void setFormats(Map<String, CacheCodec.Format> formats) {
+    this.formats = formats;
+  }
+}
@@ -0,0 +1,51 @@
+package org.garethjevans.ai.fd;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties("financial.datasets.cache.compression")
+public class FinancialDatasetsCompressionProperties {
+
+  private boolean enabled = true;
+
+  /** The deflate level, from 1 (fastest) to 9 (smallest). */
+  private int level = 6;
+
+  /** How many entries the shared dictionary is trained on. */
+  private int sampleSize = 32;
+
+  /** The size of the shared dictionary, deflate uses at most 32KB. */
+  private DataSize dictionarySize = DataSize.ofKilobytes(32);
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  public void setSampleSize(int sampleSize) {
+    this.sampleSize = sampleSize;
+  }
+
+  public DataSize getDictionarySize() {
+    return dictionarySize;
+  }
+
+  public void setDictionarySize(DataSize dictionarySize) {
+    this.dictionarySize = dictionarySize;
+  }
+}
@@ -0,0 +1,53 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("financial.datasets.cache.freshness")
+public class FinancialDatasetsFreshnessProperties {
+
+  private boolean enabled = true;
+
+  /** How long a live response stays fresh for endpoints without their own window. */
+  private Duration defaultWindow = Duration.ofHours(1);
+
+  /**
+   * How long live responses stay fresh per endpoint, e.g. {@code company-facts: 7d}. Reports are
+   * filed quarterly, so metrics and line items only need checking daily.
+   */
+  private Map<String, Duration> windows =
+      new HashMap<>(
+          Map.of(
+              "company-facts", Duration.ofDays(7),
+              "financial-metrics", Duration.ofDays(1),
+              "financials-search-line-items", Duration.ofDays(1),
+              "prices", Duration.ofMinutes(15),
+              "news", Duration.ofHours(1),
+              "insider-trades", Duration.ofHours(1)));
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public Duration getDefaultWindow() {
+    return defaultWindow;
+  }
+
+  public void setDefaultWindow(Duration defaultWindow) {
+    this.defaultWindow = defaultWindow;
+  }
+
+  public Map<String, Duration> getWindows() {
+    return windows;
+  }
+
+  public void setWindows(Map<String, Duration> windows) {
+    this.windows = windows;
+  }
+}
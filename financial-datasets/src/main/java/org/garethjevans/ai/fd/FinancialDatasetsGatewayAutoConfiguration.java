@@ -0,0 +1,27 @@
+package org.garethjevans.ai.fd;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.web.client.RestClient;
+
+/**
+ * Reaches a data gateway for everything once {@code financial.datasets.gateway.url} is set, in
+ * which case none of the upstream client or cache beans are created.
+ */
+@AutoConfiguration(before = FinancialDatasetsAutoConfiguration.class)
+@ConditionalOnProperty("financial.datasets.gateway.url")
+public class FinancialDatasetsGatewayAutoConfiguration {
+
+  @Bean
+  public FinancialDatasets financialDatasetsService(
+      ObjectProvider<RestClient.Builder> builder,
+      @Value("${financial.datasets.gateway.url}") String url,
+      ObjectMapper mapper) {
+    return new GatewayFinancialDatasetsService(
+        builder.getIfAvailable(RestClient::builder), url, mapper);
+  }
+}
@@ -0,0 +1,72 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("financial.datasets.http")
+public class FinancialDatasetsHttpClientProperties {
+
+  /** Maximum pooled connections to a single host (route). */
+  private int maxConnectionsPerRoute = 20;
+
+  /** Maximum pooled connections across all hosts. */
+  private int maxConnectionsTotal = 50;
+
+  private Duration connectTimeout = Duration.ofSeconds(5);
+
+  private Duration readTimeout = Duration.ofSeconds(30);
+
+  /** How long an idle connection is kept open for reuse. */
+  private Duration keepAlive = Duration.ofSeconds(60);
+
+  /** Request gzip/deflate responses and decode them transparently. */
+  private boolean compression = true;
+
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  public int getMaxConnectionsTotal() {
+    return maxConnectionsTotal;
+  }
+
+  public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+    this.maxConnectionsTotal = maxConnectionsTotal;
+  }
+
+  public Duration getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  public void setConnectTimeout(Duration connectTimeout) {
+    this.connectTimeout = connectTimeout;
+  }
+
+  public Duration getReadTimeout() {
+    return readTimeout;
+  }
+
+  public void setReadTimeout(Duration readTimeout) {
+    this.readTimeout = readTimeout;
+  }
+
+  public Duration getKeepAlive() {
+    return keepAlive;
+  }
+
+  public void setKeepAlive(Duration keepAlive) {
+    this.keepAlive = keepAlive;
+  }
+
+  public boolean isCompression() {
+    return compression;
+  }
+
+  public void setCompression(boolean compression) {
+    this.compression = compression;
+  }
+}
@@ -0,0 +1,73 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties("financial.datasets.cache.lifecycle")
+public class FinancialDatasetsLifecycleProperties {
+
+  /**
+   * Whether to expire and evict entries. Only the process that owns the cache, e.g. the data
+   * gateway, should, so it's off unless enabled.
+   */
+  private boolean enabled;
+
+  /** Upper bound on the size of the cache, the least recently read entries are evicted above it. */
+  private DataSize maxSize = DataSize.ofGigabytes(2);
+
+  /** How long entries live for endpoints without their own time to live. */
+  private Duration defaultTtl = Duration.ofDays(30);
+
+  /**
+   * How long entries live per endpoint, e.g. {@code prices: 7d}. Live responses to endpoints
+   * without one live for their freshness window, past which they are fetched again under the same
+   * key, and every other entry for the default time to live.
+   */
+  private Map<String, Duration> ttls = new HashMap<>();
+
+  /** How often expired and surplus entries are deleted. */
+  private Duration compactionInterval = Duration.ofMinutes(15);
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public DataSize getMaxSize() {
+    return maxSize;
+  }
+
+  public void setMaxSize(DataSize maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public Duration getDefaultTtl() {
+    return defaultTtl;
+  }
+
+  public void setDefaultTtl(Duration defaultTtl) {
+    this.defaultTtl = defaultTtl;
+  }
+
+  public Map<String, Duration> getTtls() {
+    return ttls;
+  }
+
+  public void setTtls(Map<String, Duration> ttls) {
+    this.ttls = ttls;
+  }
+
+  public Duration getCompactionInterval() {
+    return compactionInterval;
+  }
+
+  public void setCompactionInterval(Duration compactionInterval) {
+    this.compactionInterval = compactionInterval;
+  }
+}
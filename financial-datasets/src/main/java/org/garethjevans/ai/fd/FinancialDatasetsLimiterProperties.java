@@ -0,0 +1,91 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("financial.datasets.limiter")
+public class FinancialDatasetsLimiterProperties {
+
+  private boolean enabled = true;
+
+  private int initialLimit = 4;
+
+  private int minLimit = 1;
+
+  private int maxLimit = 20;
+
+  /** Responses slower than this shrink the concurrency limit. */
+  private Duration latencyThreshold = Duration.ofSeconds(2);
+
+  /** The factor the concurrency limit is multiplied by on a slow or rate limited response. */
+  private double backoffRatio = 0.5;
+
+  /** Sustained requests per second allowed for the API key, 0 disables the rate limit. */
+  private double permitsPerSecond = 10;
+
+  private int burst = 10;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getInitialLimit() {
+    return initialLimit;
+  }
+
+  public void setInitialLimit(int initialLimit) {
+    this.initialLimit = initialLimit;
+  }
+
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  public void setMinLimit(int minLimit) {
+    this.minLimit = minLimit;
+  }
+
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  public void setMaxLimit(int maxLimit) {
+    this.maxLimit = maxLimit;
+  }
+
+  public Duration getLatencyThreshold() {
+    return latencyThreshold;
+  }
+
+  public void setLatencyThreshold(Duration latencyThreshold) {
+    this.latencyThreshold = latencyThreshold;
+  }
+
+  public double getBackoffRatio() {
+    return backoffRatio;
+  }
+
+  public void setBackoffRatio(double backoffRatio) {
+    this.backoffRatio = backoffRatio;
+  }
+
+  public double getPermitsPerSecond() {
+    return permitsPerSecond;
+  }
+
+  public void setPermitsPerSecond(double permitsPerSecond) {
+    this.permitsPerSecond = permitsPerSecond;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  public void setBurst(int burst) {
+    this.burst = burst;
+  }
+}
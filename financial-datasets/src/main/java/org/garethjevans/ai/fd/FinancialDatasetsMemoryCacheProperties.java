@@ -0,0 +1,29 @@
+package org.garethjevans.ai.fd;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties("financial.datasets.cache.memory")
+public class FinancialDatasetsMemoryCacheProperties {
+
+  private boolean enabled = true;
+
+  /** Upper bound on the encoded size of the responses held in memory. */
+  private DataSize maxSize = DataSize.ofMegabytes(64);
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public DataSize getMaxSize() {
+    return maxSize;
+  }
+
+  public void setMaxSize(DataSize maxSize) {
+    this.maxSize = maxSize;
+  }
+}
@@ -0,0 +1,139 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("financial.datasets.resilience")
+public class FinancialDatasetsResilienceProperties {
+
+  private boolean enabled = true;
+
+  /** How long a single attempt may take before it is abandoned. */
+  private Duration timeout = Duration.ofSeconds(10);
+
+  /**
+   * Per endpoint overrides of the timeout, e.g. {@code prices: 5s} or {@code company-facts: 2s}.
+   */
+  private Map<String, Duration> timeouts = new HashMap<>();
+
+  /** Attempts per GET request, including the first. */
+  private int maxAttempts = 3;
+
+  private Duration initialBackoff = Duration.ofMillis(100);
+
+  private Duration maxBackoff = Duration.ofSeconds(2);
+
+  private final Hedging hedging = new Hedging();
+
+  private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public Duration getTimeout() {
+    return timeout;
+  }
+
+  public void setTimeout(Duration timeout) {
+    this.timeout = timeout;
+  }
+
+  public Map<String, Duration> getTimeouts() {
+    return timeouts;
+  }
+
+  public void setTimeouts(Map<String, Duration> timeouts) {
+    this.timeouts = timeouts;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public void setMaxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+  }
+
+  public Duration getInitialBackoff() {
+    return initialBackoff;
+  }
+
+  public void setInitialBackoff(Duration initialBackoff) {
+    this.initialBackoff = initialBackoff;
+  }
+
+  public Duration getMaxBackoff() {
+    return maxBackoff;
+  }
+
+  public void setMaxBackoff(Duration maxBackoff) {
+    this.maxBackoff = maxBackoff;
+  }
+
+  public Hedging getHedging() {
+    return hedging;
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  public static class Hedging {
+
+    /** Send a duplicate GET once the endpoint's p95 latency has passed. */
+    private boolean enabled = false;
+
+    /** Successful calls to an endpoint before its p95 is used. */
+    private int minSamples = 20;
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public int getMinSamples() {
+      return minSamples;
+    }
+
+    public void setMinSamples(int minSamples) {
+      this.minSamples = minSamples;
+    }
+  }
+
+  public static class CircuitBreaker {
+
+    /**
+     * Consecutive failed requests to an endpoint that open its circuit, 0 disables the breakers.
+     */
+    private int failureThreshold = 5;
+
+    /** How long calls fail fast once the circuit is open. */
+    private Duration openDuration = Duration.ofSeconds(30);
+
+    public int getFailureThreshold() {
+      return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+      this.failureThreshold = failureThreshold;
+    }
+
+    public Duration getOpenDuration() {
+      return openDuration;
+    }
+
+    public void setOpenDuration(Duration openDuration) {
+      this.openDuration = openDuration;
+    }
+  }
+}
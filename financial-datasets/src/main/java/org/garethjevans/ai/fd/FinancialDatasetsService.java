@@ -1,16 +1,35 @@
 package org.garethjevans.ai.fd;
 
+import static org.garethjevans.ai.fd.Futures.await;
+
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpRequest;
@@ -18,14 +37,39 @@ import org.springframework.http.MediaType;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.util.UriComponentsBuilder;
 
-public class FinancialDatasetsService {
+public class FinancialDatasetsService implements FinancialDatasets {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(FinancialDatasetsService.class);
 
+  private static final String PRICES_URI =
+      "/prices/?ticker={ticker}&interval=day&interval_multiplier=1&start_date={startDate}&end_date={endDate}";
+
+  private static final String FINANCIAL_METRICS_URI =
+      "/financial-metrics/?ticker={ticker}&report_period_lte={endDate}&limit={limit}&period={period}";
+
+  private static final String LINE_ITEM_SEARCH_URI = "/financials/search/line-items";
+
+  /** Upper bound on the number of tickers sent in a single line item search request. */
+  private static final int MAX_TICKERS_PER_LINE_ITEM_SEARCH = 20;
+
   private final RestClient client;
   private final ObjectMapper mapper;
   private final boolean cacheEnabled;
   private final CacheService cacheService;
+  private final DateWindowPaginator paginator;
+  private final UpstreamLimiter limiter;
+  private final UpstreamResilience resilience;
+  private final StalePayloads stalePayloads;
+  private final PriceStore priceStore;
+  private final HistoryStore<InsiderTrade> insiderTradeHistory;
+  private final HistoryStore<CompanyNews> companyNewsHistory;
+  private final CachedSupersets supersets;
+  private final FreshnessPolicy freshness;
+  private final FetchTimes fetchTimes;
+  private final MemoryCache memoryCache;
+  private final CacheCodec codec;
+  private final ConcurrentMap<String, CompletableFuture<?>> inFlightRequests =
+      new ConcurrentHashMap<>();
 
   public FinancialDatasetsService(
       RestClient.Builder builder,
@@ -34,6 +78,25 @@ public class FinancialDatasetsService {
       boolean cacheEnabled,
       ObjectMapper mapper,
       CacheService cacheService) {
+    this(builder, url, apiKey, cacheEnabled, mapper, cacheService, new Options());
+  }
+
+  /**
+   * @param options the optional parts of the service, see {@link Options}
+   */
+  public FinancialDatasetsService(
+      RestClient.Builder builder,
+      String url,
+      String apiKey,
+      boolean cacheEnabled,
+      ObjectMapper mapper,
+      CacheService cacheService,
+      Options options) {
+    int maxParallelWindows = options.maxParallelWindows;
+    boolean staleWhileRevalidate = options.staleWhileRevalidate;
+    boolean priceRangeStore = options.priceRangeStore;
+    boolean incrementalHistory = options.incrementalHistory;
+    FreshnessPolicy freshness = options.freshness;
     this.client =
         builder
             .baseUrl(url)
@@ -49,6 +112,138 @@ public class FinancialDatasetsService {
     this.cacheEnabled = cacheEnabled;
     this.mapper = mapper;
     this.cacheService = cacheService;
+    this.paginator = maxParallelWindows > 1 ? new DateWindowPaginator(maxParallelWindows) : null;
+    this.limiter = options.limiter;
+    this.resilience = options.resilience;
+    this.freshness = freshness;
+    this.fetchTimes = cacheEnabled && freshness != null ? new FetchTimes(cacheService) : null;
+    this.memoryCache = options.memoryCache;
+    this.codec = options.codec;
+    this.stalePayloads =
+        cacheEnabled && staleWhileRevalidate ? new StalePayloads(cacheService) : null;
+    this.priceStore =
+        cacheEnabled && priceRangeStore
+            ? new PriceStore(
+                cacheService,
+                mapper,
+                (ticker, startDate, endDate) ->
+                    PriceSeries.of(
+                        cacheAwareGet(PricesResult.class, PRICES_URI, ticker, startDate, endDate)
+                            .prices()),
+                staleWhileRevalidate,
+                Clock.systemDefaultZone())
+            : null;
+    this.insiderTradeHistory =
+        cacheEnabled && incrementalHistory
+            ? new HistoryStore<>(
+                "insider-trades",
+                InsiderTrade.class,
+                InsiderTrade::filingDate,
+                this::pagedInsiderTrades,
+                cacheService,
+                mapper,
+                Clock.systemDefaultZone())
+            : null;
+    this.companyNewsHistory =
+        cacheEnabled && incrementalHistory
+            ? new HistoryStore<>(
+                "news",
+                CompanyNews.class,
+                CompanyNews::date,
+                this::pagedCompanyNews,
+                cacheService,
+                mapper,
+                Clock.systemDefaultZone())
+            : null;
+    this.supersets = cacheEnabled ? new CachedSupersets(cacheService, mapper) : null;
+  }
+
+  /** The optional parts of a {@link FinancialDatasetsService}, each off unless set. */
+  public static class Options {
+
+    private int maxParallelWindows = 1;
+    private UpstreamLimiter limiter;
+    private UpstreamResilience resilience;
+    private boolean staleWhileRevalidate;
+    private boolean priceRangeStore;
+    private boolean incrementalHistory;
+    private FreshnessPolicy freshness;
+    private MemoryCache memoryCache;
+    private CacheCodec codec;
+
+    /**
+     * The number of date windows insider trades and news may be fetched in concurrently, the
+     * default of 1 keeps the sequential pagination.
+     */
+    public Options maxParallelWindows(int maxParallelWindows) {
+      this.maxParallelWindows = maxParallelWindows;
+      return this;
+    }
+
+    /** Throttles upstream requests, otherwise they are sent unthrottled. */
+    public Options limiter(UpstreamLimiter limiter) {
+      this.limiter = limiter;
+      return this;
+    }
+
+    /**
+     * Applies timeouts, retries and hedging to upstream requests, otherwise each request is sent
+     * once and waited for.
+     */
+    public Options resilience(UpstreamResilience resilience) {
+      this.resilience = resilience;
+      return this;
+    }
+
+    /**
+     * Serve prices and metrics from the most recent cached response for an earlier date, marked
+     * with its {@link Staleness}, while the requested date is fetched in the background.
+     */
+    public Options staleWhileRevalidate(boolean staleWhileRevalidate) {
+      this.staleWhileRevalidate = staleWhileRevalidate;
+      return this;
+    }
+
+    /**
+     * Answer price requests from a per ticker store of every bar fetched so far, fetching only the
+     * dates it does not hold yet. The bars are held as columns, so the {@link Price} records
+     * returned carry the trading day as their {@code time}, no {@code time_milliseconds}, and
+     * values that have been through a {@code double}.
+     */
+    public Options priceRangeStore(boolean priceRangeStore) {
+      this.priceRangeStore = priceRangeStore;
+      return this;
+    }
+
+    /**
+     * Answer insider trade and news requests from a per ticker history, fetching only the records
+     * filed since it was last refreshed.
+     */
+    public Options incrementalHistory(boolean incrementalHistory) {
+      this.incrementalHistory = incrementalHistory;
+      return this;
+    }
+
+    /**
+     * Decides how long responses to live requests, those for today or without a date, stay fresh,
+     * otherwise every request is cached under its literal key.
+     */
+    public Options freshness(FreshnessPolicy freshness) {
+      this.freshness = freshness;
+      return this;
+    }
+
+    /** Holds decoded responses in front of the cache, otherwise every hit is read from disk. */
+    public Options memoryCache(MemoryCache memoryCache) {
+      this.memoryCache = memoryCache;
+      return this;
+    }
+
+    /** Encodes responses for the cache, otherwise they are stored as JSON text. */
+    public Options codec(CacheCodec codec) {
+      this.codec = codec;
+      return this;
+    }
   }
 
   private void logRequest(HttpRequest request, byte[] body) {
@@ -59,47 +254,91 @@ public class FinancialDatasetsService {
   }
 
   private <T> T cacheAwareGet(Class<T> type, String uri, Object... uriVariables) {
-    long start = System.currentTimeMillis();
-    String cacheableUri = UriComponentsBuilder.fromUriString(uri).build(uriVariables).toString();
+    return cacheAwareGet(type, false, uri, uriVariables);
+  }
+
+  /**
+   * Like {@link #cacheAwareGet(Class, String, Object...)}, but when stale-while-revalidate is
+   * enabled a cached response for an earlier date is served while the requested date is fetched.
+   */
+  private <T> T staleAwareGet(Class<T> type, String uri, Object... uriVariables) {
+    return cacheAwareGet(type, stalePayloads != null, uri, uriVariables);
+  }
+
+  private <T> T cacheAwareGet(
+      Class<T> type, boolean allowStale, String uri, Object... uriVariables) {
+    String cacheableUri = cacheableUri(uri, uriVariables);
     LOGGER.debug("cacheable uri: {}", cacheableUri);
 
-    if (cacheEnabled && cacheService.keyExists(cacheableUri)) {
-      try {
-        T t = mapper.readValue(cacheService.get(cacheableUri), type);
-        LOGGER.debug("got response body from cache: {}", t);
-        return t;
-      } catch (JsonProcessingException e) {
-        LOGGER.warn("Unable to read value from cache", e);
-      }
-    }
+    return cacheAware(
+        type,
+        cacheableUri,
+        allowStale,
+        tickerOf(cacheableUri),
+        "GET",
+        uri,
+        () ->
+            this.client
+                .get()
+                .uri(uri, uriVariables)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .body(byte[].class));
+  }
 
-    T t =
-        this.client
-            .get()
-            .uri(uri, uriVariables)
-            .accept(MediaType.APPLICATION_JSON)
-            .retrieve()
-            .body(type);
+  private <T> T cacheAwarePost(Class<T> type, Object body, String uri, Object... uriVariables) {
+    String cacheKey = postCacheKey(body, uri, uriVariables);
 
-    LOGGER.debug("got response body: {}", t);
+    return cacheAware(
+        type,
+        cacheKey,
+        false,
+        body instanceof LineItemSearchRequest search ? String.join(",", search.tickers()) : uri,
+        "POST",
+        uri,
+        () ->
+            this.client
+                .post()
+                .uri(uri, uriVariables)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body)
+                .accept(MediaType.APPLICATION_JSON)
+                .retrieve()
+                .body(byte[].class));
+  }
 
-    try {
-      cacheService.save(cacheableUri, mapper.writeValueAsString(t));
-    } catch (JsonProcessingException e) {
-      LOGGER.warn("Unable to persist response to cache", e);
+  private static String cacheableUri(String uri, Object... uriVariables) {
+    return UriComponentsBuilder.fromUriString(uri).build(uriVariables).toString();
+  }
+
+  /** The key the response to {@code requestKey}, a request to {@code uri}, is cached under. */
+  private String cacheKey(String uri, String requestKey) {
+    return freshness != null ? freshness.cacheKey(endpointOf(uri), requestKey) : requestKey;
+  }
+
+  /** Whether the entry under {@code cacheKey} is live and its endpoint's window has passed. */
+  private boolean isExpired(String uri, String cacheKey) {
+    if (fetchTimes == null || !freshness.isLive(cacheKey)) {
+      return false;
     }
+    String endpoint = endpointOf(uri);
+    return !fetchTimes.isFresh(cacheKey, fetchedAt -> freshness.isFresh(endpoint, fetchedAt));
+  }
 
-    long end = System.currentTimeMillis();
-    long duration = end - start;
-    if (duration > 500) {
-      LOGGER.warn("Slow Request: Took {} ms to GET {}", duration, uri);
+  /** Records when a live entry was fetched, so it is served until its window has passed. */
+  private void recordFetched(String cacheKey) {
+    if (fetchTimes != null && freshness.isLive(cacheKey)) {
+      fetchTimes.record(cacheKey, freshness.now());
     }
-    return t;
   }
 
-  private <T> T cacheAwarePost(Class<T> type, Object body, String uri, Object... uriVariables) {
-    long start = System.currentTimeMillis();
-    String cacheableUri = UriComponentsBuilder.fromUriString(uri).build(uriVariables).toString();
+  /** Like {@link #readFromCache}, but {@code null} when the entry has expired. */
+  private <T> T readFreshFromCache(Class<T> type, String uri, String cacheKey) {
+    return isExpired(uri, cacheKey) ? null : readFromCache(type, cacheKey);
+  }
+
+  private String postCacheKey(Object body, String uri, Object... uriVariables) {
+    String cacheableUri = cacheableUri(uri, uriVariables);
 
     String jsonBody = null;
     try {
@@ -109,124 +348,769 @@ public class FinancialDatasetsService {
     }
 
     LOGGER.debug("cacheable uri: {}, with body {}", cacheableUri, jsonBody);
-    String cacheKey = cacheableUri + "-" + jsonBody;
+    return cacheableUri + "-" + jsonBody;
+  }
 
-    if (cacheEnabled && cacheService.keyExists(cacheKey)) {
+  /**
+   * Serves the response from the cache when possible, otherwise performs the upstream request.
+   * Concurrent misses for the same cache key are coalesced so that only one request is sent and
+   * every caller shares its result. {@code request} returns the raw response body, which is cached
+   * as it was received and decoded once, for whoever needs it.
+   */
+  private <T> T cacheAware(
+      Class<T> type,
+      String requestKey,
+      boolean allowStale,
+      String ticker,
+      String method,
+      String uri,
+      Supplier<byte[]> request) {
+    String cacheKey = cacheKey(uri, requestKey);
+    boolean expired = isExpired(uri, cacheKey);
+    T cached = expired ? null : readFromCache(type, cacheKey);
+    if (cached != null) {
+      return cached;
+    }
+
+    Supplier<Response<T>> load =
+        () -> loadAndCache(type, requestKey, cacheKey, allowStale, ticker, method, uri, request);
+    if (allowStale) {
+      StalePayloads.Stale stale = stalePayloads.find(requestKey, cacheKey, expired);
+      T t = stale != null ? readFromCache(type, stale.cacheKey()) : null;
+      if (t != null) {
+        stalePayloads.markServed(requestKey, stale);
+        revalidate(cacheKey, load);
+        return t;
+      }
+    }
+    return load.get().decoded();
+  }
+
+  private <T> Response<T> loadAndCache(
+      Class<T> type,
+      String requestKey,
+      String cacheKey,
+      boolean allowStale,
+      String ticker,
+      String method,
+      String uri,
+      Supplier<byte[]> request) {
+    return sharedFlight(
+        cacheKey,
+        cacheKey,
+        () -> {
+          // another caller, or process, may have populated the cache before we became the leader
+          T t = readFreshFromCache(type, uri, cacheKey);
+          if (t != null) {
+            return new Response<>(t);
+          }
+
+          long start = System.currentTimeMillis();
+          byte[] body;
+          try {
+            body = upstream(method, uri, ticker, request);
+          } catch (RuntimeException e) {
+            // past its window, or cached under the literal request before freshness windows
+            T expired = readFromCache(type, cacheKey);
+            if (expired == null && !requestKey.equals(cacheKey)) {
+              expired = readFromCache(type, requestKey);
+            }
+            if (expired == null) {
+              throw e;
+            }
+            LOGGER.warn("Serving {} past its freshness window: {}", uri, e.getMessage());
+            return new Response<>(expired);
+          }
+
+          try {
+            writeRawToCache(uri, cacheKey, body);
+            if (allowStale) {
+              stalePayloads.recordFresh(requestKey, cacheKey);
+            }
+          } catch (IOException e) {
+            LOGGER.warn("Unable to persist response to cache", e);
+          }
+
+          long end = System.currentTimeMillis();
+          long duration = end - start;
+          if (duration > 500) {
+            LOGGER.warn("Slow Request: Took {} ms to {} {}", duration, method, uri);
+          }
+          return new Response<>(cacheKey, body, type);
+        });
+  }
+
+  /**
+   * An upstream response body, decoded when first asked for, so that a background revalidation
+   * nobody waits on only stores it.
+   */
+  private final class Response<T> {
+
+    private final String cacheKey;
+    private final byte[] body;
+    private final Class<T> type;
+    private final ReentrantLock lock = new ReentrantLock();
+    private T decoded;
+
+    Response(String cacheKey, byte[] body, Class<T> type) {
+      this.cacheKey = cacheKey;
+      this.body = body;
+      this.type = type;
+    }
+
+    Response(T decoded) {
+      this(null, null, null);
+      this.decoded = decoded;
+    }
+
+    T decoded() {
+      lock.lock();
+      try {
+        if (decoded == null) {
+          decoded = mapper.readValue(body, type);
+          LOGGER.debug("got response body: {}", decoded);
+          if (memoryCache != null) {
+            memoryCache.put(cacheKey, decoded, body.length);
+          }
+        }
+        return decoded;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Like {@link #cacheAwareGet(Class, String, Object...)}, but hands a parser over the cache entry
+   * or response body to {@code decoder} rather than binding it to a type, for callers that decode
+   * the tokens themselves. Entries are read in whichever format their header names.
+   */
+  private <T> T cacheAwareGetJson(JsonDecoder<T> decoder, String uri, Object... uriVariables) {
+    String cacheableUri = cacheableUri(uri, uriVariables);
+    String cacheKey = cacheKey(uri, cacheableUri);
+    LOGGER.debug("cacheable uri: {}", cacheableUri);
+
+    byte[] entry = null;
+    boolean expired = isExpired(uri, cacheKey);
+    if (cacheEnabled && !expired && cacheService.keyExists(cacheKey)) {
+      entry = cacheService.getBytes(cacheKey);
+    } else {
+      StalePayloads.Stale stale =
+          stalePayloads != null ? stalePayloads.find(cacheableUri, cacheKey, expired) : null;
+      if (stale != null) {
+        entry = cacheService.getBytes(stale.cacheKey());
+        stalePayloads.markServed(cacheableUri, stale);
+        revalidate(cacheKey, () -> fetchJson(cacheableUri, cacheKey, uri, uriVariables));
+      } else {
+        entry = fetchJson(cacheableUri, cacheKey, uri, uriVariables);
+      }
+    }
+
+    try (JsonParser parser =
+        codec != null ? codec.createParser(entry) : mapper.getFactory().createParser(entry)) {
+      return decoder.decode(parser);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** The cache entry, or the response body as it was cached. */
+  private byte[] fetchJson(
+      String cacheableUri, String cacheKey, String uri, Object... uriVariables) {
+    return sharedFlight(
+        "json " + cacheKey,
+        cacheKey,
+        () -> {
+          if (cacheEnabled && !isExpired(uri, cacheKey) && cacheService.keyExists(cacheKey)) {
+            return cacheService.getBytes(cacheKey);
+          }
+
+          long start = System.currentTimeMillis();
+          byte[] body;
+          try {
+            body =
+                upstream(
+                    "GET",
+                    uri,
+                    tickerOf(cacheableUri),
+                    () ->
+                        this.client
+                            .get()
+                            .uri(uri, uriVariables)
+                            .accept(MediaType.APPLICATION_JSON)
+                            .retrieve()
+                            .body(byte[].class));
+          } catch (RuntimeException e) {
+            // past its window, or cached under the literal request before freshness windows
+            String expired =
+                cacheEnabled && cacheService.keyExists(cacheKey) ? cacheKey : cacheableUri;
+            if (!cacheEnabled || !cacheService.keyExists(expired)) {
+              throw e;
+            }
+            LOGGER.warn("Serving {} past its freshness window: {}", uri, e.getMessage());
+            return cacheService.getBytes(expired);
+          }
+          try {
+            writeRawToCache(uri, cacheKey, body);
+            if (stalePayloads != null) {
+              stalePayloads.recordFresh(cacheableUri, cacheKey);
+            }
+          } catch (IOException e) {
+            LOGGER.warn("Unable to persist response to cache", e);
+          }
+
+          long duration = System.currentTimeMillis() - start;
+          if (duration > 500) {
+            LOGGER.warn("Slow Request: Took {} ms to GET {}", duration, uri);
+          }
+          return body;
+        });
+  }
+
+  /** Fetches a fresh copy of a response that was just served stale, without blocking the caller. */
+  private void revalidate(String cacheKey, Supplier<?> load) {
+    Thread.ofVirtual()
+        .start(
+            () -> {
+              try {
+                load.get();
+              } catch (RuntimeException e) {
+                LOGGER.warn(
+                    "Unable to revalidate stale response for {}: {}", cacheKey, e.getMessage());
+              }
+            });
+  }
+
+  /**
+   * Everything that is currently being served stale for {@code ticker}, keyed by endpoint name,
+   * e.g. {@code prices}. Empty unless stale-while-revalidate is enabled.
+   */
+  @Override
+  public Map<String, Staleness> staleness(String ticker) {
+    Map<String, Staleness> staleness = new HashMap<>();
+    if (stalePayloads != null) {
+      staleness.putAll(stalePayloads.staleness(ticker));
+    }
+    if (priceStore != null && priceStore.staleness(ticker) != null) {
+      staleness.put("prices", priceStore.staleness(ticker));
+    }
+    return staleness;
+  }
+
+  /** Sends {@code request} through the limiter and, when configured, the resilience layer. */
+  private <T> T upstream(String method, String uri, String ticker, Supplier<T> request) {
+    Supplier<T> limited = limiter == null ? request : () -> limiter.execute(ticker, request);
+    if (resilience == null) {
+      return limited.get();
+    }
+    return resilience.execute(endpointOf(uri), "GET".equals(method), limited);
+  }
+
+  /** The path of {@code uri} as a name, e.g. {@code /company/facts/?ticker=} is company-facts. */
+  static String endpointOf(String uri) {
+    String path = uri.contains("?") ? uri.substring(0, uri.indexOf('?')) : uri;
+    return String.join("-", path.split("/")).replaceAll("^-+|-+$", "");
+  }
+
+  /** The ticker a request is for, used to queue requests fairly per ticker. */
+  private static String tickerOf(String cacheableUri) {
+    String ticker =
+        UriComponentsBuilder.fromUriString(cacheableUri)
+            .build()
+            .getQueryParams()
+            .getFirst("ticker");
+    return ticker != null ? ticker : cacheableUri;
+  }
+
+  @FunctionalInterface
+  private interface JsonDecoder<T> {
+    T decode(JsonParser parser) throws IOException;
+  }
+
+  private <T> T readFromCache(Class<T> type, String cacheKey) {
+    if (!cacheEnabled) {
+      return null;
+    }
+    T held = memoryCache != null ? memoryCache.get(cacheKey, type) : null;
+    if (held != null) {
+      return held;
+    }
+    if (cacheService.keyExists(cacheKey)) {
       try {
-        T t = mapper.readValue(cacheService.get(cacheKey), type);
+        byte[] entry = cacheService.getBytes(cacheKey);
+        T t = codec != null ? codec.decode(entry, type) : mapper.readValue(entry, type);
         LOGGER.debug("got response body from cache: {}", t);
+        if (memoryCache != null) {
+          memoryCache.put(cacheKey, t, entry.length);
+        }
         return t;
-      } catch (JsonProcessingException e) {
+      } catch (IOException e) {
         LOGGER.warn("Unable to read value from cache", e);
       }
     }
+    return null;
+  }
 
-    T t =
-        this.client
-            .post()
-            .uri(uri, uriVariables)
-            .contentType(MediaType.APPLICATION_JSON)
-            .body(body)
-            .accept(MediaType.APPLICATION_JSON)
-            .retrieve()
-            .body(type);
-
-    LOGGER.debug("got response body: {}", t);
+  /** Caches a response body as received, or transcoded to the binary format of its endpoint. */
+  private void writeRawToCache(String uri, String cacheKey, byte[] body) throws IOException {
+    cacheService.saveBytes(cacheKey, codec != null ? codec.transcode(endpointOf(uri), body) : body);
+    recordFetched(cacheKey);
+  }
 
-    try {
-      cacheService.save(cacheKey, mapper.writeValueAsString(t));
-    } catch (JsonProcessingException e) {
-      LOGGER.warn("Unable to persist response to cache", e);
+  private void writeToCache(String uri, String cacheKey, Object t) throws IOException {
+    recordFetched(cacheKey);
+    if (codec == null) {
+      String json = mapper.writeValueAsString(t);
+      cacheService.save(cacheKey, json);
+      if (memoryCache != null) {
+        memoryCache.put(cacheKey, t, json);
+      }
+      return;
+    }
+    byte[] entry = codec.encode(endpointOf(uri), t);
+    cacheService.saveBytes(cacheKey, entry);
+    if (memoryCache != null) {
+      memoryCache.put(cacheKey, t, entry.length);
     }
+  }
 
-    long end = System.currentTimeMillis();
-    long duration = end - start;
-    if (duration > 500) {
-      LOGGER.warn("Slow Request: Took {} ms to POST {}", duration, uri);
+  /**
+   * Like {@link #singleFlight}, but the leader also holds the cache's lock on {@code cacheKey}, so
+   * that misses are coalesced across every process sharing the cache, not just this one. {@code
+   * load} must check the cache again once it runs.
+   */
+  private <T> T sharedFlight(String flightKey, String cacheKey, Supplier<T> load) {
+    return singleFlight(
+        flightKey, () -> cacheEnabled ? cacheService.locked(cacheKey, load) : load.get());
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> T singleFlight(String cacheKey, Supplier<T> load) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    CompletableFuture<T> inFlight =
+        (CompletableFuture<T>) inFlightRequests.putIfAbsent(cacheKey, future);
+    if (inFlight != null) {
+      LOGGER.debug("joining in-flight request for {}", cacheKey);
+      return await(inFlight);
     }
 
-    return t;
+    try {
+      T t = load.get();
+      future.complete(t);
+      return t;
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlightRequests.remove(cacheKey, future);
+    }
   }
 
+  @Override
   public Facts companyFacts(String ticker) {
     return cacheAwareGet(CompanyFactsHolder.class, "/company/facts/?ticker={ticker}", ticker)
         .companyFacts();
   }
 
+  @Override
   public List<Price> getPrices(String ticker, LocalDate startDate, LocalDate endDate) {
-    return cacheAwareGet(
-            PricesResult.class,
-            "/prices/?ticker={ticker}&interval=day&interval_multiplier=1&start_date={startDate}&end_date={endDate}",
-            ticker,
-            startDate,
-            endDate)
-        .prices();
+    if (priceStore != null) {
+      return priceStore.get(ticker, startDate, endDate).toPrices();
+    }
+    return staleAwareGet(PricesResult.class, PRICES_URI, ticker, startDate, endDate).prices();
+  }
+
+  /**
+   * The same bars as {@link #getPrices(String, LocalDate, LocalDate)}, decoded straight from the
+   * response (or cache entry) into primitive columns without creating a {@link Price} per bar. With
+   * the price range store enabled they are sliced from the columns it holds instead.
+   */
+  @Override
+  public PriceSeries getPriceSeries(String ticker, LocalDate startDate, LocalDate endDate) {
+    if (priceStore != null) {
+      return priceStore.get(ticker, startDate, endDate);
+    }
+    return cacheAwareGetJson(PriceSeries::decode, PRICES_URI, ticker, startDate, endDate);
   }
 
+  /**
+   * Metrics newest first. A smaller limit is answered from a cached response for a larger one, the
+   * first rows of which are the same.
+   */
+  @Override
   public List<Metrics> getFinancialMetrics(
       String ticker, LocalDate endDate, Period period, int limit) {
-    return cacheAwareGet(
-            FinancialMetrics.class,
-            "/financial-metrics/?ticker={ticker}&report_period_lte={endDate}&limit={limit}&period={period}",
-            ticker,
-            endDate,
-            limit,
-            period)
-        .financialMetrics();
+    if (supersets == null) {
+      return staleAwareGet(
+              FinancialMetrics.class, FINANCIAL_METRICS_URI, ticker, endDate, limit, period)
+          .financialMetrics();
+    }
+
+    String logicalKey =
+        cacheKey(
+            FINANCIAL_METRICS_URI, "financial-metrics " + ticker + " " + endDate + " " + period);
+    CachedSupersets.Superset superset = supersets.find(logicalKey, limit, List.of());
+    FinancialMetrics cached =
+        superset != null
+            ? readFreshFromCache(FinancialMetrics.class, FINANCIAL_METRICS_URI, superset.cacheKey())
+            : null;
+    if (cached != null) {
+      List<Metrics> metrics = cached.financialMetrics();
+      return metrics.subList(0, Math.min(limit, metrics.size()));
+    }
+    if (superset != null) {
+      supersets.forget(logicalKey, superset);
+    }
+
+    List<Metrics> metrics =
+        staleAwareGet(FinancialMetrics.class, FINANCIAL_METRICS_URI, ticker, endDate, limit, period)
+            .financialMetrics();
+    supersets.record(
+        logicalKey,
+        limit,
+        List.of(),
+        cacheKey(
+            FINANCIAL_METRICS_URI,
+            cacheableUri(FINANCIAL_METRICS_URI, ticker, endDate, limit, period)));
+    return metrics;
   }
 
+  /**
+   * Line items newest first. The columns are sorted before the cache key is built, and a request
+   * for fewer rows or a subset of the columns of a cached response is answered from it.
+   */
+  @Override
   public List<LineItem> searchLineItems(
       String ticker, LocalDate endDate, List<String> items, Period period, int limit) {
-    return cacheAwarePost(
-            SearchLineItemResults.class,
-            new LineItemSearchRequest(List.of(ticker), items, period, limit),
-            "/financials/search/line-items")
-        .lineItems()
-        .stream()
-        .map(LineItem::new)
+    List<String> columns = CachedSupersets.normalize(items);
+    List<LineItem> cached = lineItemsFromSuperset(ticker, columns, period, limit);
+    if (cached != null) {
+      return cached;
+    }
+
+    SearchLineItemResults results;
+    try {
+      results =
+          cacheAwarePost(
+              SearchLineItemResults.class,
+              new LineItemSearchRequest(List.of(ticker), columns, period, limit),
+              LINE_ITEM_SEARCH_URI);
+    } catch (RuntimeException e) {
+      // responses cached before column lists were sorted are keyed by the columns as given
+      SearchLineItemResults unsorted =
+          readFromCache(
+              SearchLineItemResults.class, lineItemSearchRequestKey(ticker, items, period, limit));
+      if (unsorted == null) {
+        throw e;
+      }
+      LOGGER.warn("Serving line items for {} cached before their columns were sorted", ticker);
+      return toLineItems(unsorted);
+    }
+    recordLineItems(ticker, columns, period, limit);
+    return toLineItems(results);
+  }
+
+  /**
+   * Searches line items for many tickers, sending at most {@value
+   * #MAX_TICKERS_PER_LINE_ITEM_SEARCH} tickers per upstream request. Each ticker's results are
+   * cached under the same key as the single ticker {@link #searchLineItems(String, LocalDate, List,
+   * Period, int)} so later single-ticker calls are served from the cache, and tickers that are
+   * already cached are not requested again.
+   */
+  @Override
+  public Map<String, List<LineItem>> searchLineItems(
+      List<String> tickers, LocalDate endDate, List<String> items, Period period, int limit) {
+    List<String> columns = CachedSupersets.normalize(items);
+    Map<String, List<LineItem>> results = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+
+    for (String ticker : tickers) {
+      List<LineItem> cached = lineItemsFromSuperset(ticker, columns, period, limit);
+      if (cached != null) {
+        results.put(ticker, cached);
+      } else {
+        missing.add(ticker);
+      }
+    }
+
+    for (int i = 0; i < missing.size(); i += MAX_TICKERS_PER_LINE_ITEM_SEARCH) {
+      List<String> batch =
+          missing.subList(i, Math.min(i + MAX_TICKERS_PER_LINE_ITEM_SEARCH, missing.size()));
+      String batchKey =
+          postCacheKey(
+              new LineItemSearchRequest(batch, columns, period, limit), LINE_ITEM_SEARCH_URI);
+      results.putAll(
+          sharedFlight(
+              "batch " + batchKey,
+              batchKey,
+              () -> searchLineItemsBatch(batch, columns, period, limit)));
+    }
+
+    Map<String, List<LineItem>> ordered = new LinkedHashMap<>();
+    for (String ticker : tickers) {
+      List<LineItem> lineItems = results.get(ticker);
+      // cut short by a limit that applied to the whole response, so fetched on its own
+      ordered.put(
+          ticker,
+          lineItems != null ? lineItems : searchLineItems(ticker, endDate, columns, period, limit));
+    }
+    return ordered;
+  }
+
+  /**
+   * Fetches the line items of every ticker not cached since the batch was asked for, and caches
+   * each ticker's rows on its own. The rows of a ticker that got fewer than {@code limit} from a
+   * response with {@code limit} rows or more may have been cut short, if the upstream applied the
+   * limit to the whole response rather than per ticker, so they are left out of the results.
+   */
+  private Map<String, List<LineItem>> searchLineItemsBatch(
+      List<String> tickers, List<String> items, Period period, int limit) {
+    Map<String, List<LineItem>> results = new HashMap<>();
+    List<String> missing = new ArrayList<>();
+    // another caller, or process, may have fetched some of them before we became the leader
+    for (String ticker : tickers) {
+      List<LineItem> cached = lineItemsFromSuperset(ticker, items, period, limit);
+      if (cached != null) {
+        results.put(ticker, cached);
+      } else {
+        missing.add(ticker);
+      }
+    }
+    if (missing.isEmpty()) {
+      return results;
+    }
+
+    long start = System.currentTimeMillis();
+    SearchLineItemResults response =
+        upstream(
+            "POST",
+            LINE_ITEM_SEARCH_URI,
+            String.join(",", missing),
+            () ->
+                this.client
+                    .post()
+                    .uri(LINE_ITEM_SEARCH_URI)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new LineItemSearchRequest(missing, items, period, limit))
+                    .accept(MediaType.APPLICATION_JSON)
+                    .retrieve()
+                    .body(SearchLineItemResults.class));
+
+    Map<String, List<Map<String, Object>>> byTicker = new HashMap<>();
+    for (Map<String, Object> lineItem : response.lineItems()) {
+      byTicker
+          .computeIfAbsent((String) lineItem.get("ticker"), k -> new ArrayList<>())
+          .add(lineItem);
+    }
+
+    boolean mayBeCutShort = missing.size() > 1 && response.lineItems().size() >= limit;
+    for (String ticker : missing) {
+      List<Map<String, Object>> slice = byTicker.getOrDefault(ticker, List.of());
+      if (mayBeCutShort && slice.size() < limit) {
+        continue;
+      }
+      SearchLineItemResults tickerResults =
+          new SearchLineItemResults(slice.subList(0, Math.min(limit, slice.size())));
+
+      try {
+        writeToCache(
+            LINE_ITEM_SEARCH_URI,
+            lineItemSearchCacheKey(ticker, items, period, limit),
+            tickerResults);
+        recordLineItems(ticker, items, period, limit);
+      } catch (IOException e) {
+        LOGGER.warn("Unable to persist response to cache", e);
+      }
+
+      results.put(ticker, toLineItems(tickerResults));
+    }
+
+    long duration = System.currentTimeMillis() - start;
+    if (duration > 500) {
+      LOGGER.warn(
+          "Slow Request: Took {} ms to POST {} for {} tickers",
+          duration,
+          LINE_ITEM_SEARCH_URI,
+          missing.size());
+    }
+    return results;
+  }
+
+  private String lineItemSearchCacheKey(
+      String ticker, List<String> items, Period period, int limit) {
+    return cacheKey(LINE_ITEM_SEARCH_URI, lineItemSearchRequestKey(ticker, items, period, limit));
+  }
+
+  private String lineItemSearchRequestKey(
+      String ticker, List<String> items, Period period, int limit) {
+    return postCacheKey(
+        new LineItemSearchRequest(List.of(ticker), items, period, limit), LINE_ITEM_SEARCH_URI);
+  }
+
+  /**
+   * The line items of a cached response with at least the rows and columns asked for, without the
+   * columns that were not asked for, or {@code null} when nothing cached covers the request.
+   */
+  private List<LineItem> lineItemsFromSuperset(
+      String ticker, List<String> columns, Period period, int limit) {
+    if (supersets == null) {
+      return null;
+    }
+    String logicalKey = lineItemsLogicalKey(ticker, period);
+    CachedSupersets.Superset superset = supersets.find(logicalKey, limit, columns);
+    SearchLineItemResults cached =
+        superset != null
+            ? readFreshFromCache(
+                SearchLineItemResults.class, LINE_ITEM_SEARCH_URI, superset.cacheKey())
+            : null;
+    if (cached == null) {
+      if (superset != null) {
+        supersets.forget(logicalKey, superset);
+      }
+      return null;
+    }
+
+    List<String> extra = new ArrayList<>(superset.columns());
+    extra.removeAll(columns);
+    return cached.lineItems().stream()
+        .limit(limit)
+        .map(
+            row -> {
+              Map<String, Object> projected = new LinkedHashMap<>(row);
+              projected.keySet().removeAll(extra);
+              return new LineItem(projected);
+            })
         .toList();
   }
 
+  private void recordLineItems(String ticker, List<String> columns, Period period, int limit) {
+    if (supersets != null) {
+      supersets.record(
+          lineItemsLogicalKey(ticker, period),
+          limit,
+          columns,
+          lineItemSearchCacheKey(ticker, columns, period, limit));
+    }
+  }
+
+  /** Supersets are only looked for among line items that are still fresh. */
+  private String lineItemsLogicalKey(String ticker, Period period) {
+    return cacheKey(LINE_ITEM_SEARCH_URI, "line-items " + ticker + " " + period);
+  }
+
+  private static List<LineItem> toLineItems(SearchLineItemResults results) {
+    return results.lineItems().stream().map(LineItem::new).toList();
+  }
+
+  @Override
   public List<InsiderTrade> getInsiderTrades(
       String ticker, LocalDate startDate, LocalDate endDate, int limit) {
+    if (insiderTradeHistory != null) {
+      return insiderTradeHistory.get(ticker, startDate, endDate, limit);
+    }
+    return pagedInsiderTrades(ticker, startDate, endDate, limit);
+  }
 
-    return allPagedResultsByDateAndLimit(
-        batchEndDate -> {
-          return cacheAwareGet(
-                  InsiderTradesResult.class,
-                  "/insider-trades/?ticker={ticker}&filing_date_gte={start_date}&filing_date_lte={end_date}&limit={limit}",
-                  ticker,
-                  startDate,
-                  batchEndDate,
-                  limit)
-              .insiderTrades();
-        },
+  private List<InsiderTrade> pagedInsiderTrades(
+      String ticker, LocalDate startDate, LocalDate endDate, int limit) {
+    return pagedByDate(
+        "insider-trades",
+        ticker,
+        (windowStartDate, batchEndDate) ->
+            insiderTradesPage(ticker, windowStartDate, batchEndDate, limit),
         InsiderTrade::filingDate,
         startDate,
         endDate,
         limit);
   }
 
+  /**
+   * Streams insider trades newest first, requesting pages of {@code pageSize} only as the stream is
+   * consumed. Use {@link Stream#limit(long)} or another short-circuiting operation to stop early.
+   * Each page is a {@link #getInsiderTrades} call, so it is answered from the history, or the
+   * cache, like any other request.
+   */
+  @Override
+  public Stream<InsiderTrade> streamInsiderTrades(
+      String ticker, LocalDate startDate, LocalDate endDate, int pageSize) {
+    return StreamSupport.stream(
+        new DatePagedSpliterator<>(
+            batchEndDate -> getInsiderTrades(ticker, startDate, batchEndDate, pageSize),
+            InsiderTrade::filingDate,
+            startDate,
+            endDate,
+            pageSize),
+        false);
+  }
+
+  private List<InsiderTrade> insiderTradesPage(
+      String ticker, LocalDate startDate, LocalDate endDate, int limit) {
+    return cacheAwareGet(
+            InsiderTradesResult.class,
+            "/insider-trades/?ticker={ticker}&filing_date_gte={start_date}&filing_date_lte={end_date}&limit={limit}",
+            ticker,
+            startDate,
+            endDate,
+            limit)
+        .insiderTrades();
+  }
+
+  @Override
   public List<CompanyNews> getCompanyNews(
       String ticker, LocalDate startDate, LocalDate endDate, int limit) {
+    if (companyNewsHistory != null) {
+      return companyNewsHistory.get(ticker, startDate, endDate, limit);
+    }
+    return pagedCompanyNews(ticker, startDate, endDate, limit);
+  }
 
-    return allPagedResultsByDateAndLimit(
-        batchEndDate -> {
-          return cacheAwareGet(
-                  CompanyNewsResult.class,
-                  "/news/?ticker={ticker}&start_date={start_date}&end_date={end_date}&limit={limit}",
-                  ticker,
-                  startDate,
-                  batchEndDate,
-                  limit)
-              .companyNews();
-        },
+  private List<CompanyNews> pagedCompanyNews(
+      String ticker, LocalDate startDate, LocalDate endDate, int limit) {
+    return pagedByDate(
+        "news",
+        ticker,
+        (windowStartDate, batchEndDate) ->
+            companyNewsPage(ticker, windowStartDate, batchEndDate, limit),
         CompanyNews::date,
         startDate,
         endDate,
         limit);
   }
 
+  /**
+   * Streams company news newest first, requesting pages of {@code pageSize} only as the stream is
+   * consumed. Use {@link Stream#limit(long)} or another short-circuiting operation to stop early.
+   * Each page is a {@link #getCompanyNews} call, so it is answered from the history, or the cache,
+   * like any other request.
+   */
+  @Override
+  public Stream<CompanyNews> streamCompanyNews(
+      String ticker, LocalDate startDate, LocalDate endDate, int pageSize) {
+    return StreamSupport.stream(
+        new DatePagedSpliterator<>(
+            batchEndDate -> getCompanyNews(ticker, startDate, batchEndDate, pageSize),
+            CompanyNews::date,
+            startDate,
+            endDate,
+            pageSize),
+        false);
+  }
+
+  private List<CompanyNews> companyNewsPage(
+      String ticker, LocalDate startDate, LocalDate endDate, int limit) {
+    return cacheAwareGet(
+            CompanyNewsResult.class,
+            "/news/?ticker={ticker}&start_date={start_date}&end_date={end_date}&limit={limit}",
+            ticker,
+            startDate,
+            endDate,
+            limit)
+        .companyNews();
+  }
+
+  @Override
   public BigDecimal getMarketCap(String ticker, LocalDate endDate) {
     if (endDate.isEqual(LocalDate.now())) {
       return companyFacts(ticker).marketCap();
@@ -235,6 +1119,92 @@ public class FinancialDatasetsService {
     return getFinancialMetrics(ticker, endDate, Period.ttm, 10).get(0).marketCap();
   }
 
+  /**
+   * Fetches every section of the request concurrently on virtual threads, so a cold analysis costs
+   * roughly the slowest single upstream call rather than the sum of all of them.
+   */
+  @Override
+  public TickerDataBundle getTickerData(TickerDataRequest request) {
+    String ticker = request.ticker();
+    LocalDate endDate = request.endDate();
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      Future<List<Metrics>> metrics =
+          submitIfRequested(
+              executor,
+              request.metrics(),
+              q -> getFinancialMetrics(ticker, endDate, q.period(), q.limit()),
+              List.of());
+      Future<List<LineItem>> lineItems =
+          submitIfRequested(
+              executor,
+              request.lineItems(),
+              q -> searchLineItems(ticker, endDate, q.items(), q.period(), q.limit()),
+              List.of());
+      Future<List<InsiderTrade>> insiderTrades =
+          submitIfRequested(
+              executor,
+              request.insiderTrades(),
+              q -> getInsiderTrades(ticker, q.startDate(), endDate, q.limit()),
+              List.of());
+      Future<List<CompanyNews>> companyNews =
+          submitIfRequested(
+              executor,
+              request.companyNews(),
+              q -> getCompanyNews(ticker, q.startDate(), endDate, q.limit()),
+              List.of());
+      Future<List<Price>> prices =
+          submitIfRequested(
+              executor,
+              request.pricesStartDate(),
+              startDate -> getPrices(ticker, startDate, endDate),
+              List.of());
+      Future<BigDecimal> marketCap =
+          submitIfRequested(
+              executor,
+              request.marketCap() ? endDate : null,
+              date -> getMarketCap(ticker, date),
+              null);
+
+      return new TickerDataBundle(
+          ticker,
+          await(metrics),
+          await(lineItems),
+          await(insiderTrades),
+          await(companyNews),
+          await(prices),
+          await(marketCap),
+          staleness(ticker));
+    }
+  }
+
+  private static <Q, R> Future<R> submitIfRequested(
+      ExecutorService executor, Q query, Function<Q, R> fetch, R notRequested) {
+    if (query == null) {
+      return CompletableFuture.completedFuture(notRequested);
+    }
+    return executor.submit(() -> fetch.apply(query));
+  }
+
+  private <T> List<T> pagedByDate(
+      String endpoint,
+      String ticker,
+      BiFunction<LocalDate, LocalDate, List<T>> get,
+      Function<T, LocalDate> extractNewDate,
+      LocalDate startDate,
+      LocalDate endDate,
+      int limit) {
+    if (paginator != null) {
+      return paginator.fetch(endpoint, ticker, get, extractNewDate, startDate, endDate, limit);
+    }
+    return allPagedResultsByDateAndLimit(
+        batchEndDate -> get.apply(startDate, batchEndDate),
+        extractNewDate,
+        startDate,
+        endDate,
+        limit);
+  }
+
   private <T> List<T> allPagedResultsByDateAndLimit(
       Function<LocalDate, List<T>> get,
       Function<T, LocalDate> extractNewDate,
@@ -250,6 +1220,10 @@ public class FinancialDatasetsService {
 
       all.addAll(batch);
 
+      if (batch.isEmpty()) {
+        break;
+      }
+
       if (batch.size() < limit) {
         more = false;
       }
@@ -0,0 +1,43 @@
+package org.garethjevans.ai.fd;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("financial.datasets.cache.write-behind")
+public class FinancialDatasetsWriteBehindProperties {
+
+  /**
+   * Save entries on a background writer rather than on the thread that fetched them. Other
+   * processes sharing the cache don't see an entry until it is written.
+   */
+  private boolean enabled = false;
+
+  /** How many entries may wait to be written before saves wait for room. */
+  private int queueCapacity = 1024;
+
+  /** The most entries written per sync. */
+  private int maxBatch = 64;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public int getQueueCapacity() {
+    return queueCapacity;
+  }
+
+  public void setQueueCapacity(int queueCapacity) {
+    this.queueCapacity = queueCapacity;
+  }
+
+  public int getMaxBatch() {
+    return maxBatch;
+  }
+
+  public void setMaxBatch(int maxBatch) {
+    this.maxBatch = maxBatch;
+  }
+}
@@ -0,0 +1,108 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides how long a cached response stays fresh, per endpoint, and builds the cache key so that
+ * every equivalent request shares one entry.
+ *
+ * <p>A request is live when it has no dates, e.g. company facts, or asks for data up to today or
+ * later, e.g. metrics as of {@code LocalDate.now()}. Its dates from today on are replaced with
+ * {@code live}, and its earlier dates with how many days before today they are, e.g. {@code
+ * live-365d} for a year of prices up to today, so yesterday's "as of today" request and today's
+ * share one key. A live entry is served until the endpoint's window has passed since it was
+ * fetched, then fetched again under the same key. Requests entirely in the past are immutable and
+ * keep their literal key.
+ */
+public class FreshnessPolicy {
+
+  private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+  /** A date replaced by {@link #cacheKey}, e.g. {@code live} or {@code live-365d}. */
+  private static final Pattern LIVE = Pattern.compile("(?<![A-Za-z])live(-\\d+d)?(?![A-Za-z])");
+
+  private final Map<String, Duration> windows;
+  private final Duration defaultWindow;
+  private final Clock clock;
+
+  /**
+   * @param windows how long responses stay fresh, keyed by the endpoint name, e.g. {@code prices}
+   *     or {@code company-facts}
+   */
+  public FreshnessPolicy(Map<String, Duration> windows, Duration defaultWindow, Clock clock) {
+    this.windows = Map.copyOf(windows);
+    this.defaultWindow = defaultWindow;
+    this.clock = clock;
+  }
+
+  /** The key {@code requestKey} is cached under, the request itself unless it is live. */
+  String cacheKey(String endpoint, String requestKey) {
+    LocalDate today = LocalDate.now(clock);
+    boolean live = false;
+    boolean dated = false;
+    StringBuilder key = new StringBuilder();
+    Matcher dates = DATE.matcher(requestKey);
+    while (dates.find()) {
+      LocalDate date = parseDate(dates.group());
+      if (date == null) {
+        dates.appendReplacement(key, dates.group());
+      } else if (!date.isBefore(today)) {
+        live = dated = true;
+        dates.appendReplacement(key, "live");
+      } else {
+        dated = true;
+        dates.appendReplacement(key, "live-" + ChronoUnit.DAYS.between(date, today) + "d");
+      }
+    }
+    dates.appendTail(key);
+    return live || !dated ? key.toString() : requestKey;
+  }
+
+  /** Whether the entry under {@code cacheKey}, a key built by {@link #cacheKey}, is live. */
+  boolean isLive(String cacheKey) {
+    return LIVE.matcher(cacheKey).find() || !DATE.matcher(cacheKey).find();
+  }
+
+  /** Whether a live response to {@code endpoint} fetched at {@code fetchedAt} is still fresh. */
+  boolean isFresh(String endpoint, Instant fetchedAt) {
+    return fetchedAt != null && !clock.instant().isAfter(fetchedAt.plus(windowOf(endpoint)));
+  }
+
+  /**
+   * How long a live response to {@code endpoint} stays fresh, the window of the longest endpoint
+   * name it starts with, so that the endpoint of a cache key, which may carry a request body, also
+   * finds its window.
+   */
+  Duration windowOf(String endpoint) {
+    Duration window = defaultWindow;
+    int matched = -1;
+    for (Map.Entry<String, Duration> e : windows.entrySet()) {
+      if (endpoint.startsWith(e.getKey()) && e.getKey().length() > matched) {
+        window = e.getValue();
+        matched = e.getKey().length();
+      }
+    }
+    return window;
+  }
+
+  /** The time a response fetched now is recorded as fetched at. */
+  Instant now() {
+    return clock.instant();
+  }
+
+  private static LocalDate parseDate(String value) {
+    try {
+      return LocalDate.parse(value);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
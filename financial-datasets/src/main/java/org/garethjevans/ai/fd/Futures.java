@@ -0,0 +1,24 @@
+package org.garethjevans.ai.fd;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+public final class Futures {
+
+  private Futures() {}
+
+  /** Waits for the result, rethrowing the cause of a failed future as an unchecked exception. */
+  public static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+}
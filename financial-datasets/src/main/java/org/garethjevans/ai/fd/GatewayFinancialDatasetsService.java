@@ -0,0 +1,222 @@
+package org.garethjevans.ai.fd;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.ByteArrayHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.client.RestClient;
+
+/**
+ * Answers every request from a data gateway rather than the upstream API, so the caches, request
+ * coalescing and rate limits of the one gateway process are shared by all the applications using
+ * it. Requests and responses are exchanged as Smile, the binary encoding of the same JSON.
+ */
+public class GatewayFinancialDatasetsService implements FinancialDatasets {
+
+  static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+  private static final ParameterizedTypeReference<Map<String, Staleness>> STALENESS =
+      new ParameterizedTypeReference<>() {};
+  private static final ParameterizedTypeReference<List<Price>> PRICES =
+      new ParameterizedTypeReference<>() {};
+  private static final ParameterizedTypeReference<List<Metrics>> METRICS =
+      new ParameterizedTypeReference<>() {};
+  private static final ParameterizedTypeReference<List<LineItem>> LINE_ITEMS =
+      new ParameterizedTypeReference<>() {};
+  private static final ParameterizedTypeReference<Map<String, List<LineItem>>>
+      LINE_ITEMS_BY_TICKER = new ParameterizedTypeReference<>() {};
+  private static final ParameterizedTypeReference<List<InsiderTrade>> INSIDER_TRADES =
+      new ParameterizedTypeReference<>() {};
+  private static final ParameterizedTypeReference<List<CompanyNews>> COMPANY_NEWS =
+      new ParameterizedTypeReference<>() {};
+
+  private final ObjectMapper smile;
+  private final RestClient gateway;
+
+  public GatewayFinancialDatasetsService(
+      RestClient.Builder builder, String gatewayUrl, ObjectMapper mapper) {
+    this.smile = mapper.copyWith(new SmileFactory());
+    this.gateway =
+        builder
+            .clone()
+            .baseUrl(gatewayUrl)
+            .defaultHeader(HttpHeaders.ACCEPT, SMILE.toString())
+            .messageConverters(
+                converters -> {
+                  converters.addFirst(new MappingJackson2SmileHttpMessageConverter(smile));
+                  // ahead of Smile, which would otherwise read a byte[] as one binary value
+                  converters.addFirst(new ByteArrayHttpMessageConverter());
+                })
+            .build();
+  }
+
+  @Override
+  public Map<String, Staleness> staleness(String ticker) {
+    return get(STALENESS, "/v1/staleness?ticker={ticker}", ticker);
+  }
+
+  @Override
+  public Facts companyFacts(String ticker) {
+    return get(Facts.class, "/v1/company/facts?ticker={ticker}", ticker);
+  }
+
+  @Override
+  public List<Price> getPrices(String ticker, LocalDate startDate, LocalDate endDate) {
+    return get(
+        PRICES,
+        "/v1/prices?ticker={ticker}&start_date={start_date}&end_date={end_date}",
+        ticker,
+        startDate,
+        endDate);
+  }
+
+  /**
+   * Bars are sent in the shape of a {@code /prices/} response and decoded straight into columns.
+   */
+  @Override
+  public PriceSeries getPriceSeries(String ticker, LocalDate startDate, LocalDate endDate) {
+    byte[] body =
+        get(
+            byte[].class,
+            "/v1/price-series?ticker={ticker}&start_date={start_date}&end_date={end_date}",
+            ticker,
+            startDate,
+            endDate);
+    if (body == null) {
+      return PriceSeries.empty();
+    }
+    try (JsonParser parser = smile.createParser(body)) {
+      return PriceSeries.decode(parser);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public List<Metrics> getFinancialMetrics(
+      String ticker, LocalDate endDate, Period period, int limit) {
+    return get(
+        METRICS,
+        "/v1/financial-metrics?ticker={ticker}&end_date={end_date}&period={period}&limit={limit}",
+        ticker,
+        endDate,
+        period,
+        limit);
+  }
+
+  @Override
+  public List<LineItem> searchLineItems(
+      String ticker, LocalDate endDate, List<String> items, Period period, int limit) {
+    return get(
+        LINE_ITEMS,
+        "/v1/line-items?ticker={ticker}&end_date={end_date}&items={items}&period={period}&limit={limit}",
+        ticker,
+        endDate,
+        String.join(",", items),
+        period,
+        limit);
+  }
+
+  @Override
+  public Map<String, List<LineItem>> searchLineItems(
+      List<String> tickers, LocalDate endDate, List<String> items, Period period, int limit) {
+    return get(
+        LINE_ITEMS_BY_TICKER,
+        "/v1/line-items?tickers={tickers}&end_date={end_date}&items={items}&period={period}&limit={limit}",
+        String.join(",", tickers),
+        endDate,
+        String.join(",", items),
+        period,
+        limit);
+  }
+
+  @Override
+  public List<InsiderTrade> getInsiderTrades(
+      String ticker, LocalDate startDate, LocalDate endDate, int limit) {
+    return get(
+        INSIDER_TRADES,
+        "/v1/insider-trades?ticker={ticker}&start_date={start_date}&end_date={end_date}&limit={limit}",
+        ticker,
+        startDate,
+        endDate,
+        limit);
+  }
+
+  /** Each page is a {@link #getInsiderTrades} call, so the gateway serves it from its history. */
+  @Override
+  public Stream<InsiderTrade> streamInsiderTrades(
+      String ticker, LocalDate startDate, LocalDate endDate, int pageSize) {
+    return StreamSupport.stream(
+        new DatePagedSpliterator<>(
+            batchEndDate -> getInsiderTrades(ticker, startDate, batchEndDate, pageSize),
+            InsiderTrade::filingDate,
+            startDate,
+            endDate,
+            pageSize),
+        false);
+  }
+
+  @Override
+  public List<CompanyNews> getCompanyNews(
+      String ticker, LocalDate startDate, LocalDate endDate, int limit) {
+    return get(
+        COMPANY_NEWS,
+        "/v1/news?ticker={ticker}&start_date={start_date}&end_date={end_date}&limit={limit}",
+        ticker,
+        startDate,
+        endDate,
+        limit);
+  }
+
+  /** Each page is a {@link #getCompanyNews} call, so the gateway serves it from its history. */
+  @Override
+  public Stream<CompanyNews> streamCompanyNews(
+      String ticker, LocalDate startDate, LocalDate endDate, int pageSize) {
+    return StreamSupport.stream(
+        new DatePagedSpliterator<>(
+            batchEndDate -> getCompanyNews(ticker, startDate, batchEndDate, pageSize),
+            CompanyNews::date,
+            startDate,
+            endDate,
+            pageSize),
+        false);
+  }
+
+  @Override
+  public BigDecimal getMarketCap(String ticker, LocalDate endDate) {
+    return get(
+        BigDecimal.class, "/v1/market-cap?ticker={ticker}&end_date={end_date}", ticker, endDate);
+  }
+
+  /** The sections are fetched concurrently by the gateway, in a single round trip. */
+  @Override
+  public TickerDataBundle getTickerData(TickerDataRequest request) {
+    return gateway
+        .post()
+        .uri("/v1/ticker-data")
+        .contentType(SMILE)
+        .body(request)
+        .retrieve()
+        .body(TickerDataBundle.class);
+  }
+
+  private <T> T get(Class<T> type, String uri, Object... uriVariables) {
+    return gateway.get().uri(uri, uriVariables).retrieve().body(type);
+  }
+
+  private <T> T get(ParameterizedTypeReference<T> type, String uri, Object... uriVariables) {
+    return gateway.get().uri(uri, uriVariables).retrieve().body(type);
+  }
+}
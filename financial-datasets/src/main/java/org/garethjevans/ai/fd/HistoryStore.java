@@ -0,0 +1,241 @@
+package org.garethjevans.ai.fd;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import org.garethjevans.ai.fd.PriceStore.DateRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a per ticker history of dated records (news, insider trades) and refreshes it
+ * incrementally. Each ticker has the date ranges for which every record is held, kept disjoint so a
+ * window away from the history adds to it rather than replaces it. A request only fetches the parts
+ * of its window not covered, newest first and only while the records held can't fill its limit,
+ * merges them in with duplicates removed and answers the window locally. A daily refresh therefore
+ * costs one small request instead of re-downloading the year.
+ *
+ * <p>At most {@code maxTickers} histories are held in memory, the least recently used being read
+ * back from the {@link CacheService} when next asked for. A history is merged with the one on disk
+ * under the cache lock before it is saved, so processes sharing the cache directory add to each
+ * other's records rather than overwrite them.
+ */
+class HistoryStore<T> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HistoryStore.class);
+
+  /** How many tickers' histories are held in memory by default. */
+  static final int MAX_TICKERS = 256;
+
+  /** Fetches at most {@code limit} records between two dates, inclusive, newest first. */
+  @FunctionalInterface
+  interface Fetcher<T> {
+    List<T> fetch(String ticker, LocalDate startDate, LocalDate endDate, int limit);
+  }
+
+  private final String endpoint;
+  private final Function<T, LocalDate> dateOf;
+  private final Fetcher<T> fetcher;
+  private final CacheService cacheService;
+  private final ObjectMapper mapper;
+  private final JavaType storedType;
+  private final Clock clock;
+  private final Map<String, History<T>> histories;
+
+  HistoryStore(
+      String endpoint,
+      Class<T> type,
+      Function<T, LocalDate> dateOf,
+      Fetcher<T> fetcher,
+      CacheService cacheService,
+      ObjectMapper mapper,
+      Clock clock) {
+    this(endpoint, type, dateOf, fetcher, cacheService, mapper, clock, MAX_TICKERS);
+  }
+
+  /**
+   * @param maxTickers how many tickers' histories are held in memory
+   */
+  HistoryStore(
+      String endpoint,
+      Class<T> type,
+      Function<T, LocalDate> dateOf,
+      Fetcher<T> fetcher,
+      CacheService cacheService,
+      ObjectMapper mapper,
+      Clock clock,
+      int maxTickers) {
+    this.endpoint = endpoint;
+    this.dateOf = dateOf;
+    this.fetcher = fetcher;
+    this.cacheService = cacheService;
+    this.mapper = mapper;
+    this.storedType = mapper.getTypeFactory().constructParametricType(StoredHistory.class, type);
+    this.clock = clock;
+    this.histories =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, History<T>> eldest) {
+            return size() > maxTickers;
+          }
+        };
+  }
+
+  /** At most {@code limit} records between the two dates, inclusive, newest first. */
+  List<T> get(String ticker, LocalDate startDate, LocalDate endDate, int limit) {
+    History<T> history = history(ticker);
+    history.lock.lock();
+    try {
+      boolean changed = false;
+      for (DateRange gap : history.covered.missing(startDate, endDate).reversed()) {
+        // older records only matter while the newer ones held can't fill the limit
+        if (window(history, gap.endDate().plusDays(1), endDate, limit).size() >= limit) {
+          break;
+        }
+        fetch(ticker, history, gap, limit);
+        changed = true;
+      }
+
+      if (changed) {
+        cacheService.locked(storeKey(ticker), () -> save(ticker, history));
+      }
+      return window(history, startDate, endDate, limit);
+    } finally {
+      history.lock.unlock();
+    }
+  }
+
+  /**
+   * Fetches the records of one gap into the history and covers the days known complete: when the
+   * response is cut off by the limit only the days after its oldest record, and never today, whose
+   * records are still being filed.
+   */
+  private void fetch(String ticker, History<T> history, DateRange gap, int limit) {
+    // the day before a gap is a high-water mark, records may have been filed after it was taken
+    LocalDate from =
+        history.covered.covers(gap.startDate().minusDays(1))
+            ? gap.startDate().minusDays(1)
+            : gap.startDate();
+    List<T> fetched = fetcher.fetch(ticker, from, gap.endDate(), limit);
+    history.records.addAll(fetched);
+
+    LocalDate start = from;
+    LocalDate oldest = oldest(fetched);
+    if (fetched.size() >= limit && oldest != null) {
+      start = oldest.plusDays(1);
+    }
+    LocalDate settled = LocalDate.now(clock).minusDays(1);
+    LocalDate end = gap.endDate().isAfter(settled) ? settled : gap.endDate();
+    history.covered.cover(new DateRange(start, end));
+  }
+
+  private List<T> window(History<T> history, LocalDate startDate, LocalDate endDate, int limit) {
+    return history.records.stream()
+        .filter(
+            r -> {
+              LocalDate date = dateOf.apply(r);
+              return date != null && !date.isBefore(startDate) && !date.isAfter(endDate);
+            })
+        .sorted(Comparator.comparing(dateOf, Comparator.reverseOrder()))
+        .limit(limit)
+        .toList();
+  }
+
+  private LocalDate oldest(List<T> records) {
+    return records.stream()
+        .map(dateOf)
+        .filter(d -> d != null)
+        .min(LocalDate::compareTo)
+        .orElse(null);
+  }
+
+  /** The ticker's history, read from the cache if it isn't held. */
+  private History<T> history(String ticker) {
+    synchronized (histories) {
+      History<T> history = histories.get(ticker);
+      if (history != null) {
+        return history;
+      }
+    }
+    // read outside the map's lock, so one ticker's read doesn't hold up every other ticker
+    History<T> loaded = new History<>();
+    readStored(ticker, loaded);
+    synchronized (histories) {
+      History<T> history = histories.putIfAbsent(ticker, loaded);
+      return history != null ? history : loaded;
+    }
+  }
+
+  /** Merges the history on disk, as this or another process last saved it, into {@code history}. */
+  private void readStored(String ticker, History<T> history) {
+    String key = storeKey(ticker);
+    if (!cacheService.keyExists(key)) {
+      return;
+    }
+    try {
+      StoredHistory<T> stored = mapper.readValue(cacheService.get(key), storedType);
+      history.records.addAll(stored.records());
+      if (stored.ranges() != null) {
+        stored.ranges().forEach(history.covered::cover);
+      } else if (stored.coveredFrom() != null && stored.coveredTo() != null) {
+        // saved when a history had a single covered range
+        history.covered.cover(new DateRange(stored.coveredFrom(), stored.coveredTo()));
+      }
+    } catch (JsonProcessingException e) {
+      LOGGER.warn("Unable to read stored {} for {}, starting afresh", endpoint, ticker, e);
+    }
+  }
+
+  /** Called holding the history's lock and the cache lock on its key. */
+  private Void save(String ticker, History<T> history) {
+    readStored(ticker, history);
+    try {
+      cacheService.save(
+          storeKey(ticker),
+          mapper.writeValueAsString(
+              new StoredHistory<>(
+                  null, null, history.covered.ranges(), new ArrayList<>(history.records))));
+    } catch (JsonProcessingException e) {
+      LOGGER.warn("Unable to persist {} for {}", endpoint, ticker, e);
+    }
+    return null;
+  }
+
+  private String storeKey(String ticker) {
+    return "history " + endpoint + " " + ticker;
+  }
+
+  /**
+   * A persisted history. {@code covered_from} and {@code covered_to} are only read, from histories
+   * saved before they could have more than one covered range.
+   */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  record StoredHistory<T>(
+      @JsonProperty("covered_from") LocalDate coveredFrom,
+      @JsonProperty("covered_to") LocalDate coveredTo,
+      @JsonProperty("ranges") List<DateRange> ranges,
+      @JsonProperty("records") List<T> records) {}
+
+  private static final class History<T> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Every record held, in no particular order, duplicates are dropped on insert. */
+    private final Set<T> records = new LinkedHashSet<>();
+
+    private final CoveredRanges covered = new CoveredRanges();
+  }
+}
@@ -1,13 +1,16 @@
 package org.garethjevans.ai.fd;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.Map;
 
 public class LineItem {
 
-  private final Map<String, Object> data;
+  @JsonValue private final Map<String, Object> data;
 
+  @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
   LineItem(Map<String, Object> data) {
     this.data = data;
   }
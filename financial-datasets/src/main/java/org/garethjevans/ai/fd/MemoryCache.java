@@ -0,0 +1,66 @@
+package org.garethjevans.ai.fd;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * An in-process tier in front of the {@link CacheService} holding decoded responses, so repeated
+ * reads of the same entry during an analysis skip the file system and the JSON parsing.
+ *
+ * <p>Admission and eviction are frequency aware (W-TinyLFU), a one-off read of a large entry does
+ * not push out the responses every agent asks for. Entries are weighed by their encoded size, which
+ * bounds the tier by {@code maxWeightBytes}. Cached responses are shared between callers and must
+ * not be modified.
+ */
+public class MemoryCache {
+
+  private final Cache<String, Entry> cache;
+
+  public MemoryCache(long maxWeightBytes) {
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumWeight(maxWeightBytes)
+            .weigher((String key, Entry entry) -> entry.weight())
+            .recordStats()
+            .build();
+  }
+
+  private record Entry(Object value, int weight) {}
+
+  /**
+   * The response cached under {@code cacheKey}, or {@code null} if it isn't held as a {@code T}.
+   */
+  <T> T get(String cacheKey, Class<T> type) {
+    Entry entry = cache.getIfPresent(cacheKey);
+    return entry != null && type.isInstance(entry.value()) ? type.cast(entry.value()) : null;
+  }
+
+  /** Holds {@code value}, decoded from or encoded to {@code json}, under {@code cacheKey}. */
+  void put(String cacheKey, Object value, String json) {
+    put(cacheKey, value, json.length());
+  }
+
+  /**
+   * Holds {@code value}, decoded from or encoded to {@code encodedBytes}, under {@code cacheKey}.
+   */
+  void put(String cacheKey, Object value, int encodedBytes) {
+    cache.put(cacheKey, new Entry(value, cacheKey.length() + encodedBytes));
+  }
+
+  CacheStats stats() {
+    return cache.stats();
+  }
+
+  /** Runs pending evictions now rather than on the next cache operation. */
+  void cleanUp() {
+    cache.cleanUp();
+  }
+
+  /** Publishes hit, miss, eviction and size metrics as {@code cache.*} tagged with this tier. */
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, cache, "financial-datasets");
+  }
+}
@@ -0,0 +1,341 @@
+package org.garethjevans.ai.fd;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Daily price bars held as primitive columns rather than a list of {@link Price} records, oldest
+ * bar first. A bar costs 48 bytes instead of a graph of {@code BigDecimal}s, a {@code String} and a
+ * {@code BigInteger}.
+ */
+public final class PriceSeries {
+
+  private static final PriceSeries EMPTY = new PriceSeries(new long[0], new double[5][0], 0);
+
+  private final long[] epochDay;
+  private final double[] open;
+  private final double[] high;
+  private final double[] low;
+  private final double[] close;
+  private final double[] volume;
+
+  private PriceSeries(long[] epochDay, double[][] columns, int size) {
+    this.epochDay = Arrays.copyOf(epochDay, size);
+    this.open = Arrays.copyOf(columns[0], size);
+    this.high = Arrays.copyOf(columns[1], size);
+    this.low = Arrays.copyOf(columns[2], size);
+    this.close = Arrays.copyOf(columns[3], size);
+    this.volume = Arrays.copyOf(columns[4], size);
+  }
+
+  public static PriceSeries empty() {
+    return EMPTY;
+  }
+
+  /** Copies bars that have already been decoded, oldest first, into columns. */
+  static PriceSeries of(List<Price> prices) {
+    long[] epochDay = new long[prices.size()];
+    double[][] columns = new double[5][prices.size()];
+    int size = 0;
+    for (Price price : prices) {
+      LocalDate date = PriceStore.dateOf(price);
+      if (date == null) {
+        continue;
+      }
+      epochDay[size] = date.toEpochDay();
+      columns[0][size] = doubleValue(price.open());
+      columns[1][size] = doubleValue(price.high());
+      columns[2][size] = doubleValue(price.low());
+      columns[3][size] = doubleValue(price.close());
+      columns[4][size] = doubleValue(price.volume());
+      size++;
+    }
+    return new PriceSeries(epochDay, columns, size);
+  }
+
+  private static double doubleValue(BigDecimal value) {
+    return value != null ? value.doubleValue() : 0d;
+  }
+
+  public int size() {
+    return epochDay.length;
+  }
+
+  public boolean isEmpty() {
+    return epochDay.length == 0;
+  }
+
+  public long epochDay(int i) {
+    return epochDay[i];
+  }
+
+  public LocalDate date(int i) {
+    return LocalDate.ofEpochDay(epochDay[i]);
+  }
+
+  public double open(int i) {
+    return open[i];
+  }
+
+  public double high(int i) {
+    return high[i];
+  }
+
+  public double low(int i) {
+    return low[i];
+  }
+
+  public double close(int i) {
+    return close[i];
+  }
+
+  public double volume(int i) {
+    return volume[i];
+  }
+
+  public double lastClose() {
+    return close[close.length - 1];
+  }
+
+  /** The bars between the two dates, inclusive. */
+  PriceSeries between(LocalDate startDate, LocalDate endDate) {
+    int from = indexOf(startDate.toEpochDay());
+    int to = indexOf(endDate.toEpochDay() + 1);
+    if (from == 0 && to == size()) {
+      return this;
+    }
+    return new PriceSeries(
+        Arrays.copyOfRange(epochDay, from, to),
+        new double[][] {
+          Arrays.copyOfRange(open, from, to),
+          Arrays.copyOfRange(high, from, to),
+          Arrays.copyOfRange(low, from, to),
+          Arrays.copyOfRange(close, from, to),
+          Arrays.copyOfRange(volume, from, to)
+        },
+        to - from);
+  }
+
+  /** The index of the first bar on or after {@code day}. */
+  private int indexOf(long day) {
+    int i = Arrays.binarySearch(epochDay, day);
+    return i >= 0 ? i : -i - 1;
+  }
+
+  /** The bars of both series, taking the bar from {@code newer} where both have the same day. */
+  PriceSeries merge(PriceSeries newer) {
+    PriceSeries older = this.sorted();
+    newer = newer.sorted();
+    if (newer.isEmpty()) {
+      return older;
+    }
+    if (older.isEmpty()) {
+      return newer;
+    }
+
+    int capacity = older.size() + newer.size();
+    long[] days = new long[capacity];
+    double[][] columns = new double[5][capacity];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    while (i < older.size() || j < newer.size()) {
+      PriceSeries from;
+      int k;
+      if (j == newer.size() || (i < older.size() && older.epochDay[i] < newer.epochDay[j])) {
+        from = older;
+        k = i++;
+      } else {
+        if (i < older.size() && older.epochDay[i] == newer.epochDay[j]) {
+          i++;
+        }
+        from = newer;
+        k = j++;
+      }
+      days[size] = from.epochDay[k];
+      columns[0][size] = from.open[k];
+      columns[1][size] = from.high[k];
+      columns[2][size] = from.low[k];
+      columns[3][size] = from.close[k];
+      columns[4][size] = from.volume[k];
+      size++;
+    }
+    return new PriceSeries(days, columns, size);
+  }
+
+  /** The same bars oldest first, upstream sends them in order so this rarely has to sort. */
+  private PriceSeries sorted() {
+    boolean inOrder = true;
+    for (int i = 1; i < epochDay.length && inOrder; i++) {
+      inOrder = epochDay[i - 1] < epochDay[i];
+    }
+    if (inOrder) {
+      return this;
+    }
+    int[] order =
+        IntStream.range(0, size())
+            .boxed()
+            .sorted(Comparator.comparingLong(i -> epochDay[i]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+    long[] days = new long[order.length];
+    double[][] columns = new double[5][order.length];
+    int size = 0;
+    for (int k : order) {
+      if (size > 0 && days[size - 1] == epochDay[k]) {
+        // the later of two bars for the same day wins, as it does in merge()
+        size--;
+      }
+      days[size] = epochDay[k];
+      columns[0][size] = open[k];
+      columns[1][size] = high[k];
+      columns[2][size] = low[k];
+      columns[3][size] = close[k];
+      columns[4][size] = volume[k];
+      size++;
+    }
+    return new PriceSeries(days, columns, size);
+  }
+
+  /**
+   * Boxes the bars as {@link Price} records, for callers of the list API. Unlike the records of a
+   * response, the {@code time} is the trading day only, {@code time_milliseconds} is null and the
+   * values are those of the {@code double} columns.
+   */
+  List<Price> toPrices() {
+    List<Price> prices = new ArrayList<>(size());
+    for (int i = 0; i < size(); i++) {
+      prices.add(
+          new Price(
+              BigDecimal.valueOf(open[i]),
+              BigDecimal.valueOf(close[i]),
+              BigDecimal.valueOf(high[i]),
+              BigDecimal.valueOf(low[i]),
+              volume[i] == Math.rint(volume[i])
+                  ? BigDecimal.valueOf((long) volume[i])
+                  : BigDecimal.valueOf(volume[i]),
+              date(i).toString(),
+              null));
+    }
+    return prices;
+  }
+
+  /** Writes the bars in the shape of a {@code /prices/} response, which {@link #decode} reads. */
+  String encode(JsonFactory factory) {
+    StringWriter json = new StringWriter();
+    try (JsonGenerator generator = factory.createGenerator(json)) {
+      generator.writeStartObject();
+      generator.writeArrayFieldStart("prices");
+      for (int i = 0; i < size(); i++) {
+        generator.writeStartObject();
+        generator.writeStringField("time", date(i).toString());
+        generator.writeNumberField("open", open[i]);
+        generator.writeNumberField("high", high[i]);
+        generator.writeNumberField("low", low[i]);
+        generator.writeNumberField("close", close[i]);
+        generator.writeNumberField("volume", volume[i]);
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+      generator.writeEndObject();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return json.toString();
+  }
+
+  /**
+   * Decodes the {@code prices} array of a {@code /prices/} response straight into columns, without
+   * creating an object per bar. Unknown fields are skipped, and so are bars with neither a {@code
+   * time} nor a {@code time_milliseconds}.
+   */
+  static PriceSeries decode(JsonFactory factory, String json) throws IOException {
+    try (JsonParser parser = factory.createParser(json)) {
+      return decode(parser);
+    }
+  }
+
+  /** Like {@link #decode(JsonFactory, String)}, from a parser over a response in any format. */
+  static PriceSeries decode(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      return EMPTY;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      JsonToken value = parser.nextToken();
+      if ("prices".equals(field) && value == JsonToken.START_ARRAY) {
+        return decodeBars(parser);
+      }
+      parser.skipChildren();
+    }
+    return EMPTY;
+  }
+
+  private static PriceSeries decodeBars(JsonParser parser) throws IOException {
+    int capacity = 256;
+    long[] epochDay = new long[capacity];
+    double[][] columns = new double[5][capacity];
+    int size = 0;
+
+    while (parser.nextToken() == JsonToken.START_OBJECT) {
+      if (size == capacity) {
+        capacity *= 2;
+        epochDay = Arrays.copyOf(epochDay, capacity);
+        for (int c = 0; c < columns.length; c++) {
+          columns[c] = Arrays.copyOf(columns[c], capacity);
+        }
+      }
+
+      long day = Long.MIN_VALUE;
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.currentName();
+        JsonToken value = parser.nextToken();
+        if (value == JsonToken.VALUE_NULL) {
+          continue;
+        }
+        switch (field) {
+          case "open" -> columns[0][size] = parser.getDoubleValue();
+          case "high" -> columns[1][size] = parser.getDoubleValue();
+          case "low" -> columns[2][size] = parser.getDoubleValue();
+          case "close" -> columns[3][size] = parser.getDoubleValue();
+          case "volume" -> columns[4][size] = parser.getDoubleValue();
+          // "2025-03-03T05:00:00Z", the date part is the trading day
+          case "time" -> day = LocalDate.parse(parser.getText().substring(0, 10)).toEpochDay();
+          case "time_milliseconds" -> {
+            if (day == Long.MIN_VALUE) {
+              day =
+                  Instant.ofEpochMilli(parser.getLongValue())
+                      .atZone(ZoneOffset.UTC)
+                      .toLocalDate()
+                      .toEpochDay();
+            }
+          }
+          default -> parser.skipChildren();
+        }
+      }
+      if (day == Long.MIN_VALUE) {
+        // a bar without a date can't be placed, it is dropped as of() drops it
+        for (double[] column : columns) {
+          column[size] = 0d;
+        }
+        continue;
+      }
+      epochDay[size++] = day;
+    }
+
+    return new PriceSeries(epochDay, columns, size);
+  }
+}
@@ -0,0 +1,339 @@
+package org.garethjevans.ai.fd;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps, per ticker, the union of every daily bar fetched so far along with the date ranges they
+ * cover, so a request for any window is answered locally and only the missing dates are fetched.
+ * Once a year of history is held, a three day "current price" lookup needs no upstream call.
+ *
+ * <p>Bars are held as {@link PriceSeries} columns, for at most {@code maxTickers} tickers, the
+ * least recently used being dropped and read back from the {@link CacheService} when next asked
+ * for. Each fetched range is persisted as its own entry, listed in a small per ticker index that is
+ * merged with the one on disk under the cache lock, so processes sharing the cache directory add to
+ * each other's ranges rather than overwrite them. Once a ticker has {@value #MAX_SEGMENTS} ranges
+ * they are rewritten as one.
+ */
+class PriceStore {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PriceStore.class);
+
+  /** How many tickers are held in memory by default. */
+  static final int MAX_TICKERS = 256;
+
+  /** How many persisted ranges a ticker may have before they are rewritten as one. */
+  static final int MAX_SEGMENTS = 32;
+
+  /** Fetches the bars between two dates, inclusive. */
+  @FunctionalInterface
+  interface Fetcher {
+    PriceSeries fetch(String ticker, LocalDate startDate, LocalDate endDate);
+  }
+
+  private final CacheService cacheService;
+  private final ObjectMapper mapper;
+  private final Fetcher fetcher;
+  private final boolean serveStale;
+  private final Clock clock;
+  private final Map<String, TickerPrices> tickers;
+  private final ConcurrentMap<String, Staleness> servedStale = new ConcurrentHashMap<>();
+
+  PriceStore(
+      CacheService cacheService,
+      ObjectMapper mapper,
+      Fetcher fetcher,
+      boolean serveStale,
+      Clock clock) {
+    this(cacheService, mapper, fetcher, serveStale, clock, MAX_TICKERS);
+  }
+
+  /**
+   * @param serveStale when only the newest settled days of a window are missing, answer with the
+   *     bars held and fetch those days in the background, one fetch per ticker at a time
+   * @param clock decides which day is today, whose bar is still changing and is never held as
+   *     covered
+   * @param maxTickers how many tickers' bars are held in memory
+   */
+  PriceStore(
+      CacheService cacheService,
+      ObjectMapper mapper,
+      Fetcher fetcher,
+      boolean serveStale,
+      Clock clock,
+      int maxTickers) {
+    this.cacheService = cacheService;
+    this.mapper = mapper;
+    this.fetcher = fetcher;
+    this.serveStale = serveStale;
+    this.clock = clock;
+    this.tickers =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, TickerPrices> eldest) {
+            return size() > maxTickers;
+          }
+        };
+  }
+
+  /** The bars between the two dates, inclusive, oldest first. */
+  PriceSeries get(String ticker, LocalDate startDate, LocalDate endDate) {
+    TickerPrices prices = tickerPrices(ticker);
+    prices.lock.lock();
+    try {
+      List<DateRange> gaps = prices.covered.missing(startDate, endDate);
+      if (gaps.isEmpty()) {
+        return prices.bars.between(startDate, endDate);
+      }
+
+      // only the newest settled days are missing, what is held is a stale but complete answer,
+      // today's bar alone is never held so is fetched in line
+      DateRange newest = gaps.getLast();
+      if (serveStale
+          && gaps.size() == 1
+          && newest.endDate().equals(endDate)
+          && newest.startDate().isAfter(startDate)
+          && newest.startDate().isBefore(LocalDate.now(clock))) {
+        if (!prices.refreshing) {
+          prices.refreshing = true;
+          LocalDate heldUntil = newest.startDate().minusDays(1);
+          servedStale.put(ticker, new Staleness(endDate, heldUntil, prices.updatedAt));
+          Thread.ofVirtual().start(() -> refresh(ticker, prices, newest));
+        }
+        return prices.bars.between(startDate, endDate);
+      }
+
+      for (DateRange gap : gaps) {
+        fill(ticker, prices, gap);
+      }
+      return prices.bars.between(startDate, endDate);
+    } finally {
+      prices.lock.unlock();
+    }
+  }
+
+  /** The stale window currently being served for {@code ticker}, if any. */
+  Staleness staleness(String ticker) {
+    return servedStale.get(ticker);
+  }
+
+  /** The ticker's bars, read from the cache if they aren't held. */
+  private TickerPrices tickerPrices(String ticker) {
+    synchronized (tickers) {
+      TickerPrices prices = tickers.get(ticker);
+      if (prices != null) {
+        return prices;
+      }
+    }
+    // read outside the map's lock, so one ticker's read doesn't hold up every other ticker
+    TickerPrices loaded = load(ticker);
+    synchronized (tickers) {
+      TickerPrices prices = tickers.putIfAbsent(ticker, loaded);
+      return prices != null ? prices : loaded;
+    }
+  }
+
+  private void refresh(String ticker, TickerPrices prices, DateRange gap) {
+    PriceSeries fetched = null;
+    try {
+      // fetched without the lock, so requests meanwhile are still answered with the bars held
+      fetched = fetcher.fetch(ticker, gap.startDate(), gap.endDate());
+    } catch (RuntimeException e) {
+      LOGGER.warn("Unable to refresh prices for {}: {}", ticker, e.getMessage());
+    }
+    prices.lock.lock();
+    try {
+      if (fetched != null) {
+        add(ticker, prices, gap, fetched);
+        servedStale.remove(ticker);
+      }
+    } finally {
+      prices.refreshing = false;
+      prices.lock.unlock();
+    }
+  }
+
+  /** Fetches one missing range, merges it in and persists it. Called with the lock held. */
+  private void fill(String ticker, TickerPrices prices, DateRange gap) {
+    LOGGER.debug("Fetching prices for {} from {} to {}", ticker, gap.startDate(), gap.endDate());
+    add(ticker, prices, gap, fetcher.fetch(ticker, gap.startDate(), gap.endDate()));
+  }
+
+  /** Merges in the bars fetched for one range and persists them. Called with the lock held. */
+  private void add(String ticker, TickerPrices prices, DateRange gap, PriceSeries fetched) {
+    prices.bars = prices.bars.merge(fetched);
+    // today's bar moves until the close, it is fetched again, through the cache, on every request
+    LocalDate settled = LocalDate.now(clock).minusDays(1);
+    if (!gap.startDate().isAfter(settled)) {
+      prices.covered.cover(
+          new DateRange(gap.startDate(), gap.endDate().isAfter(settled) ? settled : gap.endDate()));
+    }
+    prices.updatedAt = Instant.now();
+
+    try {
+      cacheService.save(segmentKey(ticker, gap), fetched.encode(mapper.getFactory()));
+      cacheService.locked(storeKey(ticker), () -> saveIndex(ticker, prices, gap));
+    } catch (RuntimeException e) {
+      LOGGER.warn("Unable to persist prices for {}", ticker, e);
+    }
+  }
+
+  /**
+   * Adds {@code segment} to the index on disk, first taking in whatever other processes added to it
+   * since this one read it. Called holding the ticker's lock and the cache lock on its index.
+   */
+  private Void saveIndex(String ticker, TickerPrices prices, DateRange segment) {
+    readIndex(ticker, prices);
+    prices.segments.add(segment);
+
+    if (prices.segments.size() > MAX_SEGMENTS && !prices.bars.isEmpty()) {
+      DateRange all = new DateRange(prices.bars.date(0), prices.bars.date(prices.bars.size() - 1));
+      cacheService.save(segmentKey(ticker, all), prices.bars.encode(mapper.getFactory()));
+      for (DateRange old : prices.segments) {
+        if (!old.equals(all)) {
+          cacheService.delete(segmentKey(ticker, old));
+        }
+      }
+      prices.segments.clear();
+      prices.segments.add(all);
+    }
+
+    StoredPrices stored =
+        new StoredPrices(
+            prices.covered.ranges(), List.of(), new ArrayList<>(prices.segments), prices.updatedAt);
+    try {
+      cacheService.save(storeKey(ticker), mapper.writeValueAsString(stored));
+    } catch (JsonProcessingException e) {
+      throw new RuntimeException(e);
+    }
+    return null;
+  }
+
+  private TickerPrices load(String ticker) {
+    TickerPrices prices = new TickerPrices();
+    readIndex(ticker, prices);
+    return prices;
+  }
+
+  /** Merges in the ranges of the index on disk, and the segments not read yet. */
+  private void readIndex(String ticker, TickerPrices prices) {
+    String key = storeKey(ticker);
+    if (!cacheService.keyExists(key)) {
+      return;
+    }
+    StoredPrices stored;
+    try {
+      stored = mapper.readValue(cacheService.get(key), StoredPrices.class);
+    } catch (JsonProcessingException e) {
+      LOGGER.warn("Unable to read stored prices for {}, starting afresh", ticker, e);
+      return;
+    }
+
+    // written before ranges were persisted on their own, the bars are inline
+    if (stored.prices() != null && !stored.prices().isEmpty()) {
+      prices.bars = PriceSeries.of(stored.prices()).merge(prices.bars);
+    }
+    if (stored.segments() != null) {
+      for (DateRange segment : stored.segments()) {
+        if (prices.segments.contains(segment)) {
+          continue;
+        }
+        PriceSeries bars = readSegment(ticker, segment);
+        if (bars == null) {
+          // compacted away by another process, its bars are in the segment that replaced it
+          continue;
+        }
+        prices.bars = bars.merge(prices.bars);
+        prices.segments.add(segment);
+      }
+      // the rest were rewritten as one by another process
+      prices.segments.retainAll(stored.segments());
+    }
+    stored.ranges().forEach(prices.covered::cover);
+    if (prices.updatedAt == null
+        || (stored.updatedAt() != null && stored.updatedAt().isAfter(prices.updatedAt))) {
+      prices.updatedAt = stored.updatedAt();
+    }
+  }
+
+  private PriceSeries readSegment(String ticker, DateRange segment) {
+    String key = segmentKey(ticker, segment);
+    if (!cacheService.keyExists(key)) {
+      return null;
+    }
+    try {
+      return PriceSeries.decode(mapper.getFactory(), cacheService.get(key));
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read stored prices {}", key, e);
+      return null;
+    }
+  }
+
+  private static String storeKey(String ticker) {
+    return "price-store " + ticker;
+  }
+
+  private static String segmentKey(String ticker, DateRange range) {
+    return storeKey(ticker) + " " + range.startDate() + " " + range.endDate();
+  }
+
+  /** The trading day of a bar, from its {@code time} or else its {@code time_milliseconds}. */
+  static LocalDate dateOf(Price price) {
+    if (price.time() != null && price.time().length() >= 10) {
+      return LocalDate.parse(price.time().substring(0, 10));
+    }
+    if (price.timeMillisecond() != null) {
+      return Instant.ofEpochMilli(price.timeMillisecond().longValue())
+          .atZone(ZoneOffset.UTC)
+          .toLocalDate();
+    }
+    return null;
+  }
+
+  record DateRange(
+      @JsonProperty("start_date") LocalDate startDate,
+      @JsonProperty("end_date") LocalDate endDate) {}
+
+  /**
+   * A ticker's index. {@code prices} is only read, from entries written before each range was
+   * persisted as its own {@code segments} entry.
+   */
+  record StoredPrices(
+      @JsonProperty("ranges") List<DateRange> ranges,
+      @JsonProperty("prices") List<Price> prices,
+      @JsonProperty("segments") List<DateRange> segments,
+      @JsonProperty("updated_at") Instant updatedAt) {}
+
+  private static final class TickerPrices {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private PriceSeries bars = PriceSeries.empty();
+
+    private final CoveredRanges covered = new CoveredRanges();
+
+    /** The persisted ranges whose bars are in {@link #bars}. */
+    private final Set<DateRange> segments = new LinkedHashSet<>();
+
+    private Instant updatedAt;
+
+    /** Whether newest days served stale are being fetched, so only one fetch is started. */
+    private boolean refreshing;
+  }
+}
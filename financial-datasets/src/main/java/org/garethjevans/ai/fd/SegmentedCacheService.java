@@ -0,0 +1,678 @@
+package org.garethjevans.ai.fd;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends entries to a few large segment files instead of writing a file per entry, and finds them
+ * through an in-memory index of key to segment, offset and length. A lookup is a hash map probe and
+ * a read from a memory-mapped segment, no file system calls.
+ *
+ * <p>A segment is sealed once it reaches {@code maxSegmentBytes} by appending a footer holding its
+ * index, so on startup the index of every sealed segment is read in one go rather than by scanning
+ * its records. Only the segment being written to is scanned, and a record torn by a crash at its
+ * end is cut off. Saving a key again supersedes its earlier record, and a background task rewrites
+ * the live records of segments that are mostly superseded and deletes them.
+ *
+ * <p>Segments are written by a single process. The directory is locked while open, and a second
+ * process opening it fails rather than corrupt the segments, so processes sharing a cache volume
+ * either use the {@code files} backend or go through the data gateway.
+ *
+ * <p>Sealed segments are mapped as they are sealed, so a reader holding the location of an entry in
+ * a segment that compaction deletes meanwhile reads the mapping, which outlives the file.
+ *
+ * <p>Entries not found in the segments are read from {@code fallback}, when given, so a cache
+ * directory written one file per entry stays readable.
+ */
+public class SegmentedCacheService implements CacheService, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedCacheService.class);
+
+  private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+
+  private static final String LOCK_FILE = "segments.lock";
+
+  private static final int RECORD_MAGIC = 0x43524543;
+  private static final int FOOTER_MAGIC = 0x43464f54;
+
+  /** The value length of a record marking its key as deleted. */
+  private static final int TOMBSTONE = -1;
+
+  /** Magic, key length and value length. */
+  private static final int RECORD_HEADER_BYTES = 12;
+
+  /** Entry count, footer start and magic. */
+  private static final int FOOTER_TRAILER_BYTES = 16;
+
+  /** Segments with at least this share of superseded bytes are compacted. */
+  private static final double COMPACTION_THRESHOLD = 0.5;
+
+  private final Path dir;
+  private final long maxSegmentBytes;
+  private final CacheService fallback;
+  private final int logPreviewSize;
+  private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<>();
+  private final ConcurrentNavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final ScheduledExecutorService compactor;
+  private final FileChannel lockChannel;
+  private final FileLock dirLock;
+  private Segment active;
+
+  /**
+   * @param compactionInterval how often superseded records are reclaimed, zero or negative to only
+   *     reclaim them when {@link #compact()} is called
+   * @param fallback read when a key is not in the segments, or {@code null}
+   */
+  public SegmentedCacheService(
+      Path dir, long maxSegmentBytes, Duration compactionInterval, CacheService fallback) {
+    this(
+        dir,
+        maxSegmentBytes,
+        compactionInterval,
+        fallback,
+        FileCacheService.DEFAULT_LOG_PREVIEW_SIZE);
+  }
+
+  /**
+   * @param compactionInterval how often superseded records are reclaimed, zero or negative to only
+   *     reclaim them when {@link #compact()} is called
+   * @param fallback read when a key is not in the segments, or {@code null}
+   * @param logPreviewSize how many characters of an entry saved as text are logged
+   */
+  public SegmentedCacheService(
+      Path dir,
+      long maxSegmentBytes,
+      Duration compactionInterval,
+      CacheService fallback,
+      int logPreviewSize) {
+    this.dir = dir;
+    this.logPreviewSize = logPreviewSize;
+    this.maxSegmentBytes = Math.min(maxSegmentBytes, Integer.MAX_VALUE);
+    this.fallback = fallback;
+    try {
+      Files.createDirectories(dir);
+      lockChannel =
+          FileChannel.open(
+              dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    dirLock = lockDirectory();
+    try {
+      open();
+    } catch (IOException | RuntimeException e) {
+      releaseDirectory();
+      throw e instanceof IOException ? new RuntimeException(e) : (RuntimeException) e;
+    }
+
+    if (compactionInterval.isPositive()) {
+      compactor =
+          Executors.newSingleThreadScheduledExecutor(
+              Thread.ofPlatform().name("cache-compactor").daemon().factory());
+      compactor.scheduleWithFixedDelay(
+          this::compactQuietly,
+          compactionInterval.toMillis(),
+          compactionInterval.toMillis(),
+          TimeUnit.MILLISECONDS);
+    } else {
+      compactor = null;
+    }
+  }
+
+  /** Fails fast when another process, or another instance in this one, has the directory open. */
+  private FileLock lockDirectory() {
+    FileLock lock;
+    try {
+      lock = lockChannel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      lock = null;
+    } catch (IOException e) {
+      closeQuietly(lockChannel);
+      throw new RuntimeException(e);
+    }
+    if (lock == null) {
+      closeQuietly(lockChannel);
+      throw new IllegalStateException(
+          "Cache segments in " + dir + " are already open in another process");
+    }
+    return lock;
+  }
+
+  private void releaseDirectory() {
+    try {
+      dirLock.release();
+    } catch (IOException e) {
+      LOGGER.warn("Unable to unlock {}", dir, e);
+    }
+    closeQuietly(lockChannel);
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.debug("Unable to close {}", channel, e);
+    }
+  }
+
+  /** Where the value of a key is, and how much of its segment its record takes up. */
+  private record Location(Segment segment, long offset, int length, int recordLength) {}
+
+  @Override
+  public boolean keyExists(String cacheKey) {
+    return index.containsKey(cacheKey) || (fallback != null && fallback.keyExists(cacheKey));
+  }
+
+  @Override
+  public byte[] getBytes(String cacheKey) {
+    Location location = index.get(cacheKey);
+    if (location == null) {
+      if (fallback != null) {
+        return fallback.getBytes(cacheKey);
+      }
+      throw new IllegalStateException("No cache entry for " + cacheKey);
+    }
+    ByteBuffer value = location.segment().read(location.offset(), location.length());
+    byte[] entry = new byte[value.remaining()];
+    value.get(entry);
+    return entry;
+  }
+
+  @Override
+  public String get(String cacheKey) {
+    Location location = index.get(cacheKey);
+    if (location == null) {
+      if (fallback != null) {
+        return fallback.get(cacheKey);
+      }
+      throw new IllegalStateException("No cache entry for " + cacheKey);
+    }
+    return StandardCharsets.UTF_8
+        .decode(location.segment().read(location.offset(), location.length()))
+        .toString();
+  }
+
+  @Override
+  public void save(String cacheKey, String response) {
+    if (LOGGER.isInfoEnabled()) {
+      LOGGER.info("Saving {}\n{}", cacheKey, FileCacheService.preview(response, logPreviewSize));
+    }
+    saveBytes(cacheKey, response.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public void saveBytes(String cacheKey, byte[] entry) {
+    byte[] key = cacheKey.getBytes(StandardCharsets.UTF_8);
+    writeLock.lock();
+    try {
+      append(cacheKey, key, entry);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /** Sealed segments were forced as they were sealed, so only the active one needs to be. */
+  @Override
+  public void sync(Collection<String> cacheKeys) {
+    writeLock.lock();
+    try {
+      active.channel.force(false);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public void delete(String cacheKey) {
+    writeLock.lock();
+    try {
+      if (index.containsKey(cacheKey)) {
+        append(cacheKey, cacheKey.getBytes(StandardCharsets.UTF_8), null);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      writeLock.unlock();
+    }
+    if (fallback != null) {
+      fallback.delete(cacheKey);
+    }
+  }
+
+  /** Segments have a single writer, but entries read from {@code fallback} may be shared. */
+  @Override
+  public <T> T locked(String cacheKey, Supplier<T> action) {
+    return fallback != null ? fallback.locked(cacheKey, action) : action.get();
+  }
+
+  /**
+   * Appends a record to the active segment, rolling it first when full, or a tombstone when {@code
+   * value} is {@code null}. Called with the lock.
+   */
+  private void append(String cacheKey, byte[] key, byte[] value) throws IOException {
+    int valueLength = value != null ? value.length : TOMBSTONE;
+    int recordLength = RECORD_HEADER_BYTES + key.length + Math.max(valueLength, 0);
+    if (active.size > 0 && active.size + recordLength > maxSegmentBytes) {
+      active.seal();
+      active = createSegment(active.id + 1);
+    }
+
+    ByteBuffer record =
+        ByteBuffer.allocate(recordLength)
+            .putInt(RECORD_MAGIC)
+            .putInt(key.length)
+            .putInt(valueLength);
+    record.put(key);
+    if (value != null) {
+      record.put(value);
+    }
+    record.flip();
+    long recordOffset = active.size;
+    while (record.hasRemaining()) {
+      active.channel.write(record, recordOffset + record.position());
+    }
+
+    long valueOffset = recordOffset + RECORD_HEADER_BYTES + key.length;
+    active.size += recordLength;
+    active.entries.add(new FooterEntry(cacheKey, valueOffset, valueLength));
+    if (value != null) {
+      put(cacheKey, new Location(active, valueOffset, valueLength, recordLength));
+    } else {
+      tombstone(cacheKey, active, recordLength);
+    }
+  }
+
+  private void put(String cacheKey, Location location) {
+    location.segment().recordBytes.addAndGet(location.recordLength());
+    Location superseded = index.put(cacheKey, location);
+    if (superseded != null) {
+      superseded.segment().supersededBytes.addAndGet(superseded.recordLength());
+    }
+  }
+
+  /**
+   * Drops a deleted key from the index. Its tombstone stays live until no older segment is left
+   * that could still hold a record of the key.
+   */
+  private void tombstone(String cacheKey, Segment segment, int recordLength) {
+    segment.recordBytes.addAndGet(recordLength);
+    segment.tombstones.add(cacheKey);
+    Location deleted = index.remove(cacheKey);
+    if (deleted != null) {
+      deleted.segment().supersededBytes.addAndGet(deleted.recordLength());
+    }
+  }
+
+  /**
+   * Rewrites the live records of sealed segments that are mostly superseded into the active
+   * segment, then deletes those segments.
+   */
+  void compact() throws IOException {
+    Map<Segment, List<String>> liveKeys = new HashMap<>();
+    for (Segment segment : segments.values()) {
+      if (segment.sealed && segment.supersededRatio() >= COMPACTION_THRESHOLD) {
+        liveKeys.put(segment, new ArrayList<>());
+      }
+    }
+    if (liveKeys.isEmpty()) {
+      return;
+    }
+    index.forEach(
+        (key, location) -> {
+          List<String> keys = liveKeys.get(location.segment());
+          if (keys != null) {
+            keys.add(key);
+          }
+        });
+
+    for (Map.Entry<Segment, List<String>> compacted : liveKeys.entrySet()) {
+      Segment segment = compacted.getKey();
+      for (String key : compacted.getValue()) {
+        writeLock.lock();
+        try {
+          // only move what hasn't been saved again meanwhile
+          Location location = index.get(key);
+          if (location != null && location.segment() == segment) {
+            ByteBuffer value = segment.read(location.offset(), location.length());
+            byte[] bytes = new byte[value.remaining()];
+            value.get(bytes);
+            append(key, key.getBytes(StandardCharsets.UTF_8), bytes);
+          }
+        } finally {
+          writeLock.unlock();
+        }
+      }
+      if (!segments.headMap(segment.id).isEmpty()) {
+        for (String key : segment.tombstones) {
+          writeLock.lock();
+          try {
+            if (!index.containsKey(key)) {
+              append(key, key.getBytes(StandardCharsets.UTF_8), null);
+            }
+          } finally {
+            writeLock.unlock();
+          }
+        }
+      }
+      segments.remove(segment.id);
+      // readers still holding a location read the mapping made when it was sealed, which outlives
+      // the channel and the file
+      segment.channel.close();
+      Files.deleteIfExists(segment.path);
+      LOGGER.debug("Compacted {} ({} live keys)", segment.path, compacted.getValue().size());
+    }
+  }
+
+  private void compactQuietly() {
+    try {
+      compact();
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Unable to compact cache segments in {}", dir, e);
+    }
+  }
+
+  /** The number of segment files, for tests. */
+  int segmentCount() {
+    return segments.size();
+  }
+
+  /** Seals the active segment, so the next start reads its footer rather than scanning it. */
+  @Override
+  public void close() throws IOException {
+    if (compactor != null) {
+      compactor.shutdownNow();
+    }
+    writeLock.lock();
+    try {
+      active.seal();
+      for (Segment segment : segments.values()) {
+        segment.channel.close();
+      }
+    } finally {
+      writeLock.unlock();
+      releaseDirectory();
+    }
+  }
+
+  /** Lets go of the directory without sealing the active segment, as a crash would, for tests. */
+  void abandon() throws IOException {
+    if (compactor != null) {
+      compactor.shutdownNow();
+    }
+    for (Segment segment : segments.values()) {
+      segment.channel.close();
+    }
+    releaseDirectory();
+  }
+
+  /** Rebuilds the index from the segments on disk, oldest first so later records win. */
+  private void open() throws IOException {
+    List<Integer> ids = new ArrayList<>();
+    try (Stream<Path> files = Files.list(dir)) {
+      files.forEach(
+          file -> {
+            Matcher name = SEGMENT_NAME.matcher(file.getFileName().toString());
+            if (name.matches()) {
+              ids.add(Integer.parseInt(name.group(1)));
+            }
+          });
+    }
+    ids.sort(Integer::compareTo);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ids.size(); i++) {
+      boolean last = i == ids.size() - 1;
+      Segment segment = new Segment(ids.get(i), segmentPath(ids.get(i)));
+      segments.put(segment.id, segment);
+      List<FooterEntry> entries = segment.readFooter();
+      if (entries == null) {
+        entries = segment.scan();
+      }
+      for (FooterEntry entry : entries) {
+        int recordLength =
+            RECORD_HEADER_BYTES
+                + entry.key().getBytes(StandardCharsets.UTF_8).length
+                + Math.max(entry.length(), 0);
+        if (entry.length() == TOMBSTONE) {
+          tombstone(entry.key(), segment, recordLength);
+        } else {
+          put(entry.key(), new Location(segment, entry.offset(), entry.length(), recordLength));
+        }
+      }
+
+      if (last) {
+        // reopen the newest segment for appending, dropping its footer
+        segment.size = segment.recordsEnd;
+        segment.channel.truncate(segment.size);
+        segment.entries.addAll(entries);
+        segment.sealed = false;
+        active = segment;
+      } else if (!segment.sealed) {
+        segment.entries.addAll(entries);
+        segment.seal();
+      }
+    }
+    if (active == null) {
+      active = createSegment(1);
+    }
+    LOGGER.info(
+        "Opened {} cache entries in {} segments in {} ms",
+        index.size(),
+        segments.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  private Segment createSegment(int id) throws IOException {
+    Segment segment = new Segment(id, segmentPath(id));
+    segments.put(id, segment);
+    return segment;
+  }
+
+  private Path segmentPath(int id) {
+    return dir.resolve(String.format("segment-%08d.log", id));
+  }
+
+  private record FooterEntry(String key, long offset, int length) {}
+
+  private static final class Segment {
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final ReentrantLock mapLock = new ReentrantLock();
+    private final AtomicLong recordBytes = new AtomicLong();
+    private final AtomicLong supersededBytes = new AtomicLong();
+    private final Set<String> tombstones = ConcurrentHashMap.newKeySet();
+
+    /** Entries of the segment being written to, for its footer. */
+    private final List<FooterEntry> entries = new ArrayList<>();
+
+    /** The end of the records, where the footer starts once sealed. */
+    private volatile long size;
+
+    private long recordsEnd;
+    private boolean sealed;
+    private volatile MappedByteBuffer mapped;
+
+    Segment(int id, Path path) throws IOException {
+      this.id = id;
+      this.path = path;
+      this.channel =
+          FileChannel.open(
+              path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    double supersededRatio() {
+      long total = recordBytes.get();
+      return total == 0 ? 0 : (double) supersededBytes.get() / total;
+    }
+
+    /**
+     * A view of {@code length} bytes of the segment, mapping any newly appended records first.
+     * Sealed segments are already mapped in full.
+     */
+    ByteBuffer read(long offset, int length) {
+      MappedByteBuffer buffer = mapped;
+      if (buffer == null || offset + length > buffer.capacity()) {
+        mapLock.lock();
+        try {
+          buffer = mapped;
+          if (buffer == null || offset + length > buffer.capacity()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped = buffer;
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        } finally {
+          mapLock.unlock();
+        }
+      }
+      return buffer.slice((int) offset, length);
+    }
+
+    /** Appends the footer, after which the segment is never written to again. */
+    void seal() throws IOException {
+      int footerLength = FOOTER_TRAILER_BYTES;
+      List<byte[]> keys = new ArrayList<>(entries.size());
+      for (FooterEntry entry : entries) {
+        byte[] key = entry.key().getBytes(StandardCharsets.UTF_8);
+        keys.add(key);
+        footerLength += 4 + key.length + 8 + 4;
+      }
+
+      ByteBuffer footer = ByteBuffer.allocate(footerLength);
+      for (int i = 0; i < entries.size(); i++) {
+        footer
+            .putInt(keys.get(i).length)
+            .put(keys.get(i))
+            .putLong(entries.get(i).offset())
+            .putInt(entries.get(i).length());
+      }
+      footer.putInt(entries.size()).putLong(size).putInt(FOOTER_MAGIC).flip();
+      while (footer.hasRemaining()) {
+        channel.write(footer, size + footer.position());
+      }
+      channel.force(true);
+      entries.clear();
+      mapRecords();
+      sealed = true;
+    }
+
+    /**
+     * Maps every record, so reads never need the channel again. Under the lock so a read mapping
+     * fewer records meanwhile can't replace it.
+     */
+    void mapRecords() throws IOException {
+      mapLock.lock();
+      try {
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      } finally {
+        mapLock.unlock();
+      }
+    }
+
+    /** The entries listed in the footer, or {@code null} when the segment was never sealed. */
+    List<FooterEntry> readFooter() throws IOException {
+      long fileSize = channel.size();
+      if (fileSize < FOOTER_TRAILER_BYTES) {
+        return null;
+      }
+      ByteBuffer trailer = ByteBuffer.allocate(FOOTER_TRAILER_BYTES);
+      channel.read(trailer, fileSize - FOOTER_TRAILER_BYTES);
+      trailer.flip();
+      int count = trailer.getInt();
+      long footerStart = trailer.getLong();
+      if (trailer.getInt() != FOOTER_MAGIC || footerStart < 0 || footerStart > fileSize) {
+        return null;
+      }
+
+      MappedByteBuffer footer =
+          channel.map(
+              FileChannel.MapMode.READ_ONLY,
+              footerStart,
+              fileSize - footerStart - FOOTER_TRAILER_BYTES);
+      List<FooterEntry> entries = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        byte[] key = new byte[footer.getInt()];
+        footer.get(key);
+        entries.add(
+            new FooterEntry(
+                new String(key, StandardCharsets.UTF_8), footer.getLong(), footer.getInt()));
+      }
+      size = footerStart;
+      recordsEnd = footerStart;
+      mapRecords();
+      sealed = true;
+      return entries;
+    }
+
+    /** Reads the records one by one, cutting off a torn record at the end. */
+    List<FooterEntry> scan() throws IOException {
+      long fileSize = channel.size();
+      List<FooterEntry> entries = new ArrayList<>();
+      MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+      long offset = 0;
+      while (offset + RECORD_HEADER_BYTES <= fileSize) {
+        records.position((int) offset);
+        int magic = records.getInt();
+        int keyLength = records.getInt();
+        int valueLength = records.getInt();
+        long end = offset + RECORD_HEADER_BYTES + (long) keyLength + Math.max(valueLength, 0);
+        if (magic != RECORD_MAGIC || keyLength < 0 || valueLength < TOMBSTONE || end > fileSize) {
+          break;
+        }
+        byte[] key = new byte[keyLength];
+        records.get(key);
+        entries.add(
+            new FooterEntry(
+                new String(key, StandardCharsets.UTF_8),
+                offset + RECORD_HEADER_BYTES + keyLength,
+                valueLength));
+        offset = end;
+      }
+      if (offset < fileSize) {
+        LOGGER.warn(
+            "Cutting off {} bytes of a torn record at the end of {}", fileSize - offset, path);
+        channel.truncate(offset);
+      }
+      size = offset;
+      recordsEnd = offset;
+      return entries;
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+/**
+ * Finds the most recent cached payload for a logical request, the request with its latest date
+ * removed, so that e.g. yesterday's prices for a ticker can be served while today's are fetched.
+ * Every other date, like the start of a window, stays part of the logical request, so a payload is
+ * never served for a longer window than it covers.
+ *
+ * <p>A pointer to the newest payload of each logical request is kept in the {@link CacheService}
+ * next to the payloads, so it is shared by every process using the cache directory. Only payloads
+ * for a date on or before the requested one are served, a request for an earlier date must never
+ * see later data.
+ */
+class StalePayloads {
+
+  private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+  private final CacheService cacheService;
+
+  /** What has been served stale and not refreshed since, by logical request. */
+  private final ConcurrentMap<String, Staleness> served = new ConcurrentHashMap<>();
+
+  StalePayloads(CacheService cacheService) {
+    this.cacheService = cacheService;
+  }
+
+  /** A cached payload for the same logical request as the one asked for. */
+  record Stale(String cacheKey, Staleness staleness) {}
+
+  /** Records that {@code cacheUri} has just been fetched and cached under {@code cacheKey}. */
+  void recordFresh(String cacheUri, String cacheKey) {
+    LogicalRequest request = LogicalRequest.of(cacheUri);
+    if (request == null) {
+      return;
+    }
+    Pointer latest = pointer(request.key());
+    if (latest == null || !latest.date().isAfter(request.date())) {
+      cacheService.save(
+          pointerKey(request.key()), request.date() + "\t" + Instant.now() + "\t" + cacheKey);
+    }
+    served.remove(request.key());
+  }
+
+  /**
+   * The newest payload for the logical request of {@code cacheUri}, or {@code null} when that is
+   * the payload under {@code cacheKey}, the one being asked for, unless it has {@code expired}.
+   */
+  Stale find(String cacheUri, String cacheKey, boolean expired) {
+    LogicalRequest request = LogicalRequest.of(cacheUri);
+    if (request == null) {
+      return null;
+    }
+    Pointer latest = pointer(request.key());
+    if (latest == null
+        || (latest.cacheKey().equals(cacheKey) && !expired)
+        || latest.date().isAfter(request.date())
+        || !cacheService.keyExists(latest.cacheKey())) {
+      return null;
+    }
+    return new Stale(
+        latest.cacheKey(), new Staleness(request.date(), latest.date(), latest.fetchedAt()));
+  }
+
+  void markServed(String cacheUri, Stale stale) {
+    LogicalRequest request = LogicalRequest.of(cacheUri);
+    served.put(request.key(), stale.staleness());
+  }
+
+  /**
+   * Everything currently being served stale for {@code ticker}, keyed by endpoint name. Where
+   * several requests to one endpoint are stale the oldest payload is reported.
+   */
+  Map<String, Staleness> staleness(String ticker) {
+    Map<String, Staleness> byEndpoint = new HashMap<>();
+    served.forEach(
+        (key, staleness) -> {
+          UriComponents uri = UriComponentsBuilder.fromUriString(key).build();
+          if (ticker.equals(uri.getQueryParams().getFirst("ticker"))) {
+            byEndpoint.merge(
+                FinancialDatasetsService.endpointOf(uri.getPath()),
+                staleness,
+                (a, b) -> a.servedFrom().isBefore(b.servedFrom()) ? a : b);
+          }
+        });
+    return byEndpoint;
+  }
+
+  private Pointer pointer(String logicalKey) {
+    String pointerKey = pointerKey(logicalKey);
+    if (!cacheService.keyExists(pointerKey)) {
+      return null;
+    }
+    String[] parts = cacheService.get(pointerKey).split("\t", 3);
+    return new Pointer(LocalDate.parse(parts[0]), Instant.parse(parts[1]), parts[2]);
+  }
+
+  private static String pointerKey(String logicalKey) {
+    return "latest " + logicalKey;
+  }
+
+  private record Pointer(LocalDate date, Instant fetchedAt, String cacheKey) {}
+
+  /** A request without its latest date parameter, and that date. */
+  private record LogicalRequest(String key, LocalDate date) {
+
+    /** {@code null} when the request has no date parameters. */
+    static LogicalRequest of(String cacheUri) {
+      UriComponents uri = UriComponentsBuilder.fromUriString(cacheUri).build();
+      String latestParam = null;
+      LocalDate latest = null;
+      for (Map.Entry<String, List<String>> param : uri.getQueryParams().entrySet()) {
+        for (String value : param.getValue()) {
+          LocalDate date = parseDate(value);
+          if (date != null && (latest == null || !date.isBefore(latest))) {
+            latestParam = param.getKey();
+            latest = date;
+          }
+        }
+      }
+      if (latest == null) {
+        return null;
+      }
+
+      MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+      boolean removed = false;
+      for (Map.Entry<String, List<String>> param : uri.getQueryParams().entrySet()) {
+        for (String value : param.getValue()) {
+          if (!removed && param.getKey().equals(latestParam) && latest.equals(parseDate(value))) {
+            removed = true;
+          } else {
+            params.add(param.getKey(), value);
+          }
+        }
+      }
+      String key =
+          UriComponentsBuilder.fromUriString(cacheUri)
+              .replaceQueryParams(params)
+              .build()
+              .toString();
+      return new LogicalRequest(key, latest);
+    }
+
+    private static LocalDate parseDate(String value) {
+      if (value == null || !DATE.matcher(value).matches()) {
+        return null;
+      }
+      try {
+        return LocalDate.parse(value);
+      } catch (DateTimeParseException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Marks data that was served from an older cached response while a fresh one is fetched.
+ *
+ * @param requestedFor the date the data was asked for
+ * @param servedFrom the date of the cached response that was served instead
+ * @param fetchedAt when that cached response was fetched from upstream
+ */
+public record Staleness(LocalDate requestedFor, LocalDate servedFrom, Instant fetchedAt) {}
@@ -0,0 +1,20 @@
+package org.garethjevans.ai.fd;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything fetched for a {@link TickerDataRequest}. Sections that were not requested are empty,
+ * and {@code marketCap} is null unless it was requested. {@code staleness} lists, by endpoint name,
+ * the sections that were served from an older cached response.
+ */
+public record TickerDataBundle(
+    String ticker,
+    List<Metrics> metrics,
+    List<LineItem> lineItems,
+    List<InsiderTrade> insiderTrades,
+    List<CompanyNews> companyNews,
+    List<Price> prices,
+    BigDecimal marketCap,
+    Map<String, Staleness> staleness) {}
@@ -0,0 +1,88 @@
+package org.garethjevans.ai.fd;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Declarative description of the data a single ticker analysis needs. Only the sections that have
+ * been requested are fetched by {@link FinancialDatasets#getTickerData}.
+ */
+public record TickerDataRequest(
+    String ticker,
+    LocalDate endDate,
+    MetricsQuery metrics,
+    LineItemsQuery lineItems,
+    WindowQuery insiderTrades,
+    WindowQuery companyNews,
+    LocalDate pricesStartDate,
+    boolean marketCap) {
+
+  public static Builder builder(String ticker, LocalDate endDate) {
+    return new Builder(ticker, endDate);
+  }
+
+  public record MetricsQuery(Period period, int limit) {}
+
+  public record LineItemsQuery(List<String> items, Period period, int limit) {}
+
+  public record WindowQuery(LocalDate startDate, int limit) {}
+
+  public static class Builder {
+
+    private final String ticker;
+    private final LocalDate endDate;
+    private MetricsQuery metrics;
+    private LineItemsQuery lineItems;
+    private WindowQuery insiderTrades;
+    private WindowQuery companyNews;
+    private LocalDate pricesStartDate;
+    private boolean marketCap;
+
+    private Builder(String ticker, LocalDate endDate) {
+      this.ticker = ticker;
+      this.endDate = endDate;
+    }
+
+    public Builder metrics(Period period, int limit) {
+      this.metrics = new MetricsQuery(period, limit);
+      return this;
+    }
+
+    public Builder lineItems(List<String> items, Period period, int limit) {
+      this.lineItems = new LineItemsQuery(items, period, limit);
+      return this;
+    }
+
+    public Builder insiderTrades(LocalDate startDate, int limit) {
+      this.insiderTrades = new WindowQuery(startDate, limit);
+      return this;
+    }
+
+    public Builder companyNews(LocalDate startDate, int limit) {
+      this.companyNews = new WindowQuery(startDate, limit);
+      return this;
+    }
+
+    public Builder prices(LocalDate startDate) {
+      this.pricesStartDate = startDate;
+      return this;
+    }
+
+    public Builder marketCap() {
+      this.marketCap = true;
+      return this;
+    }
+
+    public TickerDataRequest build() {
+      return new TickerDataRequest(
+          ticker,
+          endDate,
+          metrics,
+          lineItems,
+          insiderTrades,
+          companyNews,
+          pricesStartDate,
+          marketCap);
+    }
+  }
+}
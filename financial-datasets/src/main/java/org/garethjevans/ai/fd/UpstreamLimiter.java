@@ -0,0 +1,227 @@
+package org.garethjevans.ai.fd;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.springframework.web.client.RestClientResponseException;
+
+/**
+ * Throttles requests to the Financial Datasets API.
+ *
+ * <p>Concurrency is adjusted with AIMD: the limit grows by one for every {@code limit} requests
+ * that complete within the latency threshold, and is cut by the backoff ratio whenever a request is
+ * rate limited (HTTP 429) or slower than the threshold. A token bucket additionally caps the rate
+ * at which requests are started with the API key. Requests waiting for a slot are queued per ticker
+ * and served round robin, so a long scan of one ticker does not starve calls for others.
+ */
+public class UpstreamLimiter {
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyThresholdNanos;
+  private final double backoffRatio;
+  private final TokenBucket tokens;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Waiters per ticker, the iteration order is the round robin order. */
+  private final LinkedHashMap<String, ArrayDeque<CompletableFuture<Void>>> waiting =
+      new LinkedHashMap<>();
+
+  private double limit;
+  private int inFlight;
+  private int queueDepth;
+
+  /**
+   * @param permitsPerSecond the sustained request rate, a value of 0 or less disables the token
+   *     bucket
+   * @param burst the number of requests that may be started back to back after a quiet period
+   */
+  public UpstreamLimiter(
+      int initialLimit,
+      int minLimit,
+      int maxLimit,
+      Duration latencyThreshold,
+      double backoffRatio,
+      double permitsPerSecond,
+      int burst) {
+    this.minLimit = Math.max(1, minLimit);
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.limit = Math.clamp(initialLimit, this.minLimit, this.maxLimit);
+    this.latencyThresholdNanos = latencyThreshold.toNanos();
+    this.backoffRatio = backoffRatio;
+    this.tokens = permitsPerSecond > 0 ? new TokenBucket(permitsPerSecond, burst) : null;
+  }
+
+  /**
+   * Runs {@code request} once a slot is free and a token is available, queueing under {@code key}.
+   */
+  public <T> T execute(String key, Supplier<T> request) {
+    acquire(key);
+    long latency = -1;
+    boolean throttled = false;
+    try {
+      if (tokens != null) {
+        tokens.take();
+      }
+      long start = System.nanoTime();
+      try {
+        return request.get();
+      } catch (RestClientResponseException e) {
+        throttled = e.getStatusCode().value() == 429;
+        throw e;
+      } finally {
+        latency = System.nanoTime() - start;
+      }
+    } finally {
+      release(latency, throttled);
+    }
+  }
+
+  public int limit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int inFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int queueDepth() {
+    lock.lock();
+    try {
+      return queueDepth;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("financial.datasets.limiter.limit", this, UpstreamLimiter::limit)
+        .description("Current number of concurrent requests allowed upstream")
+        .register(registry);
+    Gauge.builder("financial.datasets.limiter.in-flight", this, UpstreamLimiter::inFlight)
+        .register(registry);
+    Gauge.builder("financial.datasets.limiter.queue-depth", this, UpstreamLimiter::queueDepth)
+        .description("Requests waiting for a concurrency slot")
+        .register(registry);
+  }
+
+  private void acquire(String key) {
+    CompletableFuture<Void> granted = new CompletableFuture<>();
+    lock.lock();
+    try {
+      // only take a slot directly when nobody is queued, otherwise waiters would be overtaken
+      if (waiting.isEmpty() && inFlight < (int) limit) {
+        inFlight++;
+        return;
+      }
+      waiting.computeIfAbsent(key, k -> new ArrayDeque<>()).add(granted);
+      queueDepth++;
+    } finally {
+      lock.unlock();
+    }
+
+    try {
+      granted.get();
+    } catch (InterruptedException e) {
+      // if the slot was granted in the meantime hand it back, otherwise dispatch skips this waiter
+      if (!granted.cancel(false)) {
+        release(-1, false);
+      }
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void release(long latencyNanos, boolean throttled) {
+    lock.lock();
+    try {
+      inFlight--;
+      if (throttled || latencyNanos > latencyThresholdNanos) {
+        limit = Math.max(minLimit, limit * backoffRatio);
+      } else if (latencyNanos >= 0 && inFlight + 1 >= limit / 2) {
+        // only grow while the limit is actually being used, so an idle client doesn't drift to max
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+      dispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Hands free slots to the head of each ticker's queue in turn. Called with the lock held. */
+  private void dispatch() {
+    while (inFlight < (int) limit && !waiting.isEmpty()) {
+      Iterator<Map.Entry<String, ArrayDeque<CompletableFuture<Void>>>> it =
+          waiting.entrySet().iterator();
+      Map.Entry<String, ArrayDeque<CompletableFuture<Void>>> next = it.next();
+      it.remove();
+
+      CompletableFuture<Void> waiter = next.getValue().poll();
+      queueDepth--;
+      if (!next.getValue().isEmpty()) {
+        // re-inserting moves the ticker to the back of the round robin
+        waiting.put(next.getKey(), next.getValue());
+      }
+      if (waiter.complete(null)) {
+        inFlight++;
+      }
+    }
+  }
+
+  /** Reserves tokens ahead of time, so waiting callers are served in the order they arrived. */
+  private static final class TokenBucket {
+
+    private final double permitsPerNano;
+    private final double burst;
+    private double available;
+    private long refilledAt = System.nanoTime();
+
+    TokenBucket(double permitsPerSecond, int burst) {
+      this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+      this.burst = Math.max(1, burst);
+      this.available = this.burst;
+    }
+
+    void take() {
+      long waitNanos = reserve();
+      if (waitNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+      }
+    }
+
+    private synchronized long reserve() {
+      long now = System.nanoTime();
+      available = Math.min(burst, available + (now - refilledAt) * permitsPerNano);
+      refilledAt = now;
+      available -= 1;
+      return available >= 0 ? 0 : (long) (-available / permitsPerNano);
+    }
+  }
+}
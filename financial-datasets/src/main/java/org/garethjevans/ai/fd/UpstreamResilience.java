@@ -0,0 +1,334 @@
+package org.garethjevans.ai.fd;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+/**
+ * Bounds how long an upstream call may take and acts on slow or failed calls.
+ *
+ * <p>Every attempt runs on its own virtual thread and is abandoned (interrupted, which closes a
+ * stalled connection) once the endpoint's timeout passes. Idempotent requests that time out, fail
+ * with an I/O error, a 5xx or a 429 are retried with exponential backoff and full jitter. When
+ * hedging is enabled an idempotent request that is still running once the endpoint's observed p95
+ * latency has passed gets a duplicate, and whichever response arrives first is used.
+ *
+ * <p>A circuit breaker per endpoint stops calls to it altogether after {@code failureThreshold}
+ * consecutive requests have failed, so callers fail fast rather than each waiting out the timeouts,
+ * while other endpoints are still called. Once {@code openDuration} has passed a single trial
+ * request is let through, and its outcome closes or re-opens the circuit. Only the outcomes of
+ * requests let through since the circuit last changed state count, a slow request sent before it
+ * opened can't close it again.
+ */
+public class UpstreamResilience {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(UpstreamResilience.class);
+
+  /** The number of recent latencies per endpoint the p95 is computed over. */
+  private static final int LATENCY_SAMPLES = 100;
+
+  private final Duration defaultTimeout;
+  private final Map<String, Duration> timeouts;
+  private final int maxAttempts;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final boolean hedging;
+  private final int hedgingMinSamples;
+  private final ConcurrentMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+  private final int failureThreshold;
+  private final long openNanos;
+  private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+  private enum CircuitState {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  /**
+   * @param timeouts per endpoint overrides of {@code defaultTimeout}, keyed by the endpoint name,
+   *     e.g. {@code prices} or {@code company-facts}
+   * @param hedgingMinSamples the number of successful calls to an endpoint before its p95 is
+   *     trusted for hedging
+   * @param failureThreshold consecutive failed requests that open the circuit, 0 or less disables
+   *     the circuit breaker
+   */
+  public UpstreamResilience(
+      Duration defaultTimeout,
+      Map<String, Duration> timeouts,
+      int maxAttempts,
+      Duration initialBackoff,
+      Duration maxBackoff,
+      boolean hedging,
+      int hedgingMinSamples,
+      int failureThreshold,
+      Duration openDuration) {
+    this.defaultTimeout = defaultTimeout;
+    this.timeouts = Map.copyOf(timeouts);
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.initialBackoffMillis = initialBackoff.toMillis();
+    this.maxBackoffMillis = maxBackoff.toMillis();
+    this.hedging = hedging;
+    this.hedgingMinSamples = Math.max(1, hedgingMinSamples);
+    this.failureThreshold = failureThreshold;
+    this.openNanos = openDuration.toNanos();
+  }
+
+  /**
+   * @param idempotent whether {@code request} may be retried and hedged, only the first attempt of
+   *     a non idempotent request is sent
+   */
+  public <T> T execute(String endpoint, boolean idempotent, Supplier<T> request) {
+    Circuit circuit = circuits.computeIfAbsent(endpoint, e -> new Circuit());
+    long admittedIn = circuit.beforeCall(endpoint);
+    boolean healthy = false;
+    try {
+      T t = retrying(endpoint, idempotent, request);
+      healthy = true;
+      return t;
+    } catch (RuntimeException e) {
+      // a 4xx is still an answer, only outages count against the circuit
+      healthy = !isRetryable(e);
+      throw e;
+    } finally {
+      circuit.afterCall(endpoint, admittedIn, healthy);
+    }
+  }
+
+  private <T> T retrying(String endpoint, boolean idempotent, Supplier<T> request) {
+    int attempts = idempotent ? maxAttempts : 1;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return attempt(endpoint, idempotent && hedging, request);
+      } catch (RuntimeException e) {
+        if (attempt >= attempts || !isRetryable(e)) {
+          throw e;
+        }
+        long backoff = backoffMillis(attempt);
+        LOGGER.debug(
+            "Retrying {} in {} ms after attempt {} failed: {}", endpoint, backoff, attempt, e);
+        sleep(backoff);
+      }
+    }
+  }
+
+  public boolean isCircuitOpen(String endpoint) {
+    Circuit circuit = circuits.get(endpoint);
+    return circuit != null && circuit.isOpen();
+  }
+
+  /** The p95 latency observed for {@code endpoint}, or {@code null} with too few samples. */
+  Duration p95(String endpoint) {
+    LatencyWindow window = latencies.get(endpoint);
+    if (window == null || window.size() < hedgingMinSamples) {
+      return null;
+    }
+    return Duration.ofNanos(window.p95());
+  }
+
+  void recordLatency(String endpoint, long nanos) {
+    latencies.computeIfAbsent(endpoint, e -> new LatencyWindow()).add(nanos);
+  }
+
+  private <T> T attempt(String endpoint, boolean hedge, Supplier<T> request) {
+    long timeoutNanos = timeouts.getOrDefault(endpoint, defaultTimeout).toNanos();
+    long deadline = System.nanoTime() + timeoutNanos;
+
+    Race<T> race = new Race<>(endpoint);
+    race.launch(request);
+    try {
+      Duration hedgeAfter = hedge ? p95(endpoint) : null;
+      if (hedgeAfter != null && hedgeAfter.toNanos() < timeoutNanos) {
+        try {
+          return race.winner.get(hedgeAfter.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          LOGGER.debug("Hedging {} after {} ms", endpoint, hedgeAfter.toMillis());
+          race.launch(request);
+        }
+      }
+      return race.winner.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      throw new ResourceAccessException(
+          "No response from "
+              + endpoint
+              + " within "
+              + Duration.ofNanos(timeoutNanos).toMillis()
+              + " ms");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new RuntimeException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } finally {
+      race.cancel();
+    }
+  }
+
+  private static boolean isRetryable(RuntimeException e) {
+    return e instanceof ResourceAccessException
+        || e instanceof HttpServerErrorException
+        || (e instanceof RestClientResponseException response
+            && response.getStatusCode().value() == 429);
+  }
+
+  /** Full jitter: a random delay up to the capped exponential backoff for this attempt. */
+  private long backoffMillis(int attempt) {
+    long exponential = initialBackoffMillis << Math.min(attempt - 1, 20);
+    return ThreadLocalRandom.current().nextLong(Math.min(maxBackoffMillis, exponential) + 1);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Concurrent copies of one request, the first to succeed wins and the others are abandoned. */
+  private final class Race<T> {
+
+    private final String endpoint;
+    private final CompletableFuture<T> winner = new CompletableFuture<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final List<Thread> threads = new ArrayList<>();
+
+    Race(String endpoint) {
+      this.endpoint = endpoint;
+    }
+
+    void launch(Supplier<T> request) {
+      pending.incrementAndGet();
+      threads.add(
+          Thread.ofVirtual()
+              .start(
+                  () -> {
+                    long start = System.nanoTime();
+                    try {
+                      T t = request.get();
+                      if (winner.complete(t)) {
+                        recordLatency(endpoint, System.nanoTime() - start);
+                      }
+                    } catch (Throwable e) {
+                      // only fail once every copy has failed, a hedge may still succeed
+                      if (pending.decrementAndGet() == 0) {
+                        winner.completeExceptionally(e);
+                      }
+                    }
+                  }));
+    }
+
+    void cancel() {
+      threads.forEach(Thread::interrupt);
+    }
+  }
+
+  /** The circuit breaker of one endpoint. */
+  private final class Circuit {
+
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+
+    /** Counts state transitions, so outcomes of requests let through before one are ignored. */
+    private long generation;
+
+    synchronized boolean isOpen() {
+      return state != CircuitState.CLOSED;
+    }
+
+    /** Lets a request through, or fails fast, returning the generation it was let through in. */
+    synchronized long beforeCall(String endpoint) {
+      if (state == CircuitState.OPEN) {
+        long remaining = openUntil - System.nanoTime();
+        if (remaining > 0) {
+          throw new ResourceAccessException(
+              "Circuit open, not calling "
+                  + endpoint
+                  + " for another "
+                  + TimeUnit.NANOSECONDS.toMillis(remaining)
+                  + " ms");
+        }
+        // this caller is the trial request
+        transition(CircuitState.HALF_OPEN);
+      } else if (state == CircuitState.HALF_OPEN) {
+        throw new ResourceAccessException(
+            "Circuit half open, waiting on a trial request before calling " + endpoint);
+      }
+      return generation;
+    }
+
+    synchronized void afterCall(String endpoint, long admittedIn, boolean success) {
+      if (admittedIn != generation) {
+        return;
+      }
+      if (success) {
+        consecutiveFailures = 0;
+        if (state != CircuitState.CLOSED) {
+          transition(CircuitState.CLOSED);
+        }
+        return;
+      }
+      consecutiveFailures++;
+      if (failureThreshold > 0
+          && (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold)) {
+        LOGGER.warn(
+            "Opening circuit for {} for {} ms after {} consecutive failures",
+            endpoint,
+            TimeUnit.NANOSECONDS.toMillis(openNanos),
+            consecutiveFailures);
+        transition(CircuitState.OPEN);
+        openUntil = System.nanoTime() + openNanos;
+      }
+    }
+
+    private void transition(CircuitState to) {
+      state = to;
+      generation++;
+    }
+  }
+
+  private static final class LatencyWindow {
+
+    private final long[] samples = new long[LATENCY_SAMPLES];
+    private int next;
+    private int size;
+
+    synchronized void add(long nanos) {
+      samples[next] = nanos;
+      next = (next + 1) % samples.length;
+      size = Math.min(size + 1, samples.length);
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized long p95() {
+      long[] sorted = Arrays.copyOf(samples, size());
+      Arrays.sort(sorted);
+      return sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package org.garethjevans.ai.fd;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Saves entries on a background writer rather than on the thread that fetched them, so a miss
+ * returns as soon as the response is decoded. Entries waiting to be written are read from memory,
+ * and are written in batches with one {@link CacheService#sync} per batch rather than one per
+ * entry.
+ *
+ * <p>The queue is bounded, a save waits for room when the writer falls behind rather than holding
+ * an unbounded amount of responses in memory. {@link #close} writes every entry still waiting.
+ *
+ * <p>Other processes sharing the cache only see an entry once it is written, so while it waits they
+ * fetch it again. Write-behind suits a cache owned by one process, like the data gateway's.
+ */
+public class WriteBehindCacheService implements CacheService, AutoCloseable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindCacheService.class);
+
+  /** How often the writer checks whether it's been closed, and {@link #flush} whether it's done. */
+  private static final Duration POLL_INTERVAL = Duration.ofMillis(10);
+
+  private final CacheService delegate;
+  private final int maxBatch;
+
+  /** The latest entry saved under each key that is yet to be written. */
+  private final Map<String, byte[]> pending = new ConcurrentHashMap<>();
+
+  /** Keys of pending entries, in the order they were first saved. */
+  private final BlockingQueue<String> queue;
+
+  private final Thread writer;
+  private volatile boolean closed;
+
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong syncs = new AtomicLong();
+  private final AtomicLong stalls = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+
+  /**
+   * @param queueCapacity how many entries may wait to be written before a save waits for room
+   * @param maxBatch the most entries written per sync
+   */
+  public WriteBehindCacheService(CacheService delegate, int queueCapacity, int maxBatch) {
+    this.delegate = delegate;
+    this.maxBatch = maxBatch;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.writer = Thread.ofPlatform().name("cache-write-behind").daemon().start(this::write);
+  }
+
+  @Override
+  public boolean keyExists(String cacheKey) {
+    return pending.containsKey(cacheKey) || delegate.keyExists(cacheKey);
+  }
+
+  /** Entries are only removed from memory once written, so a read never misses in between. */
+  @Override
+  public byte[] getBytes(String cacheKey) {
+    byte[] entry = pending.get(cacheKey);
+    return entry != null ? entry : delegate.getBytes(cacheKey);
+  }
+
+  @Override
+  public void saveBytes(String cacheKey, byte[] entry) {
+    if (closed) {
+      delegate.saveBytes(cacheKey, entry);
+      return;
+    }
+    // a key already waiting is written with the latest entry, so isn't queued twice
+    if (pending.put(cacheKey, entry) != null || queue.offer(cacheKey)) {
+      return;
+    }
+    stalls.incrementAndGet();
+    LOGGER.debug("Waiting for room to queue {}, {} entries are waiting", cacheKey, queue.size());
+    try {
+      queue.put(cacheKey);
+    } catch (InterruptedException e) {
+      pending.remove(cacheKey, entry);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public void delete(String cacheKey) {
+    pending.remove(cacheKey);
+    delegate.delete(cacheKey);
+  }
+
+  @Override
+  public void sync(Collection<String> cacheKeys) {
+    flush();
+  }
+
+  @Override
+  public <T> T locked(String cacheKey, Supplier<T> action) {
+    return delegate.locked(cacheKey, action);
+  }
+
+  /** Waits until every entry saved so far has been written. */
+  public void flush() {
+    while (!pending.isEmpty() && writer.isAlive()) {
+      try {
+        Thread.sleep(POLL_INTERVAL);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("financial.datasets.cache.write-behind.queued", pending, Map::size)
+        .description("Entries waiting to be written")
+        .register(registry);
+    Gauge.builder(
+            "financial.datasets.cache.write-behind.pending",
+            pending,
+            p -> p.values().stream().mapToLong(entry -> entry.length).sum())
+        .description("Bytes waiting to be written")
+        .baseUnit("bytes")
+        .register(registry);
+    FunctionCounter.builder(
+            "financial.datasets.cache.write-behind.written", written, AtomicLong::get)
+        .register(registry);
+    FunctionCounter.builder("financial.datasets.cache.write-behind.syncs", syncs, AtomicLong::get)
+        .register(registry);
+    FunctionCounter.builder("financial.datasets.cache.write-behind.stalls", stalls, AtomicLong::get)
+        .description("Saves that waited for room in the queue")
+        .register(registry);
+    FunctionCounter.builder(
+            "financial.datasets.cache.write-behind.failures", failures, AtomicLong::get)
+        .register(registry);
+  }
+
+  /** Writes the entries still waiting, then closes the store they are written to. */
+  @Override
+  public void close() throws Exception {
+    closed = true;
+    writer.join();
+    // saved as the writer stopped
+    if (!pending.isEmpty()) {
+      writeBatch(new ArrayList<>(pending.keySet()));
+    }
+    if (delegate instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  private void write() {
+    List<String> batch = new ArrayList<>(maxBatch);
+    while (true) {
+      try {
+        if (batch.isEmpty()) {
+          String cacheKey = queue.poll(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+          if (cacheKey == null) {
+            if (closed) {
+              return;
+            }
+            continue;
+          }
+          batch.add(cacheKey);
+        }
+        queue.drainTo(batch, maxBatch - batch.size());
+        List<String> again = writeBatch(batch);
+        batch.clear();
+        batch.addAll(again);
+      } catch (InterruptedException e) {
+        LOGGER.warn("Stopped writing the cache with {} entries waiting", pending.size());
+        return;
+      } catch (RuntimeException e) {
+        // dropped rather than left waiting for ever, the next miss fetches them again
+        failures.incrementAndGet();
+        LOGGER.warn("Unable to write {} cache entries", batch.size(), e);
+        batch.forEach(pending::remove);
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Writes the latest entry of each key and syncs them together.
+   *
+   * @return keys saved again while they were being written, to be written once more
+   */
+  private List<String> writeBatch(List<String> batch) {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    for (String cacheKey : batch) {
+      byte[] entry = pending.get(cacheKey);
+      if (entry == null) {
+        continue;
+      }
+      try {
+        delegate.saveBytes(cacheKey, entry);
+        entries.put(cacheKey, entry);
+      } catch (RuntimeException e) {
+        // dropped rather than retried, the next miss fetches it again
+        failures.incrementAndGet();
+        LOGGER.warn("Unable to write {}", cacheKey, e);
+        pending.remove(cacheKey, entry);
+      }
+    }
+    if (entries.isEmpty()) {
+      return List.of();
+    }
+
+    try {
+      delegate.sync(entries.keySet());
+      syncs.incrementAndGet();
+    } catch (RuntimeException e) {
+      failures.incrementAndGet();
+      LOGGER.warn("Unable to sync {} cache entries", entries.size(), e);
+    }
+
+    List<String> again = new ArrayList<>();
+    entries.forEach(
+        (cacheKey, entry) -> {
+          written.incrementAndGet();
+          if (pending.remove(cacheKey, entry)) {
+            return;
+          }
+          if (pending.containsKey(cacheKey)) {
+            again.add(cacheKey);
+          } else {
+            // deleted while it was being written
+            delegate.delete(cacheKey);
+          }
+        });
+    return again;
+  }
+}
@@ -0,0 +1,154 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class BoundedCacheServiceTests {
+
+  @TempDir private File cacheDir;
+
+  private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+  private final TestClock clock = new TestClock();
+
+  private BoundedCacheService bounded(long maxBytes) {
+    return bounded(maxBytes, Map.of("prices", Duration.ofHours(1)), null);
+  }
+
+  private BoundedCacheService bounded(
+      long maxBytes, Map<String, Duration> ttls, FreshnessPolicy freshness) {
+    return new BoundedCacheService(
+        new FileCacheService(cacheDir),
+        mapper,
+        maxBytes,
+        Duration.ofDays(30),
+        ttls,
+        freshness,
+        List.of("pinned "),
+        Duration.ZERO,
+        clock);
+  }
+
+  @Test
+  void expiredEntriesAreNoLongerFoundAndCompactionDeletesThem() {
+    BoundedCacheService cache = bounded(1_000_000);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    cache.bindTo(registry);
+    cache.save("/prices/?ticker=AAPL", "[1]");
+    cache.save("/company/facts/?ticker=AAPL", "{}");
+    cache.save("pinned key", "kept");
+
+    clock.advance(Duration.ofHours(2));
+
+    assertThat(cache.keyExists("/prices/?ticker=AAPL")).isFalse();
+    assertThat(cache.keyExists("/company/facts/?ticker=AAPL")).isTrue();
+
+    clock.advance(Duration.ofDays(60));
+    cache.compact();
+
+    assertThat(new FileCacheService(cacheDir).keyExists("/prices/?ticker=AAPL")).isFalse();
+    assertThat(new FileCacheService(cacheDir).keyExists("/company/facts/?ticker=AAPL")).isFalse();
+    assertThat(cache.get("pinned key")).isEqualTo("kept");
+    assertThat(cache.totalBytes()).isZero();
+    assertThat(
+            registry
+                .get("financial.datasets.cache.evictions")
+                .tag("reason", "expired")
+                .functionCounter()
+                .count())
+        .isEqualTo(2);
+    assertThat(registry.get("financial.datasets.cache.reclaimed").functionCounter().count())
+        .isEqualTo(5);
+  }
+
+  @Test
+  void theLeastRecentlyReadEntriesAreEvictedAboveTheBound() {
+    BoundedCacheService cache = bounded(300);
+    for (int i = 1; i <= 4; i++) {
+      cache.save("/company/facts/?ticker=" + i, "x".repeat(100));
+      clock.advance(Duration.ofMinutes(1));
+    }
+    cache.get("/company/facts/?ticker=1");
+
+    cache.compact();
+
+    assertThat(cache.keyExists("/company/facts/?ticker=1")).isTrue();
+    assertThat(cache.keyExists("/company/facts/?ticker=2")).isFalse();
+    assertThat(cache.keyExists("/company/facts/?ticker=3")).isFalse();
+    assertThat(cache.keyExists("/company/facts/?ticker=4")).isTrue();
+    assertThat(cache.totalBytes()).isEqualTo(200);
+  }
+
+  @Test
+  void theIndexSurvivesARestartAndAdoptsEntriesItHasNotSeen() throws Exception {
+    new FileCacheService(cacheDir).save("/company/facts/?ticker=OLD", "x".repeat(50));
+    BoundedCacheService cache = bounded(1_000_000);
+    cache.save("/prices/?ticker=AAPL", "x".repeat(100));
+    cache.close();
+
+    BoundedCacheService restarted = bounded(1_000_000);
+    assertThat(restarted.totalBytes()).isEqualTo(100);
+    restarted.get("/company/facts/?ticker=OLD");
+    assertThat(restarted.totalBytes()).isEqualTo(150);
+
+    clock.advance(Duration.ofHours(2));
+    assertThat(restarted.keyExists("/prices/?ticker=AAPL")).isFalse();
+  }
+
+  @Test
+  void adoptedEntriesCountTowardsTheBoundButNeverExpire() {
+    new FileCacheService(cacheDir).save("/company/facts/?ticker=OLD", "x".repeat(50));
+    BoundedCacheService cache = bounded(1_000_000);
+    cache.get("/company/facts/?ticker=OLD");
+
+    clock.advance(Duration.ofDays(60));
+    cache.compact();
+
+    assertThat(cache.keyExists("/company/facts/?ticker=OLD")).isTrue();
+    assertThat(cache.totalBytes()).isEqualTo(50);
+  }
+
+  @Test
+  void processesSharingACacheKeepEachOthersEntriesInTheIndex() throws Exception {
+    BoundedCacheService first = bounded(1_000_000);
+    BoundedCacheService second = bounded(1_000_000);
+    first.save("/company/facts/?ticker=AAPL", "x".repeat(100));
+    second.save("/company/facts/?ticker=MSFT", "x".repeat(50));
+    second.save("/company/facts/?ticker=GOOGL", "x".repeat(10));
+
+    first.compact();
+    second.delete("/company/facts/?ticker=GOOGL");
+    second.compact();
+    first.close();
+
+    assertThat(bounded(1_000_000).index())
+        .containsOnlyKeys("/company/facts/?ticker=AAPL", "/company/facts/?ticker=MSFT");
+    assertThat(bounded(1_000_000).totalBytes()).isEqualTo(150);
+  }
+
+  @Test
+  void liveResponsesExpireWithTheirFreshnessWindow() {
+    FreshnessPolicy freshness =
+        new FreshnessPolicy(Map.of("prices", Duration.ofMinutes(15)), Duration.ofHours(1), clock);
+    BoundedCacheService cache = bounded(1_000_000, Map.of(), freshness);
+    cache.save("/prices/?ticker=AAPL&start_date=live-7d&end_date=live", "[1]");
+    cache.save("/prices/?ticker=AAPL&start_date=2025-01-01&end_date=2025-01-31", "[2]");
+    cache.save("price-store AAPL", "{}");
+
+    clock.advance(Duration.ofMinutes(20));
+
+    assertThat(cache.keyExists("/prices/?ticker=AAPL&start_date=live-7d&end_date=live")).isFalse();
+    assertThat(cache.keyExists("/prices/?ticker=AAPL&start_date=2025-01-01&end_date=2025-01-31"))
+        .isTrue();
+    assertThat(cache.keyExists("price-store AAPL")).isTrue();
+  }
+}
@@ -0,0 +1,98 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CacheBundleTests {
+
+  private static final String NEWS = "{\"news\":[" + "{\"title\":\"Earnings\"},".repeat(200) + "]}";
+
+  @TempDir private Path dir;
+
+  private Path cacheDir;
+  private Path bundle;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    cacheDir = Files.createDirectories(dir.resolve("cache"));
+    bundle = dir.resolve("cache.bundle");
+
+    FileCacheService flat = new FileCacheService(cacheDir.toFile(), Duration.ofMinutes(1), false);
+    flat.save("/company/facts/?ticker=AAPL", "{\"v\":1}");
+    flat.save("/news/?ticker=AAPL", "superseded");
+    FileCacheService sharded = new FileCacheService(cacheDir.toFile());
+    sharded.locked("/news/?ticker=AAPL", () -> null);
+    // saving in the sharded layout removes the flat file, so restore it to check it loses
+    Files.copy(
+        cacheDir.resolve(FileCacheService.hash("/news/?ticker=AAPL")), dir.resolve("flat-news"));
+    sharded.save("/news/?ticker=AAPL", NEWS);
+    Files.copy(
+        dir.resolve("flat-news"), cacheDir.resolve(FileCacheService.hash("/news/?ticker=AAPL")));
+  }
+
+  @Test
+  void packedEntriesAreReadInPlace() throws Exception {
+    assertThat(CacheBundle.pack(cacheDir, bundle, Deflater.BEST_COMPRESSION)).isEqualTo(2);
+    assertThat(Files.size(bundle)).isLessThan(NEWS.length() / 4);
+
+    try (BundledCacheService cache = new BundledCacheService(CacheBundle.open(bundle), null)) {
+      assertThat(cache.get("/company/facts/?ticker=AAPL")).isEqualTo("{\"v\":1}");
+      assertThat(cache.get("/news/?ticker=AAPL")).isEqualTo(NEWS);
+      assertThat(cache.keyExists("/prices/?ticker=AAPL")).isFalse();
+
+      cache.save("/prices/?ticker=AAPL", "[]");
+      cache.delete("/company/facts/?ticker=AAPL");
+
+      assertThat(cache.keyExists("/prices/?ticker=AAPL")).isFalse();
+      assertThat(cache.keyExists("/company/facts/?ticker=AAPL")).isFalse();
+      assertThatThrownBy(() -> cache.get("/company/facts/?ticker=AAPL"))
+          .isInstanceOf(RuntimeException.class);
+    }
+  }
+
+  @Test
+  void theOverlayKeepsEntriesSavedOnTopOfTheBundle() throws Exception {
+    CacheBundle.pack(cacheDir, bundle, Deflater.BEST_COMPRESSION);
+    FileCacheService overlay =
+        new FileCacheService(Files.createDirectories(dir.resolve("overlay")).toFile());
+
+    try (BundledCacheService cache = new BundledCacheService(CacheBundle.open(bundle), overlay)) {
+      cache.save("/company/facts/?ticker=AAPL", "{\"v\":2}");
+      cache.save("/prices/?ticker=AAPL", "[]");
+
+      assertThat(cache.get("/company/facts/?ticker=AAPL")).isEqualTo("{\"v\":2}");
+      assertThat(cache.get("/prices/?ticker=AAPL")).isEqualTo("[]");
+      assertThat(cache.get("/news/?ticker=AAPL")).isEqualTo(NEWS);
+      assertThat(overlay.keyExists("/news/?ticker=AAPL")).isFalse();
+    }
+  }
+
+  @Test
+  void unpackingRestoresAShardedCacheDirectory() throws IOException {
+    CacheBundle.pack(cacheDir, bundle, Deflater.BEST_COMPRESSION);
+    Path unpacked = dir.resolve("unpacked");
+
+    assertThat(CacheBundle.unpack(bundle, unpacked)).isEqualTo(2);
+
+    FileCacheService files = new FileCacheService(unpacked.toFile());
+    assertThat(files.get("/company/facts/?ticker=AAPL")).isEqualTo("{\"v\":1}");
+    assertThat(files.get("/news/?ticker=AAPL")).isEqualTo(NEWS);
+    assertThat(unpacked.resolve(FileCacheService.hash("/news/?ticker=AAPL"))).doesNotExist();
+  }
+
+  @Test
+  void filesThatAreNotBundlesAreRejected() throws IOException {
+    Files.writeString(bundle, "not a bundle, but long enough for a header");
+
+    assertThatThrownBy(() -> CacheBundle.open(bundle)).hasMessageContaining("not a cache bundle");
+  }
+}
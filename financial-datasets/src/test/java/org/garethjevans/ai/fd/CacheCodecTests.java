@@ -0,0 +1,78 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class CacheCodecTests {
+
+  private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+  private final CacheCodec codec =
+      new CacheCodec(
+          mapper,
+          CacheCodec.Format.SMILE,
+          Map.of("prices", CacheCodec.Format.CBOR, "news", CacheCodec.Format.JSON));
+
+  private static final Price BAR =
+      new Price(
+          new BigDecimal("417.81"),
+          new BigDecimal("424.01"),
+          new BigDecimal("424.08"),
+          new BigDecimal("416.3"),
+          new BigDecimal("16988038"),
+          "2024-06-05T04:00:00Z",
+          null);
+
+  @Test
+  void everyFormatRoundTrips() throws IOException {
+    for (String endpoint : new String[] {"financial-metrics", "prices", "news"}) {
+      byte[] entry = codec.encode(endpoint, BAR);
+
+      assertThat(codec.decode(entry, Price.class)).isEqualTo(BAR);
+    }
+    assertThat(codec.formatOf("financial-metrics")).isEqualTo(CacheCodec.Format.SMILE);
+    assertThat(codec.formatOf("prices")).isEqualTo(CacheCodec.Format.CBOR);
+  }
+
+  @Test
+  void upstreamBodiesAreTranscodedWithoutLosingFieldsOrPrecision() throws IOException {
+    byte[] body =
+        """
+        {"open":0.12345678901234567890123,"close":1,"high":1,"low":1,"volume":10,\
+        "time":"2024-06-05T04:00:00Z","unmodelled":{"field":[1,2]}}"""
+            .getBytes(StandardCharsets.UTF_8);
+
+    byte[] entry = codec.transcode("financial-metrics", body);
+
+    assertThat(codec.decode(entry, Price.class).open())
+        .isEqualTo(new BigDecimal("0.12345678901234567890123"));
+    assertThat(codec.decode(entry, JsonNode.class).has("unmodelled")).isTrue();
+    assertThat(codec.transcode("news", body)).isSameAs(body);
+  }
+
+  @Test
+  void entriesWithoutAHeaderAreReadAsJson() throws IOException {
+    byte[] legacy = mapper.writeValueAsString(BAR).getBytes(StandardCharsets.UTF_8);
+
+    assertThat(codec.decode(legacy, Price.class)).isEqualTo(BAR);
+  }
+
+  @Test
+  void entriesOfAnUnknownVersionAreRejected() throws IOException {
+    byte[] entry = codec.encode("financial-metrics", BAR);
+    entry[2] = 99;
+
+    assertThatThrownBy(() -> codec.decode(entry, Price.class))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("version 99");
+  }
+}
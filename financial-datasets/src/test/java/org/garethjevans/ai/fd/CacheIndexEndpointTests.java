@@ -0,0 +1,66 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class CacheIndexEndpointTests {
+
+  @TempDir private File cacheDir;
+
+  private final TestClock clock = new TestClock();
+
+  @Test
+  void reportsEntriesByEndpointAndTheTopEntries() {
+    BoundedCacheService cache =
+        new BoundedCacheService(
+            new FileCacheService(cacheDir),
+            Jackson2ObjectMapperBuilder.json().build(),
+            1_000_000,
+            Duration.ofDays(30),
+            Map.of(),
+            null,
+            List.of(),
+            Duration.ZERO,
+            clock);
+    CacheIndexEndpoint endpoint = new CacheIndexEndpoint(cache, clock);
+
+    cache.save("/prices/?ticker=AAPL&start_date=2025-01-01#2025-06-30T00:00:00Z", "x".repeat(100));
+    clock.advance(Duration.ofHours(1));
+    cache.save("/prices/?ticker=MSFT&start_date=2025-01-01", "x".repeat(10));
+    cache.save(
+        "/financials/search/line-items-{\"tickers\":[\"NVDA\"],\"line_items\":[\"net_income\"]}",
+        "x".repeat(50));
+    clock.advance(Duration.ofHours(1));
+    cache.get("/prices/?ticker=MSFT&start_date=2025-01-01");
+    cache.get("/prices/?ticker=MSFT&start_date=2025-01-01");
+
+    Map<String, CacheIndexEndpoint.EndpointSummary> endpoints = endpoint.endpoints();
+    assertThat(endpoints).containsOnlyKeys("prices", "financials-search-line-items");
+    assertThat(endpoints.get("prices"))
+        .isEqualTo(
+            new CacheIndexEndpoint.EndpointSummary(
+                2, 110, 2, Duration.ofHours(2), Duration.ofMinutes(90)));
+
+    assertThat(endpoint.entries("size", 1, null))
+        .singleElement()
+        .satisfies(
+            e -> {
+              assertThat(e.ticker()).isEqualTo("AAPL");
+              assertThat(e.size()).isEqualTo(100);
+            });
+    assertThat(endpoint.entries("hits", null, null).get(0).ticker()).isEqualTo("MSFT");
+    assertThat(endpoint.entries("age", null, "prices"))
+        .extracting(CacheIndexEndpoint.Entry::ticker)
+        .containsExactly("AAPL", "MSFT");
+    assertThat(endpoint.entries("idle", null, "financials-search-line-items"))
+        .extracting(CacheIndexEndpoint.Entry::ticker)
+        .containsExactly("NVDA");
+  }
+}
@@ -0,0 +1,90 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class CachedSupersetsTests {
+
+  @TempDir private File cacheDir;
+
+  private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+  /** Reads of the cache, by any instance. */
+  private final AtomicInteger reads = new AtomicInteger();
+
+  private CachedSupersets supersets() {
+    FileCacheService files = new FileCacheService(cacheDir);
+    CacheService counting =
+        new CacheService() {
+          @Override
+          public boolean keyExists(String cacheKey) {
+            reads.incrementAndGet();
+            return files.keyExists(cacheKey);
+          }
+
+          @Override
+          public byte[] getBytes(String cacheKey) {
+            reads.incrementAndGet();
+            return files.getBytes(cacheKey);
+          }
+
+          @Override
+          public void saveBytes(String cacheKey, byte[] entry) {
+            files.saveBytes(cacheKey, entry);
+          }
+
+          @Override
+          public void delete(String cacheKey) {
+            files.delete(cacheKey);
+          }
+        };
+    return new CachedSupersets(counting, mapper);
+  }
+
+  @Test
+  void coveredRequestsAreAnsweredWithoutReadingTheIndex() {
+    CachedSupersets supersets = supersets();
+    supersets.record("line-items AAPL ttm", 10, List.of("revenue", "net_income"), "payload");
+    reads.set(0);
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(supersets.find("line-items AAPL ttm", 5, List.of("revenue")).cacheKey())
+          .isEqualTo("payload");
+    }
+    assertThat(reads).hasValue(0);
+  }
+
+  @Test
+  void responsesRecordedByAnotherProcessAreFoundOnAMiss() {
+    CachedSupersets first = supersets();
+    CachedSupersets second = supersets();
+    assertThat(first.find("line-items AAPL ttm", 5, List.of("revenue"))).isNull();
+
+    second.record("line-items AAPL ttm", 10, List.of("revenue"), "payload");
+    first.record("line-items AAPL ttm", 10, List.of("net_income"), "other");
+
+    assertThat(first.find("line-items AAPL ttm", 5, List.of("revenue")).cacheKey())
+        .isEqualTo("payload");
+    assertThat(supersets().find("line-items AAPL ttm", 5, List.of("net_income")).cacheKey())
+        .isEqualTo("other");
+  }
+
+  @Test
+  void forgottenResponsesAreNoLongerFound() {
+    CachedSupersets supersets = supersets();
+    supersets.record("financial-metrics AAPL ttm", 10, List.of(), "payload");
+
+    supersets.forget(
+        "financial-metrics AAPL ttm", supersets.find("financial-metrics AAPL ttm", 5, List.of()));
+
+    assertThat(supersets.find("financial-metrics AAPL ttm", 5, List.of())).isNull();
+    assertThat(supersets().find("financial-metrics AAPL ttm", 5, List.of())).isNull();
+  }
+}
@@ -0,0 +1,93 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompressedCacheServiceTests {
+
+  @TempDir private File cacheDir;
+
+  private static String metrics(String ticker, int year) {
+    StringBuilder json = new StringBuilder("{\"financial_metrics\":[");
+    for (int quarter = 1; quarter <= 4; quarter++) {
+      json.append(quarter > 1 ? "," : "")
+          .append("{\"ticker\":\"")
+          .append(ticker)
+          .append("\",\"report_period\":\"")
+          .append(year)
+          .append("-0")
+          .append(quarter * 2)
+          .append("-30\",\"period\":\"ttm\",\"currency\":\"USD\",\"return_on_equity\":0.")
+          .append(year + quarter)
+          .append(",\"price_to_earnings_ratio\":")
+          .append(quarter * 7)
+          .append("}");
+    }
+    return json.append("]}").toString();
+  }
+
+  @Test
+  void entriesAreStoredCompressedAndUncompressedEntriesStayReadable() {
+    FileCacheService files = new FileCacheService(cacheDir);
+    files.save("legacy", metrics("AAPL", 2023));
+    CompressedCacheService cache = new CompressedCacheService(files, 6, 100, 32 * 1024);
+
+    String entry = metrics("MSFT", 2024).repeat(5);
+    cache.save("compressed", entry);
+
+    byte[] stored = files.getBytes("compressed");
+    assertThat(CompressedCacheService.isCompressed(stored)).isTrue();
+    assertThat(stored.length).isLessThan(entry.getBytes(StandardCharsets.UTF_8).length / 2);
+    assertThat(cache.get("compressed")).isEqualTo(entry);
+    assertThat(cache.get("legacy")).isEqualTo(metrics("AAPL", 2023));
+  }
+
+  @Test
+  void aDictionaryIsTrainedOnTheSampledEntriesAndSurvivesARestart() {
+    FileCacheService files = new FileCacheService(cacheDir);
+    CompressedCacheService cache = new CompressedCacheService(files, 6, 4, 32 * 1024);
+    cache.save("before", metrics("AAPL", 2020));
+    for (int year = 2021; year <= 2023; year++) {
+      cache.save("sample " + year, metrics("AAPL", year));
+    }
+    cache.save("after", metrics("AAPL", 2024));
+
+    assertThat(CompressedCacheService.dictionaryIdOf(files.getBytes("before"))).isZero();
+    int dictionary = CompressedCacheService.dictionaryIdOf(files.getBytes("after"));
+    assertThat(dictionary).isNotZero();
+    assertThat(files.getBytes("after").length).isLessThan(files.getBytes("before").length);
+
+    CompressedCacheService restarted = new CompressedCacheService(files, 6, 4, 32 * 1024);
+    assertThat(restarted.get("before")).isEqualTo(metrics("AAPL", 2020));
+    assertThat(restarted.get("after")).isEqualTo(metrics("AAPL", 2024));
+    restarted.save("restarted", metrics("NVDA", 2024));
+    assertThat(CompressedCacheService.dictionaryIdOf(files.getBytes("restarted")))
+        .isEqualTo(dictionary);
+  }
+
+  @Test
+  void binaryEntriesTrainADictionaryFromTheirOwnBytes() throws Exception {
+    ObjectMapper smile = new ObjectMapper(new SmileFactory());
+    ObjectMapper json = new ObjectMapper();
+    FileCacheService files = new FileCacheService(cacheDir);
+    CompressedCacheService cache = new CompressedCacheService(files, 6, 4, 32 * 1024);
+    for (int year = 2020; year <= 2023; year++) {
+      cache.saveBytes(
+          "sample " + year, smile.writeValueAsBytes(json.readTree(metrics("AAPL", year))));
+    }
+
+    byte[] entry = smile.writeValueAsBytes(json.readTree(metrics("AAPL", 2024)));
+    cache.saveBytes("after", entry);
+
+    byte[] stored = files.getBytes("after");
+    assertThat(CompressedCacheService.dictionaryIdOf(stored)).isNotZero();
+    assertThat(stored.length).isLessThan(files.getBytes("sample 2020").length);
+    assertThat(cache.getBytes("after")).isEqualTo(entry);
+  }
+}
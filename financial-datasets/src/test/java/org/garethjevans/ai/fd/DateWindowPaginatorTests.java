@@ -0,0 +1,70 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class DateWindowPaginatorTests {
+
+  private static final LocalDate END_DATE = LocalDate.of(2025, 6, 30);
+  private static final int PAGE_CAP = 10;
+
+  /** One record per day for 100 days, served newest first and capped at {@link #PAGE_CAP}. */
+  private final List<LocalDate> records =
+      IntStream.range(0, 100).mapToObj(END_DATE::minusDays).toList();
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final BiFunction<LocalDate, LocalDate, List<LocalDate>> get =
+      (start, end) -> {
+        requests.incrementAndGet();
+        return records.stream()
+            .filter(d -> !d.isBefore(start) && !d.isAfter(end))
+            .limit(PAGE_CAP)
+            .toList();
+      };
+
+  @Test
+  void firstCallMakesTheSameSingleRequestAsSequentialPagination() {
+    DateWindowPaginator paginator = new DateWindowPaginator(8);
+
+    List<LocalDate> result =
+        paginator.fetch(
+            "news", "AAPL", get, Function.identity(), END_DATE.minusDays(99), END_DATE, 50);
+
+    assertThat(requests).hasValue(1);
+    assertThat(result).isEqualTo(records.subList(0, PAGE_CAP));
+  }
+
+  @Test
+  void laterCallsAreSplitIntoWindowsSizedFromEarlierResponses() {
+    DateWindowPaginator paginator = new DateWindowPaginator(8);
+    paginator.fetch("news", "AAPL", get, Function.identity(), END_DATE.minusDays(99), END_DATE, 50);
+    requests.set(0);
+
+    List<LocalDate> result =
+        paginator.fetch(
+            "news", "AAPL", get, Function.identity(), END_DATE.minusDays(99), END_DATE, 50);
+
+    assertThat(result).isEqualTo(records.subList(0, 50));
+    assertThat(requests.get()).isBetween(2, 8);
+  }
+
+  @Test
+  void splitProducesContiguousNonOverlappingWindows() {
+    List<DateWindowPaginator.DateWindow> windows =
+        DateWindowPaginator.split(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 10), 3);
+
+    assertThat(windows)
+        .containsExactly(
+            new DateWindowPaginator.DateWindow(LocalDate.of(2025, 1, 7), LocalDate.of(2025, 1, 10)),
+            new DateWindowPaginator.DateWindow(LocalDate.of(2025, 1, 3), LocalDate.of(2025, 1, 6)),
+            new DateWindowPaginator.DateWindow(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 2)));
+  }
+}
@@ -0,0 +1,120 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileCacheServiceTests {
+
+  @TempDir private File cacheDir;
+
+  @Test
+  void entriesAreReplacedWithoutLeavingTemporaryFiles() {
+    FileCacheService cache = new FileCacheService(cacheDir);
+    cache.save("/company/facts/?ticker=AAPL", "{\"v\":1}");
+    cache.save("/company/facts/?ticker=AAPL", "{\"v\":2}");
+
+    assertThat(cache.get("/company/facts/?ticker=AAPL")).isEqualTo("{\"v\":2}");
+    assertThat(cacheDir.list()).hasSize(1).noneMatch(name -> name.endsWith(".tmp"));
+  }
+
+  @Test
+  void flatEntriesAreReadAndMovedIntoTheirShardWhenSaved() {
+    FileCacheService flat = new FileCacheService(cacheDir, Duration.ofMinutes(1), false);
+    flat.save("/company/facts/?ticker=AAPL", "{\"v\":1}");
+    String[] flatFiles = cacheDir.list();
+
+    FileCacheService sharded = new FileCacheService(cacheDir);
+    assertThat(sharded.keyExists("/company/facts/?ticker=AAPL")).isTrue();
+    assertThat(sharded.get("/company/facts/?ticker=AAPL")).isEqualTo("{\"v\":1}");
+
+    sharded.save("/company/facts/?ticker=AAPL", "{\"v\":2}");
+
+    assertThat(flatFiles).singleElement().satisfies(name -> assertThat(name).hasSize(32));
+    assertThat(cacheDir.list()).containsExactly(flatFiles[0].substring(0, 2));
+    assertThat(new File(cacheDir, flatFiles[0].substring(0, 2)).list()).containsExactly(flatFiles);
+    assertThat(sharded.get("/company/facts/?ticker=AAPL")).isEqualTo("{\"v\":2}");
+  }
+
+  @Test
+  void aKeyIsOnlyLockedByOneCacheSharingTheDirectoryAtATime() throws Exception {
+    // two services over the same directory stand in for two processes
+    FileCacheService first = new FileCacheService(cacheDir);
+    FileCacheService second = new FileCacheService(cacheDir);
+    CountDownLatch locked = new CountDownLatch(1);
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      Future<Long> released =
+          executor.submit(
+              () ->
+                  first.locked(
+                      "/prices/?ticker=AAPL",
+                      () -> {
+                        locked.countDown();
+                        sleep(300);
+                        return System.nanoTime();
+                      }));
+      locked.await();
+      long acquired = second.locked("/prices/?ticker=AAPL", System::nanoTime);
+
+      assertThat(acquired).isGreaterThan(released.get());
+      assertThat(second.locked("/prices/?ticker=MSFT", () -> "independent"))
+          .isEqualTo("independent");
+    }
+  }
+
+  @Test
+  void aLockHeldForLongerThanTheTimeoutIsGoneAheadWithout() throws Exception {
+    FileCacheService first = new FileCacheService(cacheDir);
+    FileCacheService second = new FileCacheService(cacheDir, Duration.ofMillis(100));
+    CountDownLatch locked = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(1);
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      executor.submit(
+          () ->
+              first.locked(
+                  "/prices/?ticker=AAPL",
+                  () -> {
+                    locked.countDown();
+                    await(done);
+                    return null;
+                  }));
+      locked.await();
+
+      assertThat(second.locked("/prices/?ticker=AAPL", () -> "fetched anyway"))
+          .isEqualTo("fetched anyway");
+      done.countDown();
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Test
+  void onlyAPreviewOfLargeEntriesIsLogged() {
+    assertThat(FileCacheService.preview("{\"news\":[]}", 256)).isEqualTo("{\"news\":[]}");
+    assertThat(FileCacheService.preview("x".repeat(1000), 10))
+        .isEqualTo("xxxxxxxxxx... (990 more characters)");
+  }
+}
@@ -9,7 +9,9 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.NONE,
+    properties = "financial.datasets.cache.dir=src/main/resources/cache")
 class FinancialDatasetsServiceTests {
 
   @Autowired private FinancialDatasetsService financialDatasetsService;
@@ -62,6 +64,37 @@ class FinancialDatasetsServiceTests {
     }
   }
 
+  @ParameterizedTest
+  @ValueSource(strings = {"AAPL", "MSFT", "GOOGL"})
+  void canQueryTickerData(String ticker) {
+    assertThat(financialDatasetsService).isNotNull();
+
+    TickerDataBundle data =
+        financialDatasetsService.getTickerData(
+            TickerDataRequest.builder(ticker, LocalDate.now())
+                .lineItems(
+                    List.of(
+                        "capital_expenditure",
+                        "depreciation_and_amortization",
+                        "net_income",
+                        "outstanding_shares",
+                        "total_assets",
+                        "total_liabilities",
+                        "dividends_and_other_cash_distributions",
+                        "issuance_or_purchase_of_equity_shares"),
+                    Period.ttm,
+                    10)
+                .marketCap()
+                .build());
+    assertThat(data.ticker()).isEqualTo(ticker);
+    assertThat(data.lineItems()).isNotEmpty();
+    assertThat(data.marketCap()).isNotNull();
+    assertThat(data.metrics()).isEmpty();
+    assertThat(data.insiderTrades()).isEmpty();
+    assertThat(data.companyNews()).isEmpty();
+    assertThat(data.prices()).isEmpty();
+  }
+
   @ParameterizedTest
   @ValueSource(strings = {"AAPL", "MSFT", "GOOGL"})
   void canQueryInsiderTrades(String ticker) {
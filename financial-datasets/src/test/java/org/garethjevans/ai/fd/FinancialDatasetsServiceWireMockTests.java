@@ -0,0 +1,600 @@
+package org.garethjevans.ai.fd;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.matchingJsonPath;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestClient;
+
+class FinancialDatasetsServiceWireMockTests {
+
+  @TempDir private File cacheDir;
+
+  private WireMockServer wireMock;
+  private FinancialDatasetsService financialDatasetsService;
+
+  @BeforeEach
+  void setUp() {
+    wireMock = new WireMockServer(wireMockConfig().dynamicPort());
+    wireMock.start();
+    financialDatasetsService =
+        new FinancialDatasetsService(
+            RestClient.builder(),
+            wireMock.baseUrl(),
+            "test-key",
+            true,
+            Jackson2ObjectMapperBuilder.json().build(),
+            new FileCacheService(cacheDir));
+  }
+
+  @AfterEach
+  void tearDown() {
+    wireMock.stop();
+  }
+
+  @Test
+  void concurrentIdenticalRequestsShareOneUpstreamCall() throws Exception {
+    wireMock.stubFor(
+        get(urlPathEqualTo("/company/facts/"))
+            .willReturn(
+                aResponse()
+                    .withFixedDelay(500)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"company_facts\":{\"ticker\":\"AAPL\",\"name\":\"Apple Inc\"}}")));
+
+    List<Future<Facts>> results = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < 8; i++) {
+        results.add(executor.submit(() -> financialDatasetsService.companyFacts("AAPL")));
+      }
+    }
+
+    for (Future<Facts> result : results) {
+      assertThat(result.get().name()).isEqualTo("Apple Inc");
+    }
+    wireMock.verify(1, getRequestedFor(urlPathEqualTo("/company/facts/")));
+  }
+
+  @Test
+  void responsesAreCachedAsTheyWereReceived() {
+    String body =
+        "{\"company_facts\":{\"ticker\":\"AAPL\",\"name\":\"Apple Inc\",\"unmodelled\":42}}";
+    wireMock.stubFor(
+        get(urlPathEqualTo("/company/facts/"))
+            .willReturn(aResponse().withHeader("Content-Type", "application/json").withBody(body)));
+
+    assertThat(financialDatasetsService.companyFacts("AAPL").name()).isEqualTo("Apple Inc");
+    assertThat(financialDatasetsService.companyFacts("AAPL").name()).isEqualTo("Apple Inc");
+
+    assertThat(new FileCacheService(cacheDir).get("/company/facts/?ticker=AAPL")).isEqualTo(body);
+    wireMock.verify(1, getRequestedFor(urlPathEqualTo("/company/facts/")));
+  }
+
+  @Test
+  void servicesSharingACacheDirectoryFetchEachKeyOnce() throws Exception {
+    wireMock.stubFor(
+        get(urlPathEqualTo("/company/facts/"))
+            .willReturn(
+                aResponse()
+                    .withFixedDelay(500)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"company_facts\":{\"ticker\":\"AAPL\",\"name\":\"Apple Inc\"}}")));
+    // another container mounting the same cache volume
+    FinancialDatasetsService otherContainer =
+        new FinancialDatasetsService(
+            RestClient.builder(),
+            wireMock.baseUrl(),
+            "test-key",
+            true,
+            Jackson2ObjectMapperBuilder.json().build(),
+            new FileCacheService(cacheDir));
+
+    List<Future<Facts>> results = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (FinancialDatasetsService service : List.of(financialDatasetsService, otherContainer)) {
+        results.add(executor.submit(() -> service.companyFacts("AAPL")));
+      }
+    }
+
+    for (Future<Facts> result : results) {
+      assertThat(result.get().name()).isEqualTo("Apple Inc");
+    }
+    wireMock.verify(1, getRequestedFor(urlPathEqualTo("/company/facts/")));
+  }
+
+  @Test
+  void batchLineItemSearchIsSplitPerTickerAndCached() {
+    wireMock.stubFor(
+        post(urlPathEqualTo("/financials/search/line-items"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        """
+                        {"search_results":[
+                          {"ticker":"AAPL","report_period":"2025-03-29","period":"ttm","net_income":100},
+                          {"ticker":"MSFT","report_period":"2025-03-31","period":"ttm","net_income":200},
+                          {"ticker":"AAPL","report_period":"2024-12-28","period":"ttm","net_income":90}
+                        ]}
+                        """)));
+
+    LocalDate endDate = LocalDate.now();
+    List<String> items = List.of("net_income");
+
+    Map<String, List<LineItem>> results =
+        financialDatasetsService.searchLineItems(
+            List.of("MSFT", "AAPL"), endDate, items, Period.ttm, 5);
+
+    assertThat(results).containsOnlyKeys("MSFT", "AAPL");
+    assertThat(results.get("AAPL")).hasSize(2);
+    assertThat(results.get("AAPL").get(0).get("net_income")).isEqualByComparingTo("100");
+    assertThat(results.get("MSFT")).hasSize(1);
+    assertThat(results.get("MSFT").get(0).get("net_income")).isEqualByComparingTo("200");
+
+    List<LineItem> single =
+        financialDatasetsService.searchLineItems("AAPL", endDate, items, Period.ttm, 5);
+    assertThat(single).hasSize(2);
+
+    wireMock.verify(
+        1,
+        postRequestedFor(urlPathEqualTo("/financials/search/line-items"))
+            .withRequestBody(matchingJsonPath("$.tickers.length()", equalTo("2")))
+            .withRequestBody(matchingJsonPath("$.limit", equalTo("5"))));
+    wireMock.verify(1, postRequestedFor(urlPathEqualTo("/financials/search/line-items")));
+  }
+
+  @Test
+  void batchLineItemSearchesOfServicesSharingACacheDirectoryAreSentOnce() throws Exception {
+    wireMock.stubFor(
+        post(urlPathEqualTo("/financials/search/line-items"))
+            .willReturn(
+                aResponse()
+                    .withFixedDelay(500)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        """
+                        {"search_results":[
+                          {"ticker":"AAPL","report_period":"2025-03-29","period":"ttm","net_income":100},
+                          {"ticker":"MSFT","report_period":"2025-03-31","period":"ttm","net_income":200}
+                        ]}
+                        """)));
+    FinancialDatasetsService otherContainer =
+        new FinancialDatasetsService(
+            RestClient.builder(),
+            wireMock.baseUrl(),
+            "test-key",
+            true,
+            Jackson2ObjectMapperBuilder.json().build(),
+            new FileCacheService(cacheDir));
+
+    List<Future<Map<String, List<LineItem>>>> results = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (FinancialDatasetsService service :
+          List.of(financialDatasetsService, financialDatasetsService, otherContainer)) {
+        results.add(
+            executor.submit(
+                () ->
+                    service.searchLineItems(
+                        List.of("AAPL", "MSFT"),
+                        LocalDate.now(),
+                        List.of("net_income"),
+                        Period.ttm,
+                        5)));
+      }
+    }
+
+    for (Future<Map<String, List<LineItem>>> result : results) {
+      assertThat(result.get().get("MSFT")).singleElement();
+    }
+    wireMock.verify(1, postRequestedFor(urlPathEqualTo("/financials/search/line-items")));
+  }
+
+  @Test
+  void tickersCutShortByALimitOnTheWholeBatchAreFetchedOnTheirOwn() {
+    wireMock.stubFor(
+        post(urlPathEqualTo("/financials/search/line-items"))
+            .withRequestBody(matchingJsonPath("$.tickers.length()", equalTo("2")))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        """
+                        {"search_results":[
+                          {"ticker":"AAPL","report_period":"2025-03-29","period":"ttm","net_income":100},
+                          {"ticker":"AAPL","report_period":"2024-12-28","period":"ttm","net_income":90}
+                        ]}
+                        """)));
+    wireMock.stubFor(
+        post(urlPathEqualTo("/financials/search/line-items"))
+            .withRequestBody(matchingJsonPath("$.tickers[0]", equalTo("MSFT")))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        """
+                        {"search_results":[
+                          {"ticker":"MSFT","report_period":"2025-03-31","period":"ttm","net_income":200},
+                          {"ticker":"MSFT","report_period":"2024-12-31","period":"ttm","net_income":180}
+                        ]}
+                        """)));
+
+    Map<String, List<LineItem>> results =
+        financialDatasetsService.searchLineItems(
+            List.of("AAPL", "MSFT"), LocalDate.now(), List.of("net_income"), Period.ttm, 2);
+
+    assertThat(results.get("AAPL")).hasSize(2);
+    assertThat(results.get("MSFT")).hasSize(2);
+    assertThat(results.get("MSFT").get(0).get("net_income")).isEqualByComparingTo("200");
+    wireMock.verify(2, postRequestedFor(urlPathEqualTo("/financials/search/line-items")));
+  }
+
+  @Test
+  void smallerLimitsAndColumnSubsetsAreAnsweredFromCachedSupersets() {
+    wireMock.stubFor(
+        get(urlPathEqualTo("/financial-metrics/"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        """
+                        {"financial_metrics":[
+                          {"ticker":"AAPL","market_cap":300},
+                          {"ticker":"AAPL","market_cap":290},
+                          {"ticker":"AAPL","market_cap":280}
+                        ]}
+                        """)));
+    wireMock.stubFor(
+        post(urlPathEqualTo("/financials/search/line-items"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        """
+                        {"search_results":[
+                          {"ticker":"AAPL","report_period":"2025-03-29","period":"ttm","net_income":100,"revenue":400},
+                          {"ticker":"AAPL","report_period":"2024-12-28","period":"ttm","net_income":90,"revenue":390}
+                        ]}
+                        """)));
+    LocalDate endDate = LocalDate.of(2025, 6, 30);
+
+    assertThat(financialDatasetsService.getFinancialMetrics("AAPL", endDate, Period.ttm, 10))
+        .hasSize(3);
+    assertThat(financialDatasetsService.getFinancialMetrics("AAPL", endDate, Period.ttm, 2))
+        .extracting(Metrics::marketCap)
+        .map(BigDecimal::intValue)
+        .containsExactly(300, 290);
+
+    financialDatasetsService.searchLineItems(
+        "AAPL", endDate, List.of("revenue", "net_income"), Period.ttm, 5);
+    List<LineItem> subset =
+        financialDatasetsService.searchLineItems(
+            "AAPL", endDate, List.of("net_income"), Period.ttm, 1);
+
+    assertThat(subset).hasSize(1);
+    assertThat(subset.get(0).get("net_income")).isEqualByComparingTo("100");
+    assertThat(subset.get(0).get("revenue")).isNull();
+
+    wireMock.verify(1, getRequestedFor(urlPathEqualTo("/financial-metrics/")));
+    wireMock.verify(
+        1,
+        postRequestedFor(urlPathEqualTo("/financials/search/line-items"))
+            .withRequestBody(matchingJsonPath("$.line_items[0]", equalTo("net_income"))));
+  }
+
+  @Test
+  void liveResponsesCachedUnderTheirLiteralKeyAreOnlyServedWhenUpstreamFails() {
+    CacheService cacheService = new FileCacheService(cacheDir);
+    cacheService.save(
+        "/company/facts/?ticker=AAPL",
+        "{\"company_facts\":{\"ticker\":\"AAPL\",\"name\":\"Apple Inc (2024)\"}}");
+    FinancialDatasetsService fresh =
+        new FinancialDatasetsService(
+            RestClient.builder(),
+            wireMock.baseUrl(),
+            "test-key",
+            true,
+            Jackson2ObjectMapperBuilder.json().build(),
+            cacheService,
+            new FinancialDatasetsService.Options()
+                .freshness(new FreshnessPolicy(Map.of(), Duration.ofDays(7), Clock.systemUTC())));
+
+    wireMock.stubFor(
+        get(urlPathEqualTo("/company/facts/")).willReturn(aResponse().withStatus(503)));
+    assertThat(fresh.companyFacts("AAPL").name()).isEqualTo("Apple Inc (2024)");
+
+    wireMock.resetAll();
+    wireMock.stubFor(
+        get(urlPathEqualTo("/company/facts/"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"company_facts\":{\"ticker\":\"AAPL\",\"name\":\"Apple Inc\"}}")));
+    assertThat(fresh.companyFacts("AAPL").name()).isEqualTo("Apple Inc");
+    assertThat(fresh.companyFacts("AAPL").name()).isEqualTo("Apple Inc");
+    wireMock.verify(1, getRequestedFor(urlPathEqualTo("/company/facts/")));
+  }
+
+  @Test
+  void liveResponsesAreFetchedAgainUnderTheSameKeyOnceTheirWindowHasPassed() {
+    TestClock clock = new TestClock();
+    FinancialDatasetsService fresh =
+        new FinancialDatasetsService(
+            RestClient.builder(),
+            wireMock.baseUrl(),
+            "test-key",
+            true,
+            Jackson2ObjectMapperBuilder.json().build(),
+            new FileCacheService(cacheDir),
+            new FinancialDatasetsService.Options()
+                .freshness(
+                    new FreshnessPolicy(
+                        Map.of("company-facts", Duration.ofDays(7)), Duration.ZERO, clock)));
+    wireMock.stubFor(
+        get(urlPathEqualTo("/company/facts/"))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"company_facts\":{\"ticker\":\"AAPL\",\"name\":\"Apple Inc\"}}")));
+
+    fresh.companyFacts("AAPL");
+    clock.advance(Duration.ofDays(6));
+    fresh.companyFacts("AAPL");
+    wireMock.verify(1, getRequestedFor(urlPathEqualTo("/company/facts/")));
+
+    clock.advance(Duration.ofDays(2));
+    fresh.companyFacts("AAPL");
+    fresh.companyFacts("AAPL");
+    wireMock.verify(2, getRequestedFor(urlPathEqualTo("/company/facts/")));
+    assertThat(new FileCacheService(cacheDir).keyExists("/company/facts/?ticker=AAPL")).isTrue();
+  }
+
+  @Test
+  void streamedNewsOnlyFetchesThePagesThatAreConsumed() {
+    stubNewsPage("2025-06-30", "2025-06-30", "2025-06-29");
+    stubNewsPage("2025-06-29", "2025-06-29", "2025-06-28");
+    stubNewsPage("2025-06-28", "2025-06-28", "2025-06-27");
+
+    List<LocalDate> dates =
+        financialDatasetsService
+            .streamCompanyNews("AAPL", LocalDate.of(2025, 1, 1), LocalDate.of(2025, 6, 30), 2)
+            .limit(3)
+            .map(CompanyNews::date)
+            .toList();
+
+    assertThat(dates)
+        .containsExactly(
+            LocalDate.of(2025, 6, 30), LocalDate.of(2025, 6, 29), LocalDate.of(2025, 6, 28));
+    wireMock.verify(2, getRequestedFor(urlPathEqualTo("/news/")));
+  }
+
+  @Test
+  void streamedNewsIsAnsweredFromTheHistoryOfEarlierRequests() {
+    FinancialDatasetsService withHistory =
+        new FinancialDatasetsService(
+            RestClient.builder(),
+            wireMock.baseUrl(),
+            "test-key",
+            true,
+            Jackson2ObjectMapperBuilder.json().build(),
+            new FileCacheService(cacheDir),
+            new FinancialDatasetsService.Options().incrementalHistory(true));
+    stubNewsPage("2025-06-30", "2025-06-30", "2025-06-29", "2025-06-28");
+    LocalDate start = LocalDate.of(2025, 6, 28);
+    LocalDate end = LocalDate.of(2025, 6, 30);
+
+    assertThat(withHistory.getCompanyNews("AAPL", start, end, 10)).hasSize(3);
+    List<LocalDate> dates =
+        withHistory.streamCompanyNews("AAPL", start, end, 2).map(CompanyNews::date).toList();
+
+    assertThat(dates).containsExactly(end, LocalDate.of(2025, 6, 29), start);
+    wireMock.verify(1, getRequestedFor(urlPathEqualTo("/news/")));
+  }
+
+  @Test
+  void staleWhileRevalidateServesTheMostRecentEarlierResponseAndRefreshesIt() throws Exception {
+    FinancialDatasetsService swr =
+        new FinancialDatasetsService(
+            RestClient.builder(),
+            wireMock.baseUrl(),
+            "test-key",
+            true,
+            Jackson2ObjectMapperBuilder.json().build(),
+            new FileCacheService(cacheDir),
+            new FinancialDatasetsService.Options().staleWhileRevalidate(true));
+    LocalDate start = LocalDate.of(2025, 6, 1);
+    LocalDate yesterday = LocalDate.of(2025, 6, 29);
+    LocalDate today = LocalDate.of(2025, 6, 30);
+    stubPrices(yesterday, "100", 0);
+    stubPrices(today, "101", 500);
+
+    assertThat(swr.getPrices("AAPL", start, yesterday).get(0).close()).isEqualByComparingTo("100");
+
+    // today's prices are served from yesterday's response and marked stale until refreshed
+    long begin = System.nanoTime();
+    assertThat(swr.getPrices("AAPL", start, today).get(0).close()).isEqualByComparingTo("100");
+    assertThat(Duration.ofNanos(System.nanoTime() - begin)).isLessThan(Duration.ofMillis(400));
+    assertThat(swr.staleness("AAPL").get("prices"))
+        .extracting(Staleness::requestedFor, Staleness::servedFrom)
+        .containsExactly(today, yesterday);
+
+    long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+    while (!swr.staleness("AAPL").isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+    assertThat(swr.staleness("AAPL")).isEmpty();
+    assertThat(swr.getPrices("AAPL", start, today).get(0).close()).isEqualByComparingTo("101");
+
+    // an earlier date must never be answered with later data
+    stubPrices(LocalDate.of(2025, 6, 28), "99", 0);
+    assertThat(swr.getPrices("AAPL", start, LocalDate.of(2025, 6, 28)).get(0).close())
+        .isEqualByComparingTo("99");
+  }
+
+  @Test
+  void aResponseIsNeverServedStaleForAnEarlierStartDate() {
+    FinancialDatasetsService swr =
+        new FinancialDatasetsService(
+            RestClient.builder(),
+            wireMock.baseUrl(),
+            "test-key",
+            true,
+            Jackson2ObjectMapperBuilder.json().build(),
+            new FileCacheService(cacheDir),
+            new FinancialDatasetsService.Options().staleWhileRevalidate(true));
+    LocalDate yesterday = LocalDate.of(2025, 6, 29);
+    LocalDate today = LocalDate.of(2025, 6, 30);
+    stubPrices(yesterday, "100", 0);
+    stubPrices(today, "101", 0);
+
+    assertThat(swr.getPrices("AAPL", LocalDate.of(2025, 6, 1), yesterday).get(0).close())
+        .isEqualByComparingTo("100");
+
+    // a year of prices isn't answered from a month of them
+    assertThat(swr.getPrices("AAPL", LocalDate.of(2024, 6, 1), today).get(0).close())
+        .isEqualByComparingTo("101");
+    assertThat(swr.staleness("AAPL")).isEmpty();
+    wireMock.verify(
+        1,
+        getRequestedFor(urlPathEqualTo("/prices/"))
+            .withQueryParam("start_date", equalTo("2024-06-01")));
+  }
+
+  @Test
+  void priceSeriesAreReadFromEntriesCachedInABinaryFormat() {
+    var mapper = Jackson2ObjectMapperBuilder.json().build();
+    FinancialDatasetsService smile =
+        new FinancialDatasetsService(
+            RestClient.builder(),
+            wireMock.baseUrl(),
+            "test-key",
+            true,
+            mapper,
+            new FileCacheService(cacheDir),
+            new FinancialDatasetsService.Options()
+                .codec(new CacheCodec(mapper, CacheCodec.Format.SMILE, Map.of())));
+    LocalDate start = LocalDate.of(2025, 6, 27);
+    LocalDate end = LocalDate.of(2025, 6, 28);
+    stubPrices(end, "99", 0);
+
+    assertThat(smile.getPrices("AAPL", start, end).get(0).close()).isEqualByComparingTo("99");
+    PriceSeries series = smile.getPriceSeries("AAPL", start, end);
+
+    assertThat(series.size()).isEqualTo(1);
+    assertThat(series.lastClose()).isEqualTo(99d);
+    wireMock.verify(1, getRequestedFor(urlPathEqualTo("/prices/")));
+  }
+
+  @Test
+  void tickerDataSectionsAreFetchedConcurrently() {
+    stubSection(get(urlPathEqualTo("/financial-metrics/")), "{\"financial_metrics\":[]}");
+    stubSection(post(urlPathEqualTo("/financials/search/line-items")), "{\"search_results\":[]}");
+    stubSection(get(urlPathEqualTo("/insider-trades/")), "{\"insider_trades\":[]}");
+    stubSection(get(urlPathEqualTo("/news/")), "{\"news\":[]}");
+    stubSection(
+        get(urlPathEqualTo("/prices/")),
+        "{\"prices\":[{\"close\":99,\"time\":\"2025-06-27T04:00:00Z\"}]}");
+    LocalDate end = LocalDate.of(2025, 6, 27);
+
+    long begin = System.nanoTime();
+    TickerDataBundle bundle =
+        financialDatasetsService.getTickerData(
+            TickerDataRequest.builder("AAPL", end)
+                .metrics(Period.ttm, 5)
+                .lineItems(List.of("net_income"), Period.ttm, 5)
+                .insiderTrades(end.minusDays(30), 10)
+                .companyNews(end.minusDays(30), 10)
+                .prices(end.minusDays(30))
+                .build());
+
+    // five sections of 500ms each, waited for together rather than one after the other
+    assertThat(Duration.ofNanos(System.nanoTime() - begin)).isLessThan(Duration.ofMillis(2000));
+    assertThat(bundle.prices()).hasSize(1);
+    assertThat(bundle.metrics()).isEmpty();
+    assertThat(bundle.marketCap()).isNull();
+  }
+
+  @Test
+  void aFailingTickerDataSectionIsReportedAsItsOwnError() {
+    stubSection(get(urlPathEqualTo("/financial-metrics/")), "{\"financial_metrics\":[]}");
+    wireMock.stubFor(get(urlPathEqualTo("/news/")).willReturn(aResponse().withStatus(503)));
+    LocalDate end = LocalDate.of(2025, 6, 27);
+
+    assertThatThrownBy(
+            () ->
+                financialDatasetsService.getTickerData(
+                    TickerDataRequest.builder("AAPL", end)
+                        .metrics(Period.ttm, 5)
+                        .companyNews(end.minusDays(30), 10)
+                        .build()))
+        .isInstanceOf(HttpServerErrorException.ServiceUnavailable.class);
+    wireMock.verify(1, getRequestedFor(urlPathEqualTo("/financial-metrics/")));
+  }
+
+  private void stubSection(MappingBuilder request, String body) {
+    wireMock.stubFor(
+        request.willReturn(
+            aResponse()
+                .withFixedDelay(500)
+                .withHeader("Content-Type", "application/json")
+                .withBody(body)));
+  }
+
+  private void stubPrices(LocalDate endDate, String close, int delayMillis) {
+    wireMock.stubFor(
+        get(urlPathEqualTo("/prices/"))
+            .withQueryParam("end_date", equalTo(endDate.toString()))
+            .willReturn(
+                aResponse()
+                    .withFixedDelay(delayMillis)
+                    .withHeader("Content-Type", "application/json")
+                    .withBody(
+                        "{\"prices\":[{\"close\":"
+                            + close
+                            + ",\"time\":\""
+                            + endDate
+                            + "T04:00:00Z\"}]}")));
+  }
+
+  private void stubNewsPage(String endDate, String... dates) {
+    String news =
+        Arrays.stream(dates)
+            .map(d -> "{\"ticker\":\"AAPL\",\"title\":\"" + d + "\",\"date\":\"" + d + "\"}")
+            .collect(Collectors.joining(","));
+    wireMock.stubFor(
+        get(urlPathEqualTo("/news/"))
+            .withQueryParam("end_date", equalTo(endDate))
+            .willReturn(
+                aResponse()
+                    .withHeader("Content-Type", "application/json")
+                    .withBody("{\"news\":[" + news + "]}")));
+  }
+}
@@ -0,0 +1,67 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class FreshnessPolicyTests {
+
+  private static final Instant MONDAY_MORNING = Instant.parse("2025-06-30T09:00:00Z");
+
+  private static FreshnessPolicy policyAt(Instant now) {
+    return new FreshnessPolicy(
+        Map.of("company-facts", Duration.ofDays(7), "prices", Duration.ofMinutes(15)),
+        Duration.ofHours(1),
+        Clock.fixed(now, ZoneOffset.UTC));
+  }
+
+  @Test
+  void requestsEntirelyInThePastKeepTheirLiteralKey() {
+    String uri = "/prices/?ticker=AAPL&start_date=2025-01-01&end_date=2025-06-27";
+
+    assertThat(policyAt(MONDAY_MORNING).cacheKey("prices", uri)).isEqualTo(uri);
+    assertThat(policyAt(MONDAY_MORNING).isLive(uri)).isFalse();
+  }
+
+  @Test
+  void requestsAsOfTodayShareOneKeyWhateverTheDay() {
+    String monday = "/financial-metrics/?ticker=AAPL&report_period_lte=2025-06-30&limit=5";
+    String tuesday = "/financial-metrics/?ticker=AAPL&report_period_lte=2025-07-01&limit=5";
+    FreshnessPolicy policy = policyAt(MONDAY_MORNING);
+
+    assertThat(policy.cacheKey("financial-metrics", monday))
+        .isEqualTo("/financial-metrics/?ticker=AAPL&report_period_lte=live&limit=5")
+        .isEqualTo(policy.cacheKey("financial-metrics", tuesday))
+        .isEqualTo(
+            policyAt(MONDAY_MORNING.plus(Duration.ofDays(1)))
+                .cacheKey("financial-metrics", tuesday))
+        .matches(policy::isLive);
+  }
+
+  @Test
+  void rollingStartDatesAreKeptRelativeToToday() {
+    String monday = "/prices/?ticker=AAPL&start_date=2024-06-30&end_date=2025-06-30";
+    String tuesday = "/prices/?ticker=AAPL&start_date=2024-07-01&end_date=2025-07-01";
+
+    assertThat(policyAt(MONDAY_MORNING).cacheKey("prices", monday))
+        .isEqualTo("/prices/?ticker=AAPL&start_date=live-365d&end_date=live")
+        .isEqualTo(policyAt(MONDAY_MORNING.plus(Duration.ofDays(1))).cacheKey("prices", tuesday));
+  }
+
+  @Test
+  void liveResponsesAreFreshUntilTheirEndpointsWindowHasPassed() {
+    FreshnessPolicy policy = policyAt(MONDAY_MORNING);
+
+    assertThat(policy.isLive("/company/facts/?ticker=AAPL")).isTrue();
+    assertThat(policy.isFresh("company-facts", MONDAY_MORNING.minus(Duration.ofDays(6)))).isTrue();
+    assertThat(policy.isFresh("company-facts", MONDAY_MORNING.minus(Duration.ofDays(8)))).isFalse();
+    assertThat(policy.isFresh("prices", MONDAY_MORNING.minus(Duration.ofMinutes(16)))).isFalse();
+    assertThat(policy.isFresh("news", MONDAY_MORNING.minus(Duration.ofMinutes(59)))).isTrue();
+    assertThat(policy.isFresh("news", null)).isFalse();
+  }
+}
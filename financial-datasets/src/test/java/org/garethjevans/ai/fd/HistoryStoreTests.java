@@ -0,0 +1,156 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class HistoryStoreTests {
+
+  private static final LocalDate TODAY = LocalDate.of(2025, 6, 30);
+
+  @TempDir private File cacheDir;
+
+  private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+  /** Every window the store asked upstream for. */
+  private final List<PriceStore.DateRange> fetched = new CopyOnWriteArrayList<>();
+
+  /** One article a day, like upstream returns them newest first and cut off at the limit. */
+  private final HistoryStore.Fetcher<CompanyNews> fetcher =
+      (ticker, startDate, endDate, limit) -> {
+        fetched.add(new PriceStore.DateRange(startDate, endDate));
+        return startDate
+            .datesUntil(endDate.plusDays(1))
+            .sorted(Comparator.reverseOrder())
+            .limit(limit)
+            .map(d -> article(ticker, d))
+            .toList();
+      };
+
+  private HistoryStore<CompanyNews> store() {
+    return new HistoryStore<>(
+        "news",
+        CompanyNews.class,
+        CompanyNews::date,
+        fetcher,
+        new FileCacheService(cacheDir),
+        mapper,
+        Clock.systemUTC());
+  }
+
+  @Test
+  void aRefreshOnlyFetchesRecordsSinceTheHighWaterMark() {
+    HistoryStore<CompanyNews> store = store();
+    assertThat(store.get("AAPL", TODAY.minusDays(29), TODAY, 100)).hasSize(30);
+
+    List<CompanyNews> refreshed = store.get("AAPL", TODAY.minusDays(27), TODAY.plusDays(2), 100);
+
+    // the mark's own day is fetched again and its article is not duplicated
+    assertThat(refreshed).hasSize(30);
+    assertThat(refreshed.getFirst().date()).isEqualTo(TODAY.plusDays(2));
+    assertThat(fetched)
+        .containsExactly(
+            new PriceStore.DateRange(TODAY.minusDays(29), TODAY),
+            new PriceStore.DateRange(TODAY, TODAY.plusDays(2)));
+  }
+
+  @Test
+  void windowsInsideTheHistoryAreAnsweredLocallyAfterARestart() {
+    store().get("AAPL", TODAY.minusDays(29), TODAY, 100);
+
+    List<CompanyNews> window = store().get("AAPL", TODAY.minusDays(9), TODAY.minusDays(5), 3);
+
+    assertThat(window)
+        .extracting(CompanyNews::date)
+        .containsExactly(TODAY.minusDays(5), TODAY.minusDays(6), TODAY.minusDays(7));
+    assertThat(fetched).hasSize(1);
+  }
+
+  @Test
+  void aTruncatedRefreshDoesNotClaimTheDatesBehindIt() {
+    HistoryStore<CompanyNews> store = store();
+    store.get("AAPL", TODAY.minusDays(9), TODAY, 100);
+
+    // more than a limit's worth arrived since the mark, the older days are fetched separately
+    assertThat(store.get("AAPL", TODAY.minusDays(9), TODAY.plusDays(10), 6))
+        .extracting(CompanyNews::date)
+        .containsExactly(
+            TODAY.plusDays(10),
+            TODAY.plusDays(9),
+            TODAY.plusDays(8),
+            TODAY.plusDays(7),
+            TODAY.plusDays(6),
+            TODAY.plusDays(5));
+
+    List<CompanyNews> window = store.get("AAPL", TODAY, TODAY.plusDays(10), 100);
+
+    // only the hole is fetched, from the mark before it
+    assertThat(window).hasSize(11);
+    assertThat(fetched)
+        .containsExactly(
+            new PriceStore.DateRange(TODAY.minusDays(9), TODAY),
+            new PriceStore.DateRange(TODAY, TODAY.plusDays(10)),
+            new PriceStore.DateRange(TODAY, TODAY.plusDays(5)));
+  }
+
+  @Test
+  void aWindowAwayFromTheHistoryIsAddedToIt() {
+    HistoryStore<CompanyNews> store = store();
+    store.get("AAPL", TODAY.minusDays(29), TODAY, 100);
+    store.get("AAPL", TODAY.minusDays(200), TODAY.minusDays(180), 100);
+    fetched.clear();
+
+    assertThat(store.get("AAPL", TODAY.minusDays(9), TODAY.minusDays(5), 100)).hasSize(5);
+    assertThat(store().get("AAPL", TODAY.minusDays(190), TODAY.minusDays(185), 100)).hasSize(6);
+    assertThat(fetched).isEmpty();
+  }
+
+  @Test
+  void historiesDroppedFromMemoryAreReadBackWithoutAFetch() {
+    HistoryStore<CompanyNews> store =
+        new HistoryStore<>(
+            "news",
+            CompanyNews.class,
+            CompanyNews::date,
+            fetcher,
+            new FileCacheService(cacheDir),
+            mapper,
+            Clock.systemUTC(),
+            1);
+    store.get("AAPL", TODAY.minusDays(9), TODAY, 100);
+    store.get("MSFT", TODAY.minusDays(9), TODAY, 100);
+    fetched.clear();
+
+    assertThat(store.get("AAPL", TODAY.minusDays(9), TODAY, 100)).hasSize(10);
+    assertThat(fetched).isEmpty();
+  }
+
+  @Test
+  void storesSharingACacheDirectoryAddToEachOthersHistories() {
+    HistoryStore<CompanyNews> first = store();
+    HistoryStore<CompanyNews> second = store();
+    first.get("AAPL", TODAY.minusDays(9), TODAY, 100);
+    second.get("AAPL", TODAY.minusDays(100), TODAY.minusDays(91), 100);
+    first.get("AAPL", TODAY.minusDays(50), TODAY.minusDays(41), 100);
+    fetched.clear();
+
+    HistoryStore<CompanyNews> restarted = store();
+    assertThat(restarted.get("AAPL", TODAY.minusDays(100), TODAY.minusDays(91), 100)).hasSize(10);
+    assertThat(restarted.get("AAPL", TODAY.minusDays(9), TODAY, 100)).hasSize(10);
+    assertThat(fetched).isEmpty();
+  }
+
+  private static CompanyNews article(String ticker, LocalDate date) {
+    return new CompanyNews(
+        ticker, "News for " + date, "author", "source", date, "https://example.com/" + date, null);
+  }
+}
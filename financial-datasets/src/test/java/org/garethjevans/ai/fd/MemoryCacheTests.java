@@ -0,0 +1,50 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+class MemoryCacheTests {
+
+  @Test
+  void holdsDecodedResponsesByTypeAndCountsHitsAndMisses() {
+    MemoryCache memoryCache = new MemoryCache(1024);
+    String[] response = {"AAPL"};
+
+    memoryCache.put("/company/facts/?ticker=AAPL", response, "[\"AAPL\"]");
+
+    assertThat(memoryCache.get("/company/facts/?ticker=AAPL", String[].class)).isSameAs(response);
+    assertThat(memoryCache.get("/company/facts/?ticker=AAPL", Facts.class)).isNull();
+    assertThat(memoryCache.get("/company/facts/?ticker=MSFT", String[].class)).isNull();
+    assertThat(memoryCache.stats().hitCount()).isEqualTo(2);
+    assertThat(memoryCache.stats().missCount()).isEqualTo(1);
+  }
+
+  @Test
+  void isBoundedByTheSizeOfTheJson() {
+    MemoryCache memoryCache = new MemoryCache(1000);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    memoryCache.bindTo(registry);
+
+    for (int i = 0; i < 20; i++) {
+      memoryCache.put("key " + i, "value " + i, "x".repeat(200));
+    }
+    memoryCache.cleanUp();
+
+    long held = 0;
+    for (int i = 0; i < 20; i++) {
+      if (memoryCache.get("key " + i, String.class) != null) {
+        held++;
+      }
+    }
+    assertThat(held).isLessThanOrEqualTo(4);
+    assertThat(
+            registry
+                .get("cache.evictions")
+                .tag("cache", "financial-datasets")
+                .functionCounter()
+                .count())
+        .isGreaterThan(0);
+  }
+}
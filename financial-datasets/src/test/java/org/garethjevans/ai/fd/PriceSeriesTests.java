@@ -0,0 +1,83 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+class PriceSeriesTests {
+
+  @Test
+  void decodesBarsIntoColumns() throws Exception {
+    String json =
+        """
+        {"ticker":"AAPL","prices":[
+          {"open":204,"close":187.37,"high":204.06,"low":184.53,"volume":37415603,"time":"2025-03-03T05:00:00Z","time_milliseconds":1740978000000},
+          {"open":189.22,"close":187.48,"high":193.95,"low":180.48,"volume":37910477,"extra":{"a":[1,2]},"time_milliseconds":1741064400000}
+        ],"next_page_url":null}
+        """;
+
+    PriceSeries series = PriceSeries.decode(new JsonFactory(), json);
+
+    assertThat(series.size()).isEqualTo(2);
+    assertThat(series.date(0)).isEqualTo(LocalDate.of(2025, 3, 3));
+    assertThat(series.date(1)).isEqualTo(LocalDate.of(2025, 3, 4));
+    assertThat(series.open(0)).isEqualTo(204d);
+    assertThat(series.high(1)).isEqualTo(193.95d);
+    assertThat(series.low(1)).isEqualTo(180.48d);
+    assertThat(series.volume(0)).isEqualTo(37415603d);
+    assertThat(series.lastClose()).isEqualTo(187.48d);
+  }
+
+  @Test
+  void barsWithoutADateAreSkipped() throws Exception {
+    String json =
+        """
+        {"prices":[
+          {"open":1,"close":2,"high":3,"low":0.5,"volume":10},
+          {"close":187.48,"time":"2025-03-04T05:00:00Z"}
+        ]}
+        """;
+
+    PriceSeries series = PriceSeries.decode(new JsonFactory(), json);
+
+    assertThat(series.size()).isEqualTo(1);
+    assertThat(series.date(0)).isEqualTo(LocalDate.of(2025, 3, 4));
+    assertThat(series.open(0)).isZero();
+    assertThat(series.lastClose()).isEqualTo(187.48d);
+  }
+
+  @Test
+  void decodesMissingPricesAsEmpty() throws Exception {
+    assertThat(PriceSeries.decode(new JsonFactory(), "{\"prices\":[]}").isEmpty()).isTrue();
+    assertThat(PriceSeries.decode(new JsonFactory(), "{}").isEmpty()).isTrue();
+  }
+
+  @Test
+  void mergedBarsAreOrderedWithTheNewerBarWinning() throws Exception {
+    JsonFactory factory = new JsonFactory();
+    PriceSeries older =
+        PriceSeries.decode(
+            factory,
+            """
+            {"prices":[{"close":1,"time":"2025-03-03"},{"close":2,"time":"2025-03-05"}]}
+            """);
+    PriceSeries newer =
+        PriceSeries.decode(
+            factory,
+            """
+            {"prices":[{"close":3,"time":"2025-03-04"},{"close":4,"time":"2025-03-05"}]}
+            """);
+
+    PriceSeries merged = older.merge(newer);
+
+    assertThat(merged.size()).isEqualTo(3);
+    assertThat(merged.close(1)).isEqualTo(3d);
+    assertThat(merged.lastClose()).isEqualTo(4d);
+    PriceSeries slice = merged.between(LocalDate.of(2025, 3, 4), LocalDate.of(2025, 3, 10));
+    assertThat(slice.size()).isEqualTo(2);
+    assertThat(slice.date(0)).isEqualTo(LocalDate.of(2025, 3, 4));
+    assertThat(PriceSeries.decode(factory, merged.encode(factory)).lastClose()).isEqualTo(4d);
+  }
+}
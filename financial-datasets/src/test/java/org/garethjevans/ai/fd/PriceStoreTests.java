@@ -0,0 +1,213 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+class PriceStoreTests {
+
+  private static final LocalDate TODAY = LocalDate.of(2025, 6, 30);
+
+  @TempDir private File cacheDir;
+
+  private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+  /** Every window the store asked upstream for. */
+  private final List<PriceStore.DateRange> fetched = new CopyOnWriteArrayList<>();
+
+  private final PriceStore.Fetcher fetcher =
+      (ticker, startDate, endDate) -> {
+        fetched.add(new PriceStore.DateRange(startDate, endDate));
+        return PriceSeries.of(
+            startDate.datesUntil(endDate.plusDays(1)).map(d -> bar(d, d.getDayOfMonth())).toList());
+      };
+
+  private PriceStore store(boolean serveStale) {
+    return store(serveStale, Clock.systemUTC());
+  }
+
+  private PriceStore store(boolean serveStale, Clock clock) {
+    return new PriceStore(new FileCacheService(cacheDir), mapper, fetcher, serveStale, clock);
+  }
+
+  private static List<LocalDate> dates(PriceSeries series) {
+    return IntStream.range(0, series.size()).mapToObj(series::date).toList();
+  }
+
+  @Test
+  void shortWindowsInsideAFetchedYearNeedNoUpstreamCall() {
+    PriceStore store = store(false);
+
+    assertThat(store.get("AAPL", TODAY.minusYears(1), TODAY).size()).isEqualTo(366);
+    assertThat(dates(store.get("AAPL", TODAY.minusDays(2), TODAY)))
+        .containsExactly(TODAY.minusDays(2), TODAY.minusDays(1), TODAY);
+    assertThat(store.get("AAPL", TODAY.minusMonths(3), TODAY.minusDays(7)).isEmpty()).isFalse();
+
+    assertThat(fetched).containsExactly(new PriceStore.DateRange(TODAY.minusYears(1), TODAY));
+  }
+
+  @Test
+  void onlyTheMissingDatesAreFetched() {
+    PriceStore store = store(false);
+    store.get("AAPL", TODAY.minusDays(20), TODAY.minusDays(10));
+    store.get("AAPL", TODAY.minusDays(5), TODAY.minusDays(3));
+
+    PriceSeries window = store.get("AAPL", TODAY.minusDays(30), TODAY);
+
+    assertThat(window.size()).isEqualTo(31);
+    assertThat(fetched)
+        .containsExactly(
+            new PriceStore.DateRange(TODAY.minusDays(20), TODAY.minusDays(10)),
+            new PriceStore.DateRange(TODAY.minusDays(5), TODAY.minusDays(3)),
+            new PriceStore.DateRange(TODAY.minusDays(30), TODAY.minusDays(21)),
+            new PriceStore.DateRange(TODAY.minusDays(9), TODAY.minusDays(6)),
+            new PriceStore.DateRange(TODAY.minusDays(2), TODAY));
+  }
+
+  @Test
+  void fetchedBarsSurviveARestart() {
+    store(false).get("AAPL", TODAY.minusMonths(3), TODAY);
+    fetched.clear();
+
+    assertThat(store(false).get("AAPL", TODAY.minusDays(2), TODAY).size()).isEqualTo(3);
+    assertThat(fetched).isEmpty();
+  }
+
+  @Test
+  void missingNewestDaysAreServedStaleAndFetchedInTheBackground() throws Exception {
+    PriceStore store = store(true);
+    store.get("AAPL", TODAY.minusMonths(3), TODAY.minusDays(1));
+
+    assertThat(store.get("AAPL", TODAY.minusDays(5), TODAY).size()).isEqualTo(5);
+    assertThat(store.staleness("AAPL").servedFrom()).isEqualTo(TODAY.minusDays(1));
+
+    long deadline = System.nanoTime() + 5_000_000_000L;
+    while (store.staleness("AAPL") != null && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(store.staleness("AAPL")).isNull();
+    assertThat(store.get("AAPL", TODAY.minusDays(5), TODAY).size()).isEqualTo(6);
+  }
+
+  @Test
+  void onlyOneRefreshIsStartedWhileTheNewestDaysAreServedStale() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    PriceStore.Fetcher slow =
+        (ticker, startDate, endDate) -> {
+          if (!fetched.isEmpty()) {
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+          return fetcher.fetch(ticker, startDate, endDate);
+        };
+    PriceStore store =
+        new PriceStore(new FileCacheService(cacheDir), mapper, slow, true, Clock.systemUTC());
+    store.get("AAPL", TODAY.minusMonths(3), TODAY.minusDays(3));
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(store.get("AAPL", TODAY.minusDays(5), TODAY).size()).isEqualTo(3);
+    }
+    release.countDown();
+
+    long deadline = System.nanoTime() + 5_000_000_000L;
+    while (store.staleness("AAPL") != null && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(fetched)
+        .containsExactly(
+            new PriceStore.DateRange(TODAY.minusMonths(3), TODAY.minusDays(3)),
+            new PriceStore.DateRange(TODAY.minusDays(2), TODAY));
+  }
+
+  @Test
+  void todaysBarAloneIsFetchedInLineRatherThanServedStale() {
+    PriceStore store =
+        store(true, Clock.fixed(TODAY.atTime(15, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    store.get("AAPL", TODAY.minusDays(10), TODAY);
+
+    assertThat(store.get("AAPL", TODAY.minusDays(5), TODAY).size()).isEqualTo(6);
+    assertThat(store.staleness("AAPL")).isNull();
+  }
+
+  @Test
+  void todaysBarIsNeverHeldAsCovered() {
+    PriceStore store =
+        store(false, Clock.fixed(TODAY.atTime(15, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    store.get("AAPL", TODAY.minusDays(10), TODAY);
+    store.get("AAPL", TODAY.minusDays(2), TODAY);
+
+    assertThat(fetched)
+        .containsExactly(
+            new PriceStore.DateRange(TODAY.minusDays(10), TODAY),
+            new PriceStore.DateRange(TODAY, TODAY));
+  }
+
+  @Test
+  void tickersDroppedFromMemoryAreReadBackWithoutAFetch() {
+    PriceStore store =
+        new PriceStore(
+            new FileCacheService(cacheDir), mapper, fetcher, false, Clock.systemUTC(), 1);
+    store.get("AAPL", TODAY.minusDays(10), TODAY.minusDays(1));
+    store.get("MSFT", TODAY.minusDays(10), TODAY.minusDays(1));
+    fetched.clear();
+
+    assertThat(store.get("AAPL", TODAY.minusDays(5), TODAY.minusDays(1)).size()).isEqualTo(5);
+    assertThat(fetched).isEmpty();
+  }
+
+  @Test
+  void storesSharingACacheDirectoryAddToEachOthersRanges() {
+    PriceStore first = store(false);
+    PriceStore second = store(false);
+    first.get("AAPL", TODAY.minusDays(20), TODAY.minusDays(11));
+    second.get("AAPL", TODAY.minusDays(10), TODAY.minusDays(1));
+    first.get("AAPL", TODAY.minusDays(40), TODAY.minusDays(31));
+    fetched.clear();
+
+    assertThat(store(false).get("AAPL", TODAY.minusDays(40), TODAY.minusDays(31)).size())
+        .isEqualTo(10);
+    assertThat(store(false).get("AAPL", TODAY.minusDays(20), TODAY.minusDays(1)).size())
+        .isEqualTo(20);
+    assertThat(fetched).isEmpty();
+  }
+
+  @Test
+  void manyFetchedRangesAreRewrittenAsOne() throws Exception {
+    PriceStore store = store(false);
+    for (int i = 0; i <= PriceStore.MAX_SEGMENTS; i++) {
+      // every other day, so each is a range of its own
+      store.get("AAPL", TODAY.minusDays(2L * i + 2), TODAY.minusDays(2L * i + 2));
+    }
+
+    PriceStore.StoredPrices index =
+        mapper.readValue(
+            new FileCacheService(cacheDir).get("price-store AAPL"), PriceStore.StoredPrices.class);
+    assertThat(index.segments()).hasSize(1);
+    assertThat(index.ranges()).hasSize(PriceStore.MAX_SEGMENTS + 1);
+
+    fetched.clear();
+    LocalDate oldest = TODAY.minusDays(2L * PriceStore.MAX_SEGMENTS + 2);
+    assertThat(store(false).get("AAPL", oldest, oldest).size()).isEqualTo(1);
+    assertThat(fetched).isEmpty();
+  }
+
+  private static Price bar(LocalDate date, double close) {
+    BigDecimal value = BigDecimal.valueOf(close);
+    return new Price(value, value, value, value, BigDecimal.TEN, date + "T04:00:00Z", null);
+  }
+}
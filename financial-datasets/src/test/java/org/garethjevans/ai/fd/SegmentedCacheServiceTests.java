@@ -0,0 +1,209 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentedCacheServiceTests {
+
+  @TempDir private Path dir;
+
+  private SegmentedCacheService open(long maxSegmentBytes) {
+    return new SegmentedCacheService(dir, maxSegmentBytes, Duration.ZERO, null);
+  }
+
+  @Test
+  void savedEntriesAreReadBackAndOverwritten() throws Exception {
+    try (SegmentedCacheService cache = open(1024)) {
+      cache.save("/prices/?ticker=AAPL", "[1]");
+      cache.save("/prices/?ticker=MSFT", "[2]");
+      cache.save("/prices/?ticker=AAPL", "[3]");
+
+      assertThat(cache.keyExists("/prices/?ticker=AAPL")).isTrue();
+      assertThat(cache.keyExists("/prices/?ticker=NVDA")).isFalse();
+      assertThat(cache.get("/prices/?ticker=AAPL")).isEqualTo("[3]");
+      assertThat(cache.get("/prices/?ticker=MSFT")).isEqualTo("[2]");
+    }
+  }
+
+  @Test
+  void theIndexIsRebuiltOnReopenAcrossRolledSegments() throws Exception {
+    try (SegmentedCacheService cache = open(128)) {
+      for (int i = 0; i < 20; i++) {
+        cache.save("key-" + i, "value-" + i);
+      }
+      cache.save("key-3", "updated");
+      assertThat(cache.segmentCount()).isGreaterThan(1);
+    }
+
+    try (SegmentedCacheService cache = open(128)) {
+      assertThat(cache.get("key-0")).isEqualTo("value-0");
+      assertThat(cache.get("key-19")).isEqualTo("value-19");
+      assertThat(cache.get("key-3")).isEqualTo("updated");
+
+      cache.save("key-20", "value-20");
+      assertThat(cache.get("key-20")).isEqualTo("value-20");
+    }
+    try (SegmentedCacheService cache = open(128)) {
+      assertThat(cache.get("key-20")).isEqualTo("value-20");
+    }
+  }
+
+  @Test
+  void compactionDropsSegmentsHoldingOnlySupersededEntries() throws Exception {
+    try (SegmentedCacheService cache = open(128)) {
+      for (int round = 0; round < 5; round++) {
+        for (int i = 0; i < 4; i++) {
+          cache.save("key-" + i, "round-" + round);
+        }
+      }
+      int before = cache.segmentCount();
+
+      cache.compact();
+
+      assertThat(cache.segmentCount()).isLessThan(before);
+      assertThat(segmentFiles()).hasSize(cache.segmentCount());
+      for (int i = 0; i < 4; i++) {
+        assertThat(cache.get("key-" + i)).isEqualTo("round-4");
+      }
+    }
+    try (SegmentedCacheService cache = open(128)) {
+      assertThat(cache.get("key-0")).isEqualTo("round-4");
+    }
+  }
+
+  @Test
+  void deletedEntriesStayDeletedAcrossRestartsAndCompaction() throws Exception {
+    try (SegmentedCacheService cache = open(128)) {
+      for (int i = 0; i < 8; i++) {
+        cache.save("key-" + i, "value-" + i);
+      }
+      cache.delete("key-0");
+      cache.delete("key-7");
+      assertThat(cache.keyExists("key-0")).isFalse();
+    }
+
+    try (SegmentedCacheService cache = open(128)) {
+      assertThat(cache.keyExists("key-0")).isFalse();
+      assertThat(cache.keyExists("key-7")).isFalse();
+      for (int round = 0; round < 3; round++) {
+        for (int i = 1; i < 7; i++) {
+          cache.save("key-" + i, "round-" + round);
+        }
+      }
+      cache.compact();
+    }
+
+    try (SegmentedCacheService cache = open(128)) {
+      assertThat(cache.keyExists("key-0")).isFalse();
+      assertThat(cache.keyExists("key-7")).isFalse();
+      assertThat(cache.get("key-1")).isEqualTo("round-2");
+    }
+  }
+
+  @Test
+  void aRecordTornByACrashIsCutOff() throws Exception {
+    SegmentedCacheService cache = open(1024);
+    cache.save("complete", "value");
+    cache.save("torn", "a value cut off half way");
+    cache.abandon();
+    // simulate a crash half way through the last record, before the segment was sealed
+    Path segment = segmentFiles().getFirst();
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 10);
+    }
+
+    try (SegmentedCacheService reopened = open(1024)) {
+      assertThat(reopened.get("complete")).isEqualTo("value");
+      assertThat(reopened.keyExists("torn")).isFalse();
+
+      reopened.save("after", "restart");
+      assertThat(reopened.get("after")).isEqualTo("restart");
+    }
+  }
+
+  @Test
+  void aDirectoryAlreadyOpenElsewhereIsRefused() throws Exception {
+    try (SegmentedCacheService cache = open(1024)) {
+      assertThatThrownBy(() -> open(1024))
+          .isInstanceOf(IllegalStateException.class)
+          .hasMessageContaining("already open");
+    }
+    try (SegmentedCacheService reopened = open(1024)) {
+      reopened.save("after", "close");
+    }
+  }
+
+  @Test
+  void entriesAreReadWhileTheirSegmentsAreCompactedAway() throws Exception {
+    try (SegmentedCacheService cache = open(128)) {
+      for (int i = 0; i < 4; i++) {
+        cache.save("key-" + i, "value-" + i);
+      }
+      AtomicBoolean done = new AtomicBoolean();
+      AtomicReference<Throwable> failure = new AtomicReference<>();
+      List<Thread> readers = new ArrayList<>();
+      for (int r = 0; r < 4; r++) {
+        readers.add(
+            Thread.ofPlatform()
+                .start(
+                    () -> {
+                      try {
+                        while (!done.get()) {
+                          for (int i = 0; i < 4; i++) {
+                            assertThat(cache.get("key-" + i)).startsWith("value-" + i);
+                          }
+                        }
+                      } catch (Throwable e) {
+                        failure.set(e);
+                      }
+                    }));
+      }
+
+      for (int round = 0; round < 200; round++) {
+        for (int i = 0; i < 4; i++) {
+          cache.save("key-" + i, "value-" + i + "-" + round);
+        }
+        cache.compact();
+      }
+      done.set(true);
+      for (Thread reader : readers) {
+        reader.join();
+      }
+
+      assertThat(failure.get()).isNull();
+    }
+  }
+
+  @Test
+  void missingEntriesAreReadFromTheFallback() throws Exception {
+    Path filesDir = Files.createDirectories(dir.resolve("files"));
+    FileCacheService files = new FileCacheService(filesDir.toFile());
+    files.save("/company/facts/?ticker=AAPL", "{}");
+
+    try (SegmentedCacheService cache =
+        new SegmentedCacheService(dir.resolve("segments"), 1024, Duration.ZERO, files)) {
+      assertThat(cache.keyExists("/company/facts/?ticker=AAPL")).isTrue();
+      assertThat(cache.get("/company/facts/?ticker=AAPL")).isEqualTo("{}");
+    }
+  }
+
+  private List<Path> segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(f -> f.getFileName().toString().startsWith("segment-")).sorted().toList();
+    }
+  }
+}
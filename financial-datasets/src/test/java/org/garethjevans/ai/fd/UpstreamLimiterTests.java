@@ -0,0 +1,89 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+class UpstreamLimiterTests {
+
+  @Test
+  void limitGrowsAdditivelyAndHalvesOnTooManyRequests() {
+    UpstreamLimiter limiter = new UpstreamLimiter(1, 1, 10, Duration.ofSeconds(5), 0.5, 0, 0);
+
+    // a single caller saturates a limit of 1, so it grows, but not beyond what it uses
+    for (int i = 0; i < 10; i++) {
+      limiter.execute("AAPL", () -> "ok");
+    }
+    assertThat(limiter.limit()).isEqualTo(2);
+
+    assertThatThrownBy(
+            () ->
+                limiter.execute(
+                    "AAPL",
+                    () -> {
+                      throw HttpClientErrorException.create(
+                          HttpStatus.TOO_MANY_REQUESTS,
+                          "Too Many Requests",
+                          HttpHeaders.EMPTY,
+                          null,
+                          null);
+                    }))
+        .isInstanceOf(HttpClientErrorException.TooManyRequests.class);
+    assertThat(limiter.limit()).isEqualTo(1);
+    assertThat(limiter.inFlight()).isZero();
+  }
+
+  @Test
+  void waitingRequestsAreServedRoundRobinAcrossTickers() throws Exception {
+    UpstreamLimiter limiter = new UpstreamLimiter(1, 1, 1, Duration.ofSeconds(5), 0.5, 0, 0);
+    List<String> order = new CopyOnWriteArrayList<>();
+    CountDownLatch holding = new CountDownLatch(1);
+
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      executor.submit(() -> limiter.execute("HOLD", () -> hold(holding)));
+      waitUntil(() -> limiter.inFlight() == 1);
+
+      // a scan queues three requests for one ticker before an interactive call arrives
+      String[] arrivals = {"SCAN", "SCAN", "SCAN", "AAPL"};
+      for (int i = 0; i < arrivals.length; i++) {
+        String ticker = arrivals[i];
+        executor.submit(() -> limiter.execute(ticker, () -> order.add(ticker)));
+        int queued = i + 1;
+        waitUntil(() -> limiter.queueDepth() == queued);
+      }
+
+      holding.countDown();
+    }
+
+    assertThat(order).containsExactly("SCAN", "AAPL", "SCAN", "SCAN");
+    assertThat(limiter.queueDepth()).isZero();
+  }
+
+  private static boolean hold(CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+      Thread.sleep(5);
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+class UpstreamResilienceTests {
+
+  private final AtomicInteger calls = new AtomicInteger();
+
+  private UpstreamResilience resilience(Duration timeout, boolean hedging) {
+    return new UpstreamResilience(
+        timeout,
+        Map.of("prices", Duration.ofMillis(100)),
+        3,
+        Duration.ofMillis(1),
+        Duration.ofMillis(10),
+        hedging,
+        5,
+        2,
+        Duration.ofMillis(200));
+  }
+
+  @Test
+  void retriesIdempotentRequestsOnServerErrors() {
+    UpstreamResilience resilience = resilience(Duration.ofSeconds(5), false);
+
+    String result = resilience.execute("news", true, failTimes(2, HttpStatus.BAD_GATEWAY));
+
+    assertThat(result).isEqualTo("ok");
+    assertThat(calls).hasValue(3);
+  }
+
+  @Test
+  void doesNotRetryClientErrorsOrNonIdempotentRequests() {
+    UpstreamResilience resilience = resilience(Duration.ofSeconds(5), false);
+
+    assertThatThrownBy(() -> resilience.execute("news", true, failTimes(1, HttpStatus.NOT_FOUND)))
+        .isInstanceOf(HttpClientErrorException.NotFound.class);
+    assertThat(calls).hasValue(1);
+
+    calls.set(0);
+    assertThatThrownBy(
+            () -> resilience.execute("news", false, failTimes(1, HttpStatus.BAD_GATEWAY)))
+        .isInstanceOf(HttpServerErrorException.class);
+    assertThat(calls).hasValue(1);
+  }
+
+  @Test
+  void abandonsAttemptsThatExceedTheEndpointTimeout() {
+    UpstreamResilience resilience = resilience(Duration.ofSeconds(5), false);
+
+    long start = System.nanoTime();
+    assertThatThrownBy(() -> resilience.execute("prices", true, sleepFor(Duration.ofSeconds(5))))
+        .isInstanceOf(ResourceAccessException.class);
+
+    assertThat(calls).hasValue(3);
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+  }
+
+  @Test
+  void hedgesOnceTheP95HasPassedAndUsesTheFirstResponse() {
+    UpstreamResilience resilience = resilience(Duration.ofSeconds(5), true);
+    for (int i = 0; i < 5; i++) {
+      resilience.recordLatency("news", Duration.ofMillis(20).toNanos());
+    }
+
+    // the first copy stalls, the hedge answers straight away
+    Supplier<String> firstStalls =
+        () -> {
+          if (calls.incrementAndGet() == 1) {
+            sleep(Duration.ofSeconds(5));
+            return "stalled";
+          }
+          return "hedged";
+        };
+
+    long start = System.nanoTime();
+    assertThat(resilience.execute("news", true, firstStalls)).isEqualTo("hedged");
+    assertThat(calls).hasValue(2);
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+  }
+
+  @Test
+  void opensTheCircuitAfterRepeatedFailuresAndClosesItAfterASuccessfulTrial() throws Exception {
+    UpstreamResilience resilience = resilience(Duration.ofSeconds(5), false);
+
+    for (int i = 0; i < 2; i++) {
+      assertThatThrownBy(
+              () -> resilience.execute("news", false, failTimes(100, HttpStatus.BAD_GATEWAY)))
+          .isInstanceOf(HttpServerErrorException.class);
+    }
+    assertThat(resilience.isCircuitOpen("news")).isTrue();
+    // other endpoints are still called
+    assertThat(resilience.isCircuitOpen("prices")).isFalse();
+    assertThat(resilience.execute("prices", true, () -> "ok")).isEqualTo("ok");
+
+    calls.set(0);
+    assertThatThrownBy(() -> resilience.execute("news", true, failTimes(0, HttpStatus.OK)))
+        .isInstanceOf(ResourceAccessException.class)
+        .hasMessageContaining("Circuit open");
+    assertThat(calls).hasValue(0);
+
+    Thread.sleep(250);
+    assertThat(resilience.execute("news", true, failTimes(0, HttpStatus.OK))).isEqualTo("ok");
+    assertThat(resilience.isCircuitOpen("news")).isFalse();
+  }
+
+  @Test
+  void aSuccessSentBeforeTheCircuitOpenedDoesNotCloseIt() throws Exception {
+    UpstreamResilience resilience = resilience(Duration.ofSeconds(5), false);
+    Thread slow =
+        Thread.ofVirtual()
+            .start(() -> resilience.execute("news", false, sleepFor(Duration.ofMillis(100))));
+
+    for (int i = 0; i < 2; i++) {
+      assertThatThrownBy(
+              () -> resilience.execute("news", false, failTimes(100, HttpStatus.BAD_GATEWAY)))
+          .isInstanceOf(HttpServerErrorException.class);
+    }
+    slow.join();
+
+    assertThat(resilience.isCircuitOpen("news")).isTrue();
+  }
+
+  private Supplier<String> failTimes(int failures, HttpStatus status) {
+    return () -> {
+      if (calls.incrementAndGet() <= failures) {
+        throw status.is5xxServerError()
+            ? HttpServerErrorException.create(status, status.name(), HttpHeaders.EMPTY, null, null)
+            : HttpClientErrorException.create(status, status.name(), HttpHeaders.EMPTY, null, null);
+      }
+      return "ok";
+    };
+  }
+
+  private Supplier<String> sleepFor(Duration duration) {
+    return () -> {
+      calls.incrementAndGet();
+      sleep(duration);
+      return "slow";
+    };
+  }
+
+  private static void sleep(Duration duration) {
+    try {
+      Thread.sleep(duration);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
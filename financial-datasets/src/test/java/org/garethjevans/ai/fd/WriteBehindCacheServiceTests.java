@@ -0,0 +1,136 @@
+package org.garethjevans.ai.fd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WriteBehindCacheServiceTests {
+
+  @TempDir private File cacheDir;
+
+  @Test
+  void entriesAreReadFromMemoryUntilTheyAreWrittenAndSyncedInBatches() throws Exception {
+    GatedStore store = new GatedStore();
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    try (WriteBehindCacheService cache = new WriteBehindCacheService(store, 2, 64)) {
+      cache.bindTo(registry);
+
+      cache.save("/prices/?ticker=AAPL", "[1]");
+      assertThat(store.writing.await(5, TimeUnit.SECONDS)).isTrue();
+      // the writer is held on the first entry, so the rest wait in the queue
+      cache.save("/prices/?ticker=MSFT", "[2]");
+      cache.save("/prices/?ticker=MSFT", "[3]");
+      cache.save("/prices/?ticker=NVDA", "[4]");
+      CompletableFuture<Void> stalled =
+          CompletableFuture.runAsync(() -> cache.save("/prices/?ticker=TSLA", "[5]"));
+
+      assertThat(cache.get("/prices/?ticker=MSFT")).isEqualTo("[3]");
+      assertThat(store.keyExists("/prices/?ticker=MSFT")).isFalse();
+      awaitStall(registry);
+      assertThat(registry.get("financial.datasets.cache.write-behind.queued").gauge().value())
+          .isEqualTo(4);
+
+      store.release.countDown();
+      stalled.get(5, TimeUnit.SECONDS);
+      cache.flush();
+
+      assertThat(store.get("/prices/?ticker=MSFT")).isEqualTo("[3]");
+      assertThat(store.get("/prices/?ticker=TSLA")).isEqualTo("[5]");
+      // the entries queued behind the first are written together
+      assertThat(store.syncs).hasSizeLessThan(4);
+      assertThat(store.syncs.stream().flatMap(Collection::stream))
+          .containsExactlyInAnyOrder(
+              "/prices/?ticker=AAPL",
+              "/prices/?ticker=MSFT",
+              "/prices/?ticker=NVDA",
+              "/prices/?ticker=TSLA");
+      assertThat(
+              registry
+                  .get("financial.datasets.cache.write-behind.written")
+                  .functionCounter()
+                  .count())
+          .isEqualTo(4);
+      assertThat(registry.get("financial.datasets.cache.write-behind.queued").gauge().value())
+          .isZero();
+    }
+  }
+
+  @Test
+  void entriesStillWaitingAreWrittenOnClose() throws Exception {
+    WriteBehindCacheService cache =
+        new WriteBehindCacheService(new FileCacheService(cacheDir), 1024, 64);
+    for (int i = 0; i < 100; i++) {
+      cache.save("/news/?ticker=AAPL&page=" + i, "{\"news\":[" + i + "]}");
+    }
+    cache.delete("/news/?ticker=AAPL&page=0");
+    cache.close();
+
+    FileCacheService files = new FileCacheService(cacheDir);
+    assertThat(files.keyExists("/news/?ticker=AAPL&page=0")).isFalse();
+    for (int i = 1; i < 100; i++) {
+      assertThat(files.get("/news/?ticker=AAPL&page=" + i)).isEqualTo("{\"news\":[" + i + "]}");
+    }
+  }
+
+  private static void awaitStall(SimpleMeterRegistry registry) throws InterruptedException {
+    for (int i = 0; i < 500; i++) {
+      if (registry.get("financial.datasets.cache.write-behind.stalls").functionCounter().count()
+          > 0) {
+        return;
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("The save never waited for room in the queue");
+  }
+
+  /** Holds the writer on the first entry it writes until released. */
+  private static class GatedStore implements CacheService {
+
+    private final Map<String, byte[]> entries = new ConcurrentHashMap<>();
+    private final List<List<String>> syncs = new ArrayList<>();
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public boolean keyExists(String cacheKey) {
+      return entries.containsKey(cacheKey);
+    }
+
+    @Override
+    public byte[] getBytes(String cacheKey) {
+      return entries.get(cacheKey);
+    }
+
+    @Override
+    public void saveBytes(String cacheKey, byte[] entry) {
+      writing.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      entries.put(cacheKey, entry);
+    }
+
+    @Override
+    public void delete(String cacheKey) {
+      entries.remove(cacheKey);
+    }
+
+    @Override
+    public synchronized void sync(Collection<String> cacheKeys) {
+      syncs.add(List.copyOf(cacheKeys));
+    }
+  }
+}
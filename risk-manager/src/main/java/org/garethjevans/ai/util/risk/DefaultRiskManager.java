@@ -3,8 +3,8 @@ package org.garethjevans.ai.util.risk;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
-import org.garethjevans.ai.fd.FinancialDatasetsService;
-import org.garethjevans.ai.fd.Price;
+import org.garethjevans.ai.fd.FinancialDatasets;
+import org.garethjevans.ai.fd.PriceSeries;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -14,10 +14,10 @@ class DefaultRiskManager implements RiskManager {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DefaultRiskManager.class);
 
-  private final FinancialDatasetsService datasetsService;
+  private final FinancialDatasets datasetsService;
   private final Portfolio portfolio;
 
-  public DefaultRiskManager(FinancialDatasetsService datasetsService, Portfolio portfolio) {
+  public DefaultRiskManager(FinancialDatasets datasetsService, Portfolio portfolio) {
     this.datasetsService = datasetsService;
     this.portfolio = portfolio;
   }
@@ -30,16 +30,14 @@ class DefaultRiskManager implements RiskManager {
     LocalDate end = LocalDate.now();
     LocalDate start = end.minusMonths(3);
 
-    var prices = datasetsService.getPrices(ticker, start, end);
+    PriceSeries prices = datasetsService.getPriceSeries(ticker, start, end);
 
     if (prices.isEmpty()) {
       updateProgress(ticker, "Warning: No price data found");
       return null;
     }
 
-    PriceDataFrame priceDataFrame = toDataFrame(prices);
-
-    BigDecimal currentPrice = priceDataFrame.close().getLast();
+    BigDecimal currentPrice = BigDecimal.valueOf(prices.lastClose());
     updateProgress(ticker, "Current price: " + currentPrice);
 
     // Calculate total portfolio value based on current market prices (Net Liquidation Value)
@@ -104,19 +102,9 @@ class DefaultRiskManager implements RiskManager {
     LocalDate end = LocalDate.now();
     LocalDate start = end.minusDays(3);
 
-    var prices = datasetsService.getPrices(ticker, start, end);
-    PriceDataFrame priceDataFrame = toDataFrame(prices);
-
-    return priceDataFrame.close().getLast();
-  }
+    PriceSeries prices = datasetsService.getPriceSeries(ticker, start, end);
 
-  private PriceDataFrame toDataFrame(List<Price> prices) {
-    return new PriceDataFrame(
-        prices.stream().map(Price::open).toList(),
-        prices.stream().map(Price::close).toList(),
-        prices.stream().map(Price::high).toList(),
-        prices.stream().map(Price::low).toList(),
-        prices.stream().map(Price::volume).toList());
+    return BigDecimal.valueOf(prices.lastClose());
   }
 
   private void updateProgress(String ticker, String message) {
@@ -21,6 +21,11 @@ public interface RiskManager {
       @JsonProperty("remaining_limit") BigDecimal remainingLimit,
       @JsonProperty("available_cash") BigDecimal availableCash) {}
 
+  /**
+   * @deprecated no longer used by {@link DefaultRiskManager}, which reads prices as a {@link
+   *     org.garethjevans.ai.fd.PriceSeries} of primitive columns
+   */
+  @Deprecated
   record PriceDataFrame(
       @JsonProperty("open") List<BigDecimal> open,
       @JsonProperty("close") List<BigDecimal> close,
@@ -1,6 +1,6 @@
 package org.garethjevans.ai.util.risk;
 
-import org.garethjevans.ai.fd.FinancialDatasetsService;
+import org.garethjevans.ai.fd.FinancialDatasets;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.context.annotation.Bean;
 
@@ -8,8 +8,7 @@ import org.springframework.context.annotation.Bean;
 public class RiskManagerAutoConfiguration {
 
   @Bean
-  public RiskManager riskManager(
-      FinancialDatasetsService financialDatasetsService, Portfolio portfolio) {
+  public RiskManager riskManager(FinancialDatasets financialDatasetsService, Portfolio portfolio) {
     return new DefaultRiskManager(financialDatasetsService, portfolio);
   }
 }